@@ -0,0 +1,301 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQuery;
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQueryParser;
+import es.unex.giiis.ribw.jgarciapft.query.RankedSearcher;
+import es.unex.giiis.ribw.jgarciapft.query.ResultPage;
+import es.unex.giiis.ribw.jgarciapft.ranking.ScoredDocument;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.BATCH_LATENCY_SAMPLES;
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_IN_FLIGHT_QUERIES;
+import static es.unex.giiis.ribw.jgarciapft.utils.JsonUtils.appendNumber;
+import static es.unex.giiis.ribw.jgarciapft.utils.JsonUtils.appendString;
+
+/**
+ * Runs a batch of queries without user interaction, so query logs can be replayed and searches scripted. Each line
+ * read is a boolean query (see {@link BooleanQueryParser}), and blank lines are skipped. Queries run concurrently on a
+ * pool of threads, and the result of each one is written as a JSON line, in the same order as the queries were read:
+ * <p>
+ * {"line":1,"query":"...","parsed":"...","documentCount":N,"latencyMillis":T,"results":[{"document":"...","score":S,
+ * "hits":H},...]}
+ * <p>
+ * Queries that can't be answered have an "error" instead of their results. Only a bounded number of queries are read
+ * ahead of the results written, and the latency percentiles are computed from a bounded sample of the queries, so
+ * batches of any size run in constant memory. Once the batch ends, its throughput and latency percentiles are reported
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see RankedSearcher
+ */
+public class BatchQueryRunner {
+
+    private final RankedSearcher searcher; // Runs each query
+    private final int threads; // Number of queries run at once
+    private final int resultsPerQuery; // Number of best results written for each query
+
+    /**
+     * @param searcher        Runs each query
+     * @param threads         Number of queries run at once
+     * @param resultsPerQuery Number of best results written for each query
+     */
+    public BatchQueryRunner(RankedSearcher searcher, int threads, int resultsPerQuery) {
+        this.searcher = searcher;
+        this.threads = threads;
+        this.resultsPerQuery = resultsPerQuery;
+    }
+
+    /**
+     * Run every query read and write their results. Returns once every result is written
+     *
+     * @param queries Reads the queries, one per line
+     * @param results Where to write the results, one JSON line per query
+     * @return Throughput and latency of the batch
+     * @throws IOException If the queries can't be read or the results can't be written
+     */
+    public Report run(BufferedReader queries, Writer results) throws IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Outcome>> inFlight = new ArrayDeque<>(); // Queries submitted whose results aren't written yet
+        Report report = new Report();
+        long startTime = System.nanoTime();
+
+        try {
+
+            String query;
+            int lineNumber = 0;
+
+            while ((query = queries.readLine()) != null) {
+
+                lineNumber++;
+
+                if (query.isBlank()) continue;
+
+                // Write the oldest result before reading further ahead
+
+                if (inFlight.size() >= MAX_IN_FLIGHT_QUERIES) write(inFlight.removeFirst(), results, report);
+
+                int queryLineNumber = lineNumber;
+                String queryLine = query;
+
+                inFlight.addLast(executor.submit(() -> execute(queryLineNumber, queryLine)));
+            }
+
+            while (!inFlight.isEmpty())
+                write(inFlight.removeFirst(), results, report);
+
+            results.flush();
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        report.elapsedNanos = System.nanoTime() - startTime;
+
+        return report;
+    }
+
+    /**
+     * Run a query and format its result
+     *
+     * @param lineNumber Line of the query
+     * @param query      The query, whose terms aren't necessarily normalized yet
+     * @return The JSON line of the query's result and its latency
+     */
+    private Outcome execute(int lineNumber, String query) {
+
+        long startTime = System.nanoTime();
+        String parsedQuery = null;
+        ResultPage page = null;
+        String error = null;
+
+        try {
+            BooleanQuery parsed = new BooleanQueryParser().parse(query);
+            parsedQuery = parsed.toString();
+            page = searcher.search(parsed, 0, resultsPerQuery);
+        } catch (IllegalArgumentException e) {
+            error = "Invalid query (" + e.getMessage() + ")";
+        } catch (IllegalStateException e) {
+            error = "Unsupported query (" + e.getMessage() + ")";
+        } catch (RuntimeException e) {
+            error = "Failed query (" + e + ")";
+        }
+
+        long latencyNanos = System.nanoTime() - startTime;
+
+        // Format the result
+
+        StringBuilder json = new StringBuilder(256);
+
+        json.append("{\"line\":").append(lineNumber).append(",\"query\":");
+        appendString(json, query);
+
+        if (parsedQuery != null) {
+            json.append(",\"parsed\":");
+            appendString(json, parsedQuery);
+        }
+
+        if (page != null) json.append(",\"documentCount\":").append(page.getTotalCount());
+
+        json.append(",\"latencyMillis\":");
+        appendNumber(json, latencyNanos / 1e6);
+
+        if (page != null) {
+
+            ScoredDocument[] documents = page.getResults();
+
+            json.append(",\"results\":[");
+
+            for (int i = 0; i < documents.length; i++) {
+
+                if (i > 0) json.append(',');
+
+                json.append("{\"document\":");
+                appendString(json, page.getDocumentURLs()[i]).append(",\"score\":");
+                appendNumber(json, documents[i].getScore()).append(",\"hits\":").append(documents[i].getFrequency())
+                        .append('}');
+            }
+
+            json.append(']');
+        } else {
+            json.append(",\"error\":");
+            appendString(json, error);
+        }
+
+        return new Outcome(json.append('}').toString(), latencyNanos, error != null);
+    }
+
+    /**
+     * Wait for a query to finish and write its result
+     *
+     * @param outcome The pending outcome of the query
+     * @param results Where to write the result
+     * @param report  Accounts for the query
+     * @throws IOException If the result can't be written or the batch is interrupted
+     */
+    private static void write(Future<Outcome> outcome, Writer results, Report report) throws IOException {
+
+        Outcome finished;
+
+        try {
+            finished = outcome.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running the batch of queries");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        results.write(finished.json);
+        results.write('\n');
+
+        report.add(finished.latencyNanos, finished.failed);
+    }
+
+    /**
+     * Result of a single query
+     */
+    private static final class Outcome {
+
+        private final String json; // JSON line of the result
+        private final long latencyNanos;
+        private final boolean failed; // If the query couldn't be answered
+
+        private Outcome(String json, long latencyNanos, boolean failed) {
+            this.json = json;
+            this.latencyNanos = latencyNanos;
+            this.failed = failed;
+        }
+
+    }
+
+    /**
+     * Throughput and latency of a batch of queries. Latencies are measured from the start of each query until its
+     * result is formatted, so they don't include the time waiting for a thread
+     * <p>
+     * Up to {@link Config#BATCH_LATENCY_SAMPLES} latencies are kept. Beyond that, a uniform sample of them is kept
+     * (reservoir sampling), so the percentiles of longer batches are estimated from the sample. The maximum latency is
+     * always exact
+     */
+    public static final class Report {
+
+        private final long[] latencies = new long[BATCH_LATENCY_SAMPLES]; // Sample of latencies in nanoseconds
+        private final Random sampler = new Random(); // Chooses the latencies replaced once the sample is full
+        private int queryCount = 0;
+        private int failedCount = 0; // Queries that couldn't be answered
+        private long maxLatencyNanos = 0;
+        private long elapsedNanos = 0; // Wall-clock time of the whole batch
+
+        private void add(long latencyNanos, boolean failed) {
+
+            // Each latency ends up in the sample with the same probability
+
+            if (queryCount < latencies.length) {
+                latencies[queryCount] = latencyNanos;
+            } else {
+                int replaced = sampler.nextInt(queryCount + 1);
+                if (replaced < latencies.length) latencies[replaced] = latencyNanos;
+            }
+
+            queryCount++;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+
+            if (failed) failedCount++;
+        }
+
+        public int getQueryCount() {
+            return queryCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return Queries run per second of wall-clock time
+         */
+        public double getQueriesPerSecond() {
+            return elapsedNanos > 0 ? queryCount / (elapsedNanos / 1e9) : 0;
+        }
+
+        /**
+         * @param percentile A percentile, between 0 and 100
+         * @return The latency in milliseconds of the given percentile of queries (nearest rank), or 0 if there were
+         * no queries. It's estimated from the sample of latencies if there were too many queries to keep them all
+         */
+        public double getLatencyMillis(double percentile) {
+
+            if (queryCount == 0) return 0;
+            if (percentile >= 100) return maxLatencyNanos / 1e6;
+
+            int sampleSize = Math.min(queryCount, latencies.length);
+            long[] sorted = Arrays.copyOf(latencies, sampleSize);
+            Arrays.sort(sorted);
+
+            int rank = (int) Math.ceil(percentile / 100 * sampleSize);
+
+            return sorted[Math.max(0, Math.min(sampleSize, rank) - 1)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d quer(y/ies) (%d failed) in %.3f s, %.1f queries/s, latency p50 %.3f ms, " +
+                            "p95 %.3f ms, p99 %.3f ms, max %.3f ms", queryCount, failedCount, elapsedNanos / 1e9,
+                    getQueriesPerSecond(), getLatencyMillis(50), getLatencyMillis(95), getLatencyMillis(99),
+                    getLatencyMillis(100));
+        }
+
+    }
+
+}
@@ -0,0 +1,462 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.*;
+
+/**
+ * Layout of the binary inverted file format. A binary inverted file starts with a header followed by a set of sections,
+ * all integers in big-endian byte order unless they are varints (see BinaryEncodingUtils):
+ * <p>
+ * HEADER: magic number, format version, number of sections, the section directory (identifier, offset, length and
+ * CRC32 of each section) and the CRC32 of the header itself
+ * <p>
+ * CATALOGUE: the document's catalogue. The directories of the documents are stored once in a string table and each
+ * document references its directory and stores its file name and metadata. Removed documents are kept as tombstones
+ * <p>
+ * POSTINGS: the postings list of each term, in dictionary order. Each posting is the difference between its document
+ * ID and the previous one (the first one is stored as is) followed by the term's frequency in the document, both varints
+ * <p>
+ * DICTIONARY: the sorted terms, grouped in blocks of {@link BinaryInvertedFileFormat#DICTIONARY_BLOCK_SIZE} terms.
+ * Each block starts with the offset of the postings list of its first term within the postings section, followed by
+ * its terms front-coded: the number of leading chars shared with the previous term of the block, the remaining
+ * suffix, the number of documents, the global frequency and the length in bytes of the postings list. The first term
+ * of each block is stored in full, so any block can be decoded on its own
+ * <p>
+ * BLOCK INDEX: the number of blocks and the offset of each block within the dictionary section, so blocks can be
+ * binary searched by their first term
+ * <p>
+ * DOCUMENT LENGTHS (optional): the number of documents followed by the length in tokens of each one plus one, as
+ * varints. Zero stands for an unknown length. Files without this section have unknown lengths
+ * <p>
+ * POSITIONS (optional): the positions list of each term, in dictionary order, followed by the positions table: the
+ * offset of each term's positions list within the section plus the offset of the table itself, as 8-byte longs. The
+ * positions list of a term holds, for each document of its postings list, the length in bytes of the document's
+ * positions followed by the positions as varints, each one the difference with the previous one (the first one is
+ * stored as is). Terms without positions have an empty positions list. Files without this section don't record
+ * positions
+ * <p>
+ * WILDCARD INDEX (optional): the automata of the terms and of the reversed terms that expand wildcard patterns (see
+ * WildcardIndex). Files without this section have their wildcard index built from their terms when it's first needed
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public final class BinaryInvertedFileFormat {
+
+    // Magic number that identifies binary inverted files ("PCIX")
+    public static final int MAGIC = 0x50434958;
+
+    // Version of the format written by this implementation. Files of newer versions can't be read
+    public static final int VERSION = 1;
+
+    // Number of terms of each front-coded block of the dictionary
+    public static final int DICTIONARY_BLOCK_SIZE = 16;
+
+    // Section identifiers
+    public static final int CATALOGUE_SECTION = 1;
+    public static final int POSTINGS_SECTION = 2;
+    public static final int DICTIONARY_SECTION = 3;
+    public static final int BLOCK_INDEX_SECTION = 4;
+    public static final int DOCUMENT_LENGTHS_SECTION = 5;
+    public static final int POSITIONS_SECTION = 6;
+    public static final int WILDCARD_INDEX_SECTION = 7;
+
+    // Flags of each document of the catalogue section
+    public static final int DOCUMENT_PRESENT = 1; // The document hasn't been removed
+    public static final int DOCUMENT_HAS_METADATA = 2; // The document's metadata is known
+    public static final int DOCUMENT_HAS_FILE_KEY = 4; // The document's metadata includes a file key
+
+    private BinaryInvertedFileFormat() {
+    }
+
+    /**
+     * @param sectionCount Number of sections of the file
+     * @return Length in bytes of the header of a file with the given number of sections
+     */
+    public static int headerLength(int sectionCount) {
+        return 3 * Integer.BYTES + sectionCount * (2 * Integer.BYTES + 2 * Long.BYTES) + Integer.BYTES;
+    }
+
+    /**
+     * @param file The beginning of a file
+     * @return If the file starts with the magic number of binary inverted files
+     */
+    public static boolean hasMagic(ByteBuffer file) {
+        return file.remaining() >= Integer.BYTES && file.getInt(file.position()) == MAGIC;
+    }
+
+    /**
+     * @param sections The section directory
+     * @return The encoded header, including its checksum
+     */
+    public static ByteBuffer encodeHeader(List<Section> sections) {
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength(sections.size()));
+
+        header.putInt(MAGIC).putInt(VERSION).putInt(sections.size());
+
+        for (Section section : sections)
+            header.putInt(section.id).putLong(section.offset).putLong(section.length).putInt(section.checksum);
+
+        header.putInt(checksum(header.array(), 0, header.position()));
+
+        return header.flip();
+    }
+
+    /**
+     * Decode and validate the header of a binary inverted file
+     *
+     * @param file     The whole file. Its position isn't modified
+     * @param fileSize The size of the file in bytes
+     * @return The section directory
+     * @throws IOException If the file isn't a valid binary inverted file of a supported version
+     */
+    public static List<Section> decodeHeader(ByteBuffer file, long fileSize) throws IOException {
+
+        ByteBuffer header = file.duplicate();
+
+        try {
+
+            if (header.getInt() != MAGIC) throw new IOException("Not a binary inverted file");
+
+            int version = header.getInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported binary inverted file version (" + version + ")");
+
+            int sectionCount = header.getInt();
+            if (sectionCount < 0 || headerLength(sectionCount) > fileSize)
+                throw new IOException("Corrupted binary inverted file header");
+
+            List<Section> sections = new ArrayList<>(sectionCount);
+
+            for (int i = 0; i < sectionCount; i++) {
+
+                Section section = new Section(header.getInt(), header.getLong(), header.getLong(), header.getInt());
+
+                if (section.offset < headerLength(sectionCount) || section.length < 0 ||
+                        section.offset + section.length > fileSize)
+                    throw new IOException("Corrupted binary inverted file header");
+
+                sections.add(section);
+            }
+
+            // Verify the header checksum
+
+            byte[] headerBytes = new byte[headerLength(sectionCount) - Integer.BYTES];
+            file.duplicate().get(headerBytes);
+
+            if (checksum(headerBytes, 0, headerBytes.length) != header.getInt())
+                throw new IOException("Corrupted binary inverted file header");
+
+            return sections;
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated binary inverted file header");
+        }
+    }
+
+    /**
+     * Read and validate the header of a binary inverted file without reading the rest of the file
+     *
+     * @param channel The file
+     * @return The section directory
+     * @throws IOException If the file can't be read or isn't a valid binary inverted file of a supported version
+     */
+    public static List<Section> readHeader(FileChannel channel) throws IOException {
+
+        long fileSize = channel.size();
+
+        // The fixed part of the header tells the number of sections, hence the whole header length
+
+        ByteBuffer fixedHeader = readFully(channel, 0, (int) Math.min(fileSize, 3 * Integer.BYTES));
+
+        if (fixedHeader.remaining() < 3 * Integer.BYTES) throw new IOException("Truncated binary inverted file header");
+
+        int sectionCount = fixedHeader.getInt(2 * Integer.BYTES);
+
+        if (sectionCount < 0 || headerLength(sectionCount) > fileSize)
+            throw new IOException("Corrupted binary inverted file header");
+
+        return decodeHeader(readFully(channel, 0, headerLength(sectionCount)), fileSize);
+    }
+
+    /**
+     * @param channel  A file
+     * @param position Where to start reading
+     * @param length   Number of bytes to read
+     * @return A buffer holding the bytes read
+     * @throws IOException If the file can't be read or is shorter than expected
+     */
+    public static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Truncated binary inverted file");
+
+        return buffer.flip();
+    }
+
+    /**
+     * @param sections The section directory
+     * @param id       A section identifier
+     * @return The section with the given identifier
+     * @throws IOException If the file has no such section
+     */
+    public static Section findSection(List<Section> sections, int id) throws IOException {
+
+        for (Section section : sections)
+            if (section.id == id) return section;
+
+        throw new IOException("Missing section (" + id + ") in binary inverted file");
+    }
+
+    /**
+     * @param sections The section directory
+     * @param id       A section identifier
+     * @return The section with the given identifier, or null if the file has no such section
+     */
+    public static Section findOptionalSection(List<Section> sections, int id) {
+
+        for (Section section : sections)
+            if (section.id == id) return section;
+
+        return null;
+    }
+
+    /**
+     * @param file    The whole file
+     * @param section A section of the file
+     * @return A buffer whose contents are exactly the section's bytes, positioned at its start
+     */
+    public static ByteBuffer sliceSection(ByteBuffer file, Section section) {
+
+        ByteBuffer slice = file.duplicate();
+        slice.position((int) section.offset).limit((int) (section.offset + section.length));
+
+        return slice.slice();
+    }
+
+    /**
+     * @param contents A section's contents
+     * @param section  The section
+     * @throws IOException If the contents don't match the section's checksum
+     */
+    public static void verifySection(ByteBuffer contents, Section section) throws IOException {
+
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate());
+
+        if ((int) crc.getValue() != section.checksum)
+            throw new IOException("Corrupted section (" + section.id + ") in binary inverted file");
+    }
+
+    /**
+     * Decode the catalogue section
+     *
+     * @param catalogue The contents of the catalogue section
+     * @return The decoded document's catalogue
+     * @throws IOException If the section is malformed
+     */
+    public static IDocumentCatalogue decodeCatalogue(ByteBuffer catalogue) throws IOException {
+
+        try {
+
+            int documentCount = readVarInt(catalogue);
+
+            // String table of directories
+
+            String[] directories = new String[readVarInt(catalogue)];
+
+            for (int i = 0; i < directories.length; i++)
+                directories[i] = readString(catalogue);
+
+            // Documents
+
+            List<String> documentURLs = new ArrayList<>(documentCount);
+            List<DocumentMetadata> documentsMetadata = new ArrayList<>(documentCount);
+
+            for (int documentID = 0; documentID < documentCount; documentID++) {
+
+                int flags = catalogue.get();
+                String documentURL = null;
+                DocumentMetadata metadata = null;
+
+                if ((flags & DOCUMENT_PRESENT) != 0)
+                    documentURL = directories[readVarInt(catalogue)] + readString(catalogue);
+
+                if ((flags & DOCUMENT_HAS_METADATA) != 0) {
+                    long size = readVarLong(catalogue);
+                    long lastModified = readVarLong(catalogue);
+                    String fileKey = (flags & DOCUMENT_HAS_FILE_KEY) != 0 ? readString(catalogue) : null;
+
+                    metadata = new DocumentMetadata(size, lastModified, fileKey);
+                }
+
+                documentURLs.add(documentURL);
+                documentsMetadata.add(metadata);
+            }
+
+            return new DocumentsLUT(documentURLs, documentsMetadata);
+
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed catalogue section in binary inverted file");
+        }
+    }
+
+    /**
+     * Decode the document lengths section into a document's catalogue
+     *
+     * @param documentLengths The contents of the document lengths section
+     * @param catalogue       The decoded document's catalogue, whose documents' lengths are recorded
+     * @throws IOException If the section is malformed
+     */
+    public static void decodeDocumentLengths(ByteBuffer documentLengths, IDocumentCatalogue catalogue) throws IOException {
+
+        try {
+
+            int documentCount = readVarInt(documentLengths);
+
+            for (int documentID = 0; documentID < documentCount; documentID++) {
+
+                int length = readVarInt(documentLengths) - 1;
+
+                if (length >= 0) catalogue.updateDocumentLength(documentID, length);
+            }
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed document lengths section in binary inverted file");
+        }
+    }
+
+    /**
+     * @param positionsSectionLength Length of the positions section in bytes
+     * @param termCount              Number of terms of the dictionary
+     * @return Offset of the positions table within the positions section
+     * @throws IOException If the section is too short to hold the table
+     */
+    public static long positionsTableOffset(long positionsSectionLength, int termCount) throws IOException {
+
+        long tableOffset = positionsSectionLength - (termCount + 1L) * Long.BYTES;
+
+        if (tableOffset < 0) throw new IOException("Malformed positions section in binary inverted file");
+
+        return tableOffset;
+    }
+
+    /**
+     * Decode the positions table of the positions section
+     *
+     * @param table       The positions table
+     * @param termCount   Number of terms of the dictionary
+     * @param tableOffset Offset of the table within the positions section
+     * @return The offset of each term's positions list within the positions section, plus the offset of the table
+     * @throws IOException If the table is malformed
+     */
+    public static long[] decodePositionsTable(ByteBuffer table, int termCount, long tableOffset) throws IOException {
+
+        long[] offsets = new long[termCount + 1];
+
+        try {
+            for (int termIndex = 0; termIndex <= termCount; termIndex++) {
+
+                offsets[termIndex] = table.getLong();
+
+                if (offsets[termIndex] < (termIndex > 0 ? offsets[termIndex - 1] : 0))
+                    throw new IOException("Malformed positions section in binary inverted file");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Malformed positions section in binary inverted file");
+        }
+
+        if (offsets[termCount] != tableOffset)
+            throw new IOException("Malformed positions section in binary inverted file");
+
+        return offsets;
+    }
+
+    /**
+     * Decode a postings list starting at the current position of a buffer, advancing it past the list
+     *
+     * @param postings        Buffer positioned at the start of a postings list
+     * @param documentCount   Number of postings of the list
+     * @param globalFrequency Expected global frequency of the term
+     * @return The decoded occurrences
+     * @throws IOException If the postings list is malformed or inconsistent with the expected global frequency
+     */
+    public static Occurrences decodePostings(ByteBuffer postings, int documentCount, int globalFrequency) throws IOException {
+
+        Occurrences occurrences = new Occurrences();
+        int documentID = 0;
+
+        try {
+            for (int i = 0; i < documentCount; i++) {
+                documentID += readVarInt(postings);
+                occurrences.computeOccurrencesInDocument(documentID, readVarInt(postings));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed postings list in binary inverted file");
+        }
+
+        if (occurrences.getGlobalFrequency() != globalFrequency)
+            throw new IOException("Inconsistent postings list in binary inverted file");
+
+        return occurrences;
+    }
+
+    /**
+     * @param bytes  Some data
+     * @param offset Start of the checksummed range
+     * @param length Length of the checksummed range
+     * @return The CRC32 of the range
+     */
+    public static int checksum(byte[] bytes, int offset, int length) {
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Entry of the section directory of a binary inverted file
+     */
+    public static class Section {
+
+        private final int id; // Section identifier
+        private final long offset; // Offset of the section from the start of the file
+        private final long length; // Length of the section in bytes
+        private final int checksum; // CRC32 of the section
+
+        public Section(int id, long offset, long length, int checksum) {
+            this.id = id;
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public int getChecksum() {
+            return checksum;
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable set of terms compiled for fast membership tests. The chars of every term are packed into a single array
+ * and the terms are addressed by an open addressing hash table with linear probing. Lookups work directly on a slice
+ * of a char array or on any char sequence, so testing a token that isn't in the set allocates nothing. Lookups of
+ * terms in the set return the set's own instance of the term, so callers don't need to allocate it either
+ * <p>
+ * Hashes are computed with the same algorithm as {@link String#hashCode()}. It's safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public final class CompiledDictionary {
+
+    private final String[] terms; // Terms of the set
+    private final char[] chars; // Chars of every term, one after another
+    private final int[] offsets; // Offset of the chars of each term. Has one extra entry marking the end of the chars
+    private final int[] hashes; // Hash of each term
+    private final int[] slots; // Hash table of term indexes plus one. Zero marks an empty slot
+
+    /**
+     * @param terms The terms of the set. Duplicates are ignored
+     */
+    public CompiledDictionary(Collection<String> terms) {
+
+        // Size the hash table so the load factor is at most 1/2
+
+        int capacity = Integer.highestOneBit(Math.max(1, terms.size()) * 2 - 1) << 1;
+
+        this.slots = new int[capacity];
+        this.hashes = new int[terms.size()];
+        this.offsets = new int[terms.size() + 1];
+
+        String[] uniqueTerms = new String[terms.size()];
+        int mask = capacity - 1;
+        int size = 0;
+        int charCount = 0;
+
+        for (String term : terms) {
+
+            int hash = term.hashCode();
+            int slot = spread(hash) & mask;
+            boolean duplicated = false;
+
+            while (slots[slot] != 0 && !duplicated) {
+                duplicated = uniqueTerms[slots[slot] - 1].equals(term);
+                slot = (slot + 1) & mask;
+            }
+
+            if (duplicated) continue;
+
+            uniqueTerms[size] = term;
+            hashes[size] = hash;
+            slots[slot] = ++size;
+            charCount += term.length();
+        }
+
+        // Pack the chars of every term
+
+        this.terms = new String[size];
+        this.chars = new char[charCount];
+
+        int offset = 0;
+
+        for (int termIndex = 0; termIndex < size; termIndex++) {
+
+            String term = uniqueTerms[termIndex];
+
+            this.terms[termIndex] = term;
+            term.getChars(0, term.length(), chars, offset);
+            offsets[termIndex] = offset;
+            offset += term.length();
+        }
+
+        offsets[size] = offset;
+    }
+
+    /**
+     * Compile the terms that are indexed: the ones in the thesaurus that aren't in the inverse thesaurus (stopwords).
+     * A single lookup then replaces testing both thesauri
+     *
+     * @param thesaurus        Dictionary of tokens that will be indexed
+     * @param inverseThesaurus Dictionary of tokens that won't be indexed
+     * @return The set of terms that are indexed
+     */
+    public static CompiledDictionary compileIndexableTerms(Map<String, Object> thesaurus,
+                                                           Map<String, Object> inverseThesaurus) {
+
+        return new CompiledDictionary(thesaurus.keySet().stream()
+                .filter(term -> !inverseThesaurus.containsKey(term))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @param buffer A char array
+     * @param offset Offset of the slice within the array
+     * @param length Length of the slice
+     * @return The term equal to the slice, or null if it isn't in the set
+     */
+    public String lookup(char[] buffer, int offset, int length) {
+
+        int hash = 0;
+
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + buffer[i];
+
+        int mask = slots.length - 1;
+
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+
+            int termIndex = slots[slot] - 1;
+
+            if (hashes[termIndex] == hash && offsets[termIndex + 1] - offsets[termIndex] == length &&
+                    regionEquals(termIndex, buffer, offset, length))
+                return terms[termIndex];
+        }
+
+        return null;
+    }
+
+    /**
+     * @param sequence A char sequence
+     * @return The term equal to the sequence, or null if it isn't in the set
+     */
+    public String lookup(CharSequence sequence) {
+
+        int length = sequence.length();
+        int hash = sequence instanceof String ? sequence.hashCode() : 0;
+
+        if (!(sequence instanceof String))
+            for (int i = 0; i < length; i++)
+                hash = 31 * hash + sequence.charAt(i);
+
+        int mask = slots.length - 1;
+
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+
+            int termIndex = slots[slot] - 1;
+
+            if (hashes[termIndex] == hash && offsets[termIndex + 1] - offsets[termIndex] == length &&
+                    regionEquals(termIndex, sequence, length))
+                return terms[termIndex];
+        }
+
+        return null;
+    }
+
+    /**
+     * @param sequence A char sequence
+     * @return If the sequence is in the set
+     */
+    public boolean contains(CharSequence sequence) {
+        return lookup(sequence) != null;
+    }
+
+    /**
+     * @param buffer A char array
+     * @param offset Offset of the slice within the array
+     * @param length Length of the slice
+     * @return If the slice is in the set
+     */
+    public boolean contains(char[] buffer, int offset, int length) {
+        return lookup(buffer, offset, length) != null;
+    }
+
+    /**
+     * @return Number of terms in the set
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @param termIndex Index of a term whose length is the slice's length
+     * @return If the term's chars are equal to the slice
+     */
+    private boolean regionEquals(int termIndex, char[] buffer, int offset, int length) {
+
+        int termOffset = offsets[termIndex];
+
+        for (int i = 0; i < length; i++)
+            if (chars[termOffset + i] != buffer[offset + i]) return false;
+
+        return true;
+    }
+
+    /**
+     * @param termIndex Index of a term whose length is the sequence's length
+     * @return If the term's chars are equal to the sequence
+     */
+    private boolean regionEquals(int termIndex, CharSequence sequence, int length) {
+
+        int termOffset = offsets[termIndex];
+
+        for (int i = 0; i < length; i++)
+            if (chars[termOffset + i] != sequence.charAt(i)) return false;
+
+        return true;
+    }
+
+    /**
+     * @param hash A hash code
+     * @return The hash code with its high bits spread into the low ones, which are the ones used to choose slots
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -39,6 +39,109 @@ public final class Config {
     // Path to the location of the default inverse thesaurus
     public static final String DEFAULT_INVERSE_THESAURUS_PATH = "resources/stopwords_es.txt";
 
+    // Default number of threads reading directory listings ahead of the discovery stage
+    public static final int DEFAULT_DISCOVERY_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Maximum number of directory listings read ahead and not yet visited by the discovery stage
+    public static final int MAX_PREFETCHED_DIRECTORIES = 128;
+
+    // Directories with more entries than this aren't read ahead, they are streamed when visited
+    public static final int MAX_PREFETCHED_DIRECTORY_ENTRIES = 1024;
+
+    // Default number of indexing workers of the crawl pipeline. One per available core
+    public static final int DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Maximum number of discovered documents waiting to be indexed. Bounds the memory used by the discovery stage
+    public static final int WORK_QUEUE_CAPACITY = 1024;
+
+    // Maximum number of documents dispatched to their own virtual thread and not yet indexed
+    public static final int MAX_IN_FLIGHT_DOCUMENTS = 256;
+
+    // Documents up to this size are read into memory before parsing them when extracting with virtual threads
+    public static final long MAX_PREFETCHED_DOCUMENT_BYTES = 16 * 1024 * 1024;
+
+    // Maximum size of the documents held in memory at once when extracting with virtual threads. Documents that don't
+    // fit in what's left are read as they are parsed
+    public static final int MAX_PREFETCHED_BYTES = 64 * 1024 * 1024;
+
+    // Events received within this window since the previous one are applied in the same batch when watching for changes
+    public static final long WATCH_COALESCING_WINDOW_MILLIS = 500;
+
+    // Maximum time the first change of a batch waits to be applied while new events keep arriving
+    public static final long WATCH_MAX_BATCH_DELAY_MILLIS = 5000;
+
+    // Interval between persists of the inverted index while watching for changes. Only changed indexes are persisted
+    public static final long WATCH_PERSIST_INTERVAL_SECONDS = 60;
+
+    // Maximum estimated memory taken by the postings lists cached when an inverted file is loaded lazily
+    public static final long POSTINGS_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+
+    // Number of leading bytes of a document read to detect its media type
+    public static final int DETECTION_PREFIX_BYTES = 8 * 1024;
+
+    // Number of leading bytes of a document that, along with its extension, key the cache of detected media types
+    public static final int DETECTION_SIGNATURE_BYTES = 16;
+
+    // Wall-clock time an extraction worker is given to extract the text of a single document before it's killed
+    public static final long EXTRACTION_TIMEOUT_MILLIS = 60 * 1000;
+
+    // Wall-clock time an extraction worker is given to start and load its parsers before it's killed
+    public static final long EXTRACTION_WORKER_STARTUP_TIMEOUT_MILLIS = 30 * 1000;
+
+    // Maximum size of the text extracted from a single document by an extraction worker (2 bytes per char)
+    public static final long EXTRACTION_MAX_TEXT_BYTES = 64 * 1024 * 1024;
+
+    // Maximum heap size of each extraction worker's JVM, as given to the -Xmx option
+    public static final String EXTRACTION_WORKER_MAX_HEAP = "512m";
+
+    // Term frequency saturation of the BM25 scoring criterion
+    public static final double BM25_K1 = 1.2;
+
+    // Strength of the document length normalization of the BM25 scoring criterion, between 0 and 1
+    public static final double BM25_B = 0.75;
+
+    // Number of search results shown at once
+    public static final int RESULTS_PAGE_SIZE = 10;
+
+    // Maximum estimated memory taken by the cached pages of ranked search results
+    public static final long RESULTS_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+
+    // Default number of threads running the queries of a batch
+    public static final int DEFAULT_QUERY_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Maximum number of queries of a batch read ahead of the results written
+    public static final int MAX_IN_FLIGHT_QUERIES = 1024;
+
+    // Maximum number of latencies kept to compute the percentiles of a batch. Longer batches keep a uniform sample
+    public static final int BATCH_LATENCY_SAMPLES = 65536;
+
+    // Maximum number of results a single search request of the query server may ask for
+    public static final int SERVER_MAX_PAGE_SIZE = 1000;
+
+    // Number of most recent requests whose latencies make the query server's percentiles
+    public static final int SERVER_LATENCY_SAMPLES = 4096;
+
+    // Size of the buffer of streamed responses of the query server. Each full buffer is sent as a chunk
+    public static final int SERVER_STREAM_BUFFER_BYTES = 8 * 1024;
+
+    // Seconds given to the requests in progress to finish when the query server stops
+    public static final int SERVER_STOP_DELAY_SECONDS = 1;
+
+    // Maximum number of terms a wildcard pattern may expand to. Patterns matching more terms are rejected
+    public static final int MAX_WILDCARD_EXPANSION = 256;
+
+    // Maximum edit distance of the suggestions for a misspelled term. Short terms allow one edit less
+    public static final int MAX_SUGGESTION_DISTANCE = 2;
+
+    // Length of the longest terms that only allow a single edit, as two edits make them too different
+    public static final int SINGLE_EDIT_MAX_TERM_LENGTH = 4;
+
+    // Number of suggestions shown for a misspelled term
+    public static final int MAX_SUGGESTIONS = 5;
+
+    // Maximum number of similar terms considered for suggestions. Further ones are ignored
+    public static final int MAX_SUGGESTION_CANDIDATES = 1024;
+
     // Catalogue of Tika parser classes associated with the file extensions that they parse. The structure is immutable
     public static Map<String, Class<? extends Parser>> TIKA_PARSERS = new TreeMap<>();
 
@@ -1,21 +1,20 @@
 package es.unex.giiis.ribw.jgarciapft;
 
+import es.unex.giiis.ribw.jgarciapft.extraction.ExtractionWorkerPool;
+import es.unex.giiis.ribw.jgarciapft.extraction.TikaParserRegistry;
 import es.unex.giiis.ribw.jgarciapft.loaders.*;
+import es.unex.giiis.ribw.jgarciapft.marshallers.BinaryInvertedIndexMarshaller;
 import es.unex.giiis.ribw.jgarciapft.marshallers.IInvertedIndexMarshaller;
-import es.unex.giiis.ribw.jgarciapft.marshallers.InvertedIndexMarshaller;
-import es.unex.giiis.ribw.jgarciapft.utils.FileExtensionUtils;
-import es.unex.giiis.ribw.jgarciapft.utils.NormalizationUtils;
-import org.apache.tika.Tika;
-import org.apache.tika.exception.TikaException;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
-import org.apache.tika.sax.BodyContentHandler;
-import org.xml.sax.SAXException;
-
-import java.io.*;
-import java.nio.charset.StandardCharsets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
 
 import static es.unex.giiis.ribw.jgarciapft.Config.*;
 
@@ -38,10 +37,14 @@ public class Crawler {
     private Map<String, Object> thesaurus;
     // Dictionary of tokens that won't be indexed (a.k.a stopwords). Used to accelerate token filtering
     private Map<String, Object> inverseThesaurus;
+    // Compiled terms of the thesaurus that aren't stopwords. Null until they are first needed
+    private CompiledDictionary indexableTerms;
 
     /* A cached representation of the built (or loaded) inverted index managed by this crawler (see InvertedIndex)
     It purpose is to avoid instantiation of new InvertedIndex objects when the inverted index hasn't changed */
     private InvertedIndex _cached_invertedIndex;
+    // Serializes batches of live changes, so they never race to replace the inverted index
+    private final Object liveUpdateLock;
 
     // Inverted file loading strategy
     private IInvertedFileLoader invertedFileLoader;
@@ -51,6 +54,20 @@ public class Crawler {
     private IDictionaryLoader<String, Object> inverseThesaurusLoader;
     // Inverted file creation strategy
     private IInvertedIndexMarshaller invertedIndexMarshaller;
+    // Discovers the documents of a folder hierarchy
+    private ParallelDirectoryWalker directoryWalker;
+    // Reusable Tika parsers shared by every indexer
+    private final TikaParserRegistry parserRegistry;
+    // Child JVMs that extract the text of structured documents, shared by every indexer. Null to extract it in process
+    private ExtractionWorkerPool extractionWorkers;
+
+    // Number of indexing workers that extract and index documents concurrently
+    private int workerThreads;
+    // If the extraction of each document runs on its own virtual thread instead of on a fixed pool of workers
+    private boolean virtualThreadExtraction;
+    /* If the position of each occurrence is recorded, enabling phrase and proximity queries. Documents indexed without
+    positions drop the positions of every term they contain */
+    private boolean positionalIndex;
 
     /**
      * Instantiates a crawler with an empty token dictionary and default loading, saving and printing strategies
@@ -65,13 +82,22 @@ public class Crawler {
         documentCatalog = new DocumentsLUT();
         thesaurus = new TreeMap<>();
         inverseThesaurus = new TreeMap<>();
+        indexableTerms = null;
 
         _cached_invertedIndex = null;
+        liveUpdateLock = new Object();
 
-        invertedFileLoader = new InvertedFileLoader();
+        invertedFileLoader = new BinaryInvertedFileLoader();
         thesaurusLoader = new ThesaurusLoader();
         inverseThesaurusLoader = new InverseThesaurusLoader();
-        invertedIndexMarshaller = new InvertedIndexMarshaller();
+        invertedIndexMarshaller = new BinaryInvertedIndexMarshaller();
+        directoryWalker = new ParallelDirectoryWalker(DEFAULT_DISCOVERY_THREADS);
+        parserRegistry = new TikaParserRegistry(TIKA_PARSERS);
+        extractionWorkers = null;
+
+        workerThreads = DEFAULT_WORKER_THREADS;
+        virtualThreadExtraction = false;
+        positionalIndex = false;
     }
 
     /**
@@ -98,6 +124,10 @@ public class Crawler {
 
         if (loadedThesaurus != null)
             inverseThesaurus = loadedInverseThesaurus;
+
+        // The indexable terms are compiled again from the loaded thesauri the next time they are needed
+
+        indexableTerms = null;
     }
 
     /**
@@ -105,9 +135,10 @@ public class Crawler {
      * The expected file name is specified in the global properties and it should be located directly at the root of
      * the folder hierarchy
      *
+     * @return If the inverted file was loaded
      * @see Config#INVERTED_FILE_FILENAME
      */
-    public void loadInvertedFile() {
+    public boolean loadInvertedFile() {
 
         // The expected URL of the inverted file based on the root path
         String expectedInvertedFileURL = rootPath + File.separator + INVERTED_FILE_FILENAME;
@@ -121,14 +152,21 @@ public class Crawler {
         if (loadedInvertedFile != null) {
             invertedIndex = loadedInvertedFile.getInvertedIndex();
             documentCatalog = loadedInvertedFile.getDocumentCatalogue();
+            return true;
         } else {
             System.err.println("[ERROR] Couldn't load the inverted file. This crawler will build a new inverted index");
+            return false;
         }
     }
 
     /**
      * Perform a full depth search for files starting from the given root path and exploring all sub-directories to
      * build an inverted index. The index holds the frequency of each token
+     * <p>
+     * The crawl is a staged pipeline. The calling thread discovers documents and assigns them their identifiers in
+     * discovery order, so the same hierarchy always produces the same document's catalogue. Discovered documents are
+     * published into a bounded work queue consumed by a pool of indexing workers, each one filling a private partial
+     * index. Once all documents are processed the partial indexes are merged into the inverted index
      *
      * @param rootPath The starting point in the system's filesystem
      * @throws IllegalStateException If the thesaurus, inverse thesaurus or both aren't loaded
@@ -141,210 +179,405 @@ public class Crawler {
             throw new IllegalStateException("The thesaurus, inverse thesaurus or both aren't loaded. Load them first " +
                     "before attempting to build an inverted index");
 
-        LinkedList<File> documentsQueue = new LinkedList<>(); // FIFO list of captured files to be processed
-
-        // Add the root element to the file's queue
+        // Index every document found within the hierarchy
 
-        File currentFile = new File(rootPath);
-        documentsQueue.add(currentFile);
-
-        /*
-         * Iterative implementation of the directory hierarchy search algorithm using a FIFO queue.
-         * The whole hierarchy is searched for files starting from the given root path and exploring all sub-directories.
-         * The files will be processed in the order presented to the crawler by the filesystem.
-         */
+        DocumentIndexer[] indexers = runIndexingStage(documentSink -> discoverDocuments(rootPath, documentSink));
 
-        while ((currentFile = documentsQueue.pollLast()) != null) {
-
-            // CASE 1 - Current file can't be processed. The file either doesn't exist or can't be read
+        if (indexers == null) {
+            System.err.println("[ERROR] The crawl was interrupted. The inverted index won't be created");
+            return;
+        }
 
-            if (!currentFile.exists() || !currentFile.canRead()) {
-                System.err.println("[ERROR] Unable to read (" + currentFile + ")");
-            }
+        // Merge every partial index into the first one by term, then into the inverted index in lexicographic order
 
-            // CASE 2 - Current file is a directory. Add its contents to the queue and continue with the next iteration
+        TermDictionary mergedIndex = indexers[0].getPartialIndex();
 
-            else if (currentFile.isDirectory()) {
+        for (int i = 1; i < indexers.length; i++)
+            mergedIndex.merge(indexers[i].getPartialIndex());
 
-                File[] childrenFiles = currentFile.listFiles(); // Retrieve all the files within the directory
+        mergePartialIndex(invertedIndex, mergedIndex, false);
 
-                // Check the directory isn't empty before adding the retrieved files to the queue
+        for (DocumentIndexer indexer : indexers)
+            indexer.recordDocumentLengths(documentCatalog);
 
-                if (childrenFiles != null && childrenFiles.length > 0) {
-                    System.out.printf("[FOLDER] Queuing %d file(s) from (%s)\n", childrenFiles.length, currentFile.getAbsolutePath());
-                    documentsQueue.addAll(Arrays.asList(childrenFiles));
-                }
-            }
+        // Serialize the built inverted index
 
-            // CASE 3 - Current file is actually a readable file and not an inverted file
+        createInvertedFile();
 
-            else if (currentFile.isFile() && !currentFile.getName().equals(INVERTED_FILE_FILENAME)) try {
+    }
 
-                System.out.printf("[DOCUMENT] %s (%s)\n", currentFile.getName(), currentFile.getAbsolutePath());
+    /**
+     * Bring up to date an inverted index loaded from an inverted file by re-indexing only the documents that changed
+     * since it was built. The hierarchy is walked comparing the filesystem metadata of each document with the one
+     * recorded in the document's catalogue: new documents are catalogued and indexed, modified documents are indexed
+     * again and documents that no longer exist are removed. Unchanged documents aren't read at all
+     * <p>
+     * Documents catalogued without metadata are considered modified
+     *
+     * @param rootPath The starting point in the system's filesystem
+     * @throws IllegalStateException If the thesaurus, inverse thesaurus or both aren't loaded
+     * @see Crawler#loadInvertedFile()
+     */
+    public void refreshInvertedIndex(String rootPath) throws IllegalStateException {
 
-                // Add this document to the document catalogue and get its corresponding ID
-                int currentDocumentID = documentCatalog.addDocument(currentFile.getAbsolutePath());
+        // Check the thesauri are loaded before indexing any document
 
-                // Get the file's nature: 1) text based, 2) structured analysable by a concrete Tika parser 3) other structured type
+        if (!areThesauriLoaded())
+            throw new IllegalStateException("The thesaurus, inverse thesaurus or both aren't loaded. Load them first " +
+                    "before attempting to refresh an inverted index");
 
-                if (FileExtensionUtils.isTextualFile(currentFile)) { // 1) Textual file
+        DocumentChangeTracker changeTracker = new DocumentChangeTracker(documentCatalog);
 
-                    BufferedReader bufferedReader = new BufferedReader(new FileReader(currentFile, StandardCharsets.UTF_8));
-                    String line;
+        // Index again only new or modified documents
 
-                    // Read the file line by line and index each one
+        DocumentIndexer[] indexers = runIndexingStage(documentSink -> directoryWalker.walk(
+                Paths.get(rootPath).toAbsolutePath(),
+                (file, attributes) -> changeTracker.track(file, attributes, documentSink)));
 
-                    while ((line = bufferedReader.readLine()) != null)
-                        indexTextualContent(line, currentDocumentID);
+        if (indexers == null) {
+            System.err.println("[ERROR] The crawl was interrupted. The inverted index won't be refreshed");
+            return;
+        }
 
-                    bufferedReader.close();
+        // Remove from the catalogue the documents that no longer exist
 
-                } else if (FileExtensionUtils.tikaHasFittingParser(currentFile)) { // 2) structured file analysable by a concrete Tika parser
+        changeTracker.removeMissingDocuments(documentURL -> true);
 
-                    indexWithTikaParser(currentFile, currentDocumentID);
+        changeTracker.printReport("Refresh");
 
-                } else { // 3) Other type of structured file without a concrete Tika parser, use the automatic Tika parser
+        // Remove the outdated occurrences, then merge the occurrences of the indexed documents
 
-                    indexWithTikaAutoParser(currentFile, currentDocumentID);
+        removeOccurrences(invertedIndex, changeTracker.staleDocuments, false);
 
-                }
-            } catch (FileNotFoundException e) {
-                System.err.println("[ERROR] The file (" + currentFile + ") disappeared before it could be processed");
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        for (DocumentIndexer indexer : indexers) {
+            mergePartialIndex(invertedIndex, indexer.getPartialIndex(), false);
+            indexer.recordDocumentLengths(documentCatalog);
         }
 
-        // Serialize the built inverted index
+        // Serialize the refreshed inverted index
 
         createInvertedFile();
+    }
+
+    /**
+     * Apply a batch of filesystem changes to the inverted index without disturbing whoever is using it. Each changed
+     * path is reconciled with the document's catalogue: regular files are indexed if they are new or were modified,
+     * and the hierarchy under a directory is refreshed. Documents that no longer exist under a changed path are removed.
+     * <p>
+     * The changes are applied over copies of the inverted index and the document's catalogue, copying only the
+     * occurrences that change, then the copies replace the originals. Inverted indexes exported before remain unchanged.
+     * The copies are built without holding this crawler's monitor, so exporting the inverted index never waits for a
+     * batch to be indexed, only for the copies to be published. Batches are applied one at a time
+     *
+     * @param changedPaths Absolute paths of the files or directories that changed within the hierarchy
+     * @return If the batch was applied, false if it was interrupted
+     * @throws IllegalStateException If the thesaurus, inverse thesaurus or both aren't loaded
+     * @see Crawler#exportInvertedIndex()
+     */
+    public boolean applyChanges(Collection<Path> changedPaths) throws IllegalStateException {
 
+        if (!areThesauriLoaded())
+            throw new IllegalStateException("The thesaurus, inverse thesaurus or both aren't loaded. Load them first " +
+                    "before attempting to apply changes to an inverted index");
+
+        synchronized (liveUpdateLock) {
+            return applyChangesExclusively(changedPaths);
+        }
     }
 
     /**
-     * Feed non-structured text based content to the inverted index. The content is normalized and filtered with both a
-     * thesaurus and an inverse thesaurus before it is indexed.
+     * Apply a batch of filesystem changes to the inverted index while no other batch is being applied
      *
-     * @param content    The textual content to be indexed
-     * @param documentID The identifier of the document which holds the provided content
+     * @param changedPaths Absolute paths of the files or directories that changed within the hierarchy
+     * @return If the batch was applied, false if it was interrupted
+     * @see Crawler#applyChanges(Collection)
      */
-    private void indexTextualContent(String content, int documentID) {
+    private boolean applyChangesExclusively(Collection<Path> changedPaths) {
 
-        // Normalize the textual content before breaking it into tokens
-        String normalizedContent = NormalizationUtils.normalizeStringNFD(content);
+        // Batches are the only writers once the inverted index is built, so it stays current until this one publishes
 
-        // Break down the normalized content into tokens using the statically specified token delimiter list
-        StringTokenizer tokenizer = new StringTokenizer(normalizedContent, TOKEN_DELIMITERS);
+        Map<String, Occurrences> currentIndex;
+        IDocumentCatalogue currentCatalogue;
 
-        /*
-         * Each token either creates a new entry with frequency 1 in the dictionary if it wasn't already
-         * included, or increments its frequency count by 1
-         */
+        synchronized (this) {
+            currentIndex = invertedIndex;
+            currentCatalogue = documentCatalog;
+        }
 
-        while (tokenizer.hasMoreTokens()) {
+        IDocumentCatalogue updatedCatalogue = currentCatalogue.copy();
+        DocumentChangeTracker changeTracker = new DocumentChangeTracker(updatedCatalogue);
+        List<Path> removedPaths = new ArrayList<>(); // Changed paths that no longer exist or are directories
 
-            String currentToken = tokenizer.nextToken();
+        // Index every new or modified document under the changed paths
 
-            /* Filter tokens. A token that appears in the inverse thesaurus (a stopword) can be discarded.
-             If it can't be discarded, check if it's present in the thesaurus */
+        DocumentIndexer[] indexers = runIndexingStage(documentSink -> {
 
-            if (!inverseThesaurus.containsKey(currentToken) && thesaurus.containsKey(currentToken)) {
+            for (Path changedPath : changedPaths) {
 
-                // The token is considered in the thesaurus, so process it
+                BasicFileAttributes attributes;
 
-                if (invertedIndex.containsKey(currentToken)) {
-                    // Delegate frequency calculation
-                    invertedIndex.get(currentToken).computeOccurrenceInDocument(documentID);
+                try {
+                    attributes = Files.readAttributes(changedPath, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    attributes = null; // The path no longer exists
+                }
+
+                if (attributes != null && attributes.isRegularFile()) {
+                    changeTracker.track(changedPath, attributes, documentSink);
                 } else {
-                    // Create new entry for this new token and delegate frequency calculation
-                    invertedIndex.put(currentToken, new Occurrences(documentID));
+                    removedPaths.add(changedPath);
+
+                    if (attributes != null && attributes.isDirectory())
+                        directoryWalker.walk(changedPath,
+                                (file, fileAttributes) -> changeTracker.track(file, fileAttributes, documentSink));
                 }
             }
+        });
+
+        if (indexers == null) return false;
+
+        // Remove the documents no longer found at or under the removed paths or directories
+
+        changeTracker.removeMissingDocuments(documentURL -> {
+            for (Path removedPath : removedPaths) {
+                String removedURL = removedPath.toString();
+                if (documentURL.equals(removedURL) || documentURL.startsWith(removedURL + File.separator)) return true;
+            }
+            return false;
+        });
+
+        changeTracker.printReport("Live update");
+
+        // Apply the changes over a copy of the inverted index, then replace the original
+
+        Map<String, Occurrences> updatedIndex = new TreeMap<>(currentIndex);
+
+        removeOccurrences(updatedIndex, changeTracker.staleDocuments, true);
+
+        for (DocumentIndexer indexer : indexers) {
+            mergePartialIndex(updatedIndex, indexer.getPartialIndex(), true);
+            indexer.recordDocumentLengths(updatedCatalogue);
         }
+
+        // Publish both copies at once
+
+        synchronized (this) {
+            invertedIndex = updatedIndex;
+            documentCatalog = updatedCatalogue;
+        }
+
+        return true;
+    }
+
+    /**
+     * Run the indexing stage of the crawl pipeline that has been chosen over the documents found by a discovery stage
+     *
+     * @param discovery The discovery stage, which publishes the documents to be indexed
+     * @return The indexers used, holding the partial indexes of the indexed documents. Null if the crawl was interrupted
+     */
+    private DocumentIndexer[] runIndexingStage(DocumentDiscovery discovery) {
+
+        // Compile the indexable terms once, they are shared by every indexer
+
+        CompiledDictionary indexableTerms = getIndexableTerms();
+
+        // Each indexer fills its own partial index
+
+        DocumentIndexer[] indexers = new DocumentIndexer[workerThreads];
+
+        for (int i = 0; i < workerThreads; i++)
+            indexers[i] = new DocumentIndexer(indexableTerms, parserRegistry, extractionWorkers, positionalIndex);
+
+        boolean completed = virtualThreadExtraction ?
+                indexWithVirtualThreads(discovery, indexers) :
+                indexWithWorkerPool(discovery, indexers);
+
+        if (extractionWorkers != null) extractionWorkers.printReport();
+        else parserRegistry.printReport();
+
+        return completed ? indexers : null;
     }
 
     /**
-     * Wrapper call around {@link Crawler#indexTextualContent(String, int)} to extract the textual information from a
-     * structured or semi-structured file using a concrete Tika parser, then it is indexed. If the guessed Tika parser
-     * fails then Tika's automatic parser detection is leveraged via {@link Crawler#indexWithTikaAutoParser(File, int)}
+     * Indexing stage of the crawl pipeline backed by a fixed pool of workers. Discovered documents are published into
+     * a bounded work queue and each worker takes documents from it and indexes them with its own indexer
      *
-     * @param file       Input structured or semi-structured file
-     * @param documentID The identifier associated with the input file
-     * @see Config#TIKA_PARSERS
+     * @param discovery The discovery stage, which publishes the documents to be indexed
+     * @param indexers  The indexers of the workers, one per worker
+     * @return If every document was indexed, false if the crawl was interrupted
      */
-    private void indexWithTikaParser(File file, int documentID) {
+    private boolean indexWithWorkerPool(DocumentDiscovery discovery, DocumentIndexer[] indexers) {
+
+        // Bounded queue of discovered documents pending to be indexed. Discovery blocks while the workers are busy
+        BlockingQueue<IndexingTask> workQueue = new ArrayBlockingQueue<>(WORK_QUEUE_CAPACITY);
 
-        FileInputStream fileInputStream = null;
+        // Start the indexing workers
 
-        // Get the fitting Tika parser class for the input file
+        ExecutorService workersPool = Executors.newFixedThreadPool(indexers.length);
 
-        Class<Parser> tikaParserClass = FileExtensionUtils.tikaParserForFile(file);
+        System.out.printf("[INFO] Indexing with %d worker thread(s)\n", indexers.length);
+
+        for (DocumentIndexer indexer : indexers)
+            workersPool.execute(() -> indexingWorker(indexer, workQueue));
 
         try {
 
-            BodyContentHandler textualContentHandler = new BodyContentHandler();
-            Metadata metadata = new Metadata();
-            fileInputStream = new FileInputStream(file);
-            ParseContext parseContext = new ParseContext();
+            discovery.discover((document, documentID) -> workQueue.put(new IndexingTask(document, documentID)));
 
-            // Instantiate the fitting Tika parser from the retrieved class
+            // Signal each worker there are no more documents to process
 
-            Parser tikaParser = tikaParserClass.newInstance();
-            System.out.printf("\t[INFO] With Tika parser => %s (%s)\n", tikaParserClass.getSimpleName(), tikaParserClass.toString());
+            for (int i = 0; i < indexers.length; i++)
+                workQueue.put(IndexingTask.END_OF_WORK);
 
-            // Get the textual content from the file using the Tika parser
+            workersPool.shutdown();
+            workersPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 
-            tikaParser.parse(fileInputStream, textualContentHandler, metadata, parseContext);
+        } catch (InterruptedException e) {
+            workersPool.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
+        }
 
-            // Index the textual content
+        return true;
+    }
 
-            indexTextualContent(textualContentHandler.toString(), documentID);
+    /**
+     * Indexing stage of the crawl pipeline that runs the extraction of each discovered document on its own virtual
+     * thread. There will be as many concurrent parses as indexers
+     *
+     * @param discovery The discovery stage, which publishes the documents to be indexed
+     * @param indexers  The indexers used to parse and index documents
+     * @return If every document was indexed, false if the crawl was interrupted
+     * @see VirtualThreadDispatcher
+     */
+    private boolean indexWithVirtualThreads(DocumentDiscovery discovery, DocumentIndexer[] indexers) {
+
+        VirtualThreadDispatcher dispatcher = new VirtualThreadDispatcher(indexers, MAX_IN_FLIGHT_DOCUMENTS);
+
+        System.out.printf("[INFO] Indexing with a virtual thread per document and %d concurrent parse(s)\n", indexers.length);
+
+        try {
+            discovery.discover(dispatcher::dispatch);
+            dispatcher.awaitCompletion();
+        } catch (InterruptedException e) {
+            dispatcher.abort();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        dispatcher.printReport();
+
+        return true;
+    }
+
+    /**
+     * Discovery stage of the crawl pipeline. Searches the whole hierarchy for documents, catalogues them and publishes
+     * them to the indexing stage
+     *
+     * @param rootPath     The starting point in the system's filesystem
+     * @param documentSink Where the discovered documents are published
+     * @throws InterruptedException If the discovery was interrupted while publishing a document
+     */
+    private void discoverDocuments(String rootPath, DocumentSink documentSink) throws InterruptedException {
+
+        /*
+         * The whole hierarchy is searched for files starting from the given root path and exploring all
+         * sub-directories. Files are streamed as they are found, always in the same order, so document identifiers
+         * are deterministic. Inverted files are never indexed
+         */
+
+        directoryWalker.walk(Paths.get(rootPath).toAbsolutePath(), (file, attributes) -> {
+
+            if (!file.getFileName().toString().equals(INVERTED_FILE_FILENAME)) {
+
+                // Add this document to the document catalogue and get its corresponding ID
+                int currentDocumentID = documentCatalog.addDocument(file.toString(), DocumentMetadata.fromAttributes(attributes));
+
+                documentSink.publish(file.toFile(), currentDocumentID);
+            }
+        });
+    }
+
+    /**
+     * Body of an indexing worker. Takes documents from the work queue and indexes them with its own indexer until the
+     * end of work is signaled
+     *
+     * @param indexer   The worker's indexer
+     * @param workQueue Queue where the discovered documents are published
+     */
+    private void indexingWorker(DocumentIndexer indexer, BlockingQueue<IndexingTask> workQueue) {
 
-        } catch (TikaException e) { // On failure use the automatic parser detection as a fallback mechanism
+        try {
 
-            System.out.println("\t[WARNING] The chosen Tika parser failed. Using fallback Tika Automatic Parser");
-            indexWithTikaAutoParser(file, documentID);
+            IndexingTask task;
 
-        } catch (InstantiationException | IllegalAccessException | IOException | SAXException e) {
-            e.printStackTrace();
-        } finally {
+            while ((task = workQueue.take()) != IndexingTask.END_OF_WORK) {
 
-            // Close the input file stream
+                /* A single faulty document shouldn't stop the worker. Errors are caught as well (e.g. a parser overflowing
+                the stack or missing a dependency), otherwise the worker would die silently and, once every worker is
+                dead, discovery would block forever publishing into a queue nobody drains */
 
-            if (fileInputStream != null) {
                 try {
-                    fileInputStream.close();
-                } catch (IOException e) {
+                    indexer.index(task.document, task.documentID);
+                } catch (Throwable e) {
+                    System.err.println("[ERROR] Unexpected error indexing (" + task.document + ")");
                     e.printStackTrace();
                 }
             }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Wrapper call around {@link Crawler#indexTextualContent(String, int)} to extract the textual information from a
-     * structured or semi-structured file when no specific Tika parser is available, then it is indexed
+     * Merge a partial index built by an indexing worker into an inverted index. Terms are merged in lexicographic
+     * order. As each document is indexed by only one worker the partial frequencies of different partial indexes
+     * never collide
      *
-     * @param file       Input structured or semi-structured file
-     * @param documentID The identifier associated with the input file
+     * @param targetIndex  The inverted index where the partial index is merged
+     * @param partialIndex The partial index to be merged
+     * @param copyOnWrite  If the occurrences of the inverted index must be copied before they are modified
      */
-    private void indexWithTikaAutoParser(File file, int documentID) {
+    private static void mergePartialIndex(Map<String, Occurrences> targetIndex, TermDictionary partialIndex,
+                                          boolean copyOnWrite) {
 
-        Tika tikaAutoParser = new Tika();
-        System.out.println("\t[INFO] With Tika Automatic Parser");
+        for (int termID : partialIndex.sortedTermIDs())
+            targetIndex.merge(partialIndex.getTerm(termID), partialIndex.getOccurrences(termID), copyOnWrite ?
+                    (current, partial) -> new Occurrences(current).merge(partial) :
+                    Occurrences::merge);
+    }
 
-        try {
+    /**
+     * Remove from an inverted index every occurrence within the given documents. Tokens left without occurrences are
+     * removed as well
+     *
+     * @param targetIndex The inverted index whose occurrences are removed
+     * @param documentIDs The identifiers of the documents whose occurrences are removed
+     * @param copyOnWrite If the occurrences of the inverted index must be copied before they are modified
+     */
+    private static void removeOccurrences(Map<String, Occurrences> targetIndex, BitSet documentIDs, boolean copyOnWrite) {
 
-            // Attempt to extract the textual content, delegating on Tika to decide the best parser, and indexing it
+        if (documentIDs.isEmpty()) return;
 
-            indexTextualContent(tikaAutoParser.parseToString(file), documentID);
+        Iterator<Map.Entry<String, Occurrences>> iterator = targetIndex.entrySet().iterator();
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (TikaException e) {
-            System.err.println("[ERROR] The file cannot interpreted by Tika. Ignoring it");
-        }
+        while (iterator.hasNext()) {
+
+            Map.Entry<String, Occurrences> tokenEntry = iterator.next();
+            Occurrences occurrences = tokenEntry.getValue();
+
+            if (!occurrences.occursInAnyDocument(documentIDs)) continue;
+
+            if (copyOnWrite) {
+                occurrences = new Occurrences(occurrences);
+                tokenEntry.setValue(occurrences);
+            }
+
+            occurrences.removeDocuments(documentIDs);
 
+            if (occurrences.getGlobalFrequency() == 0) iterator.remove();
+        }
     }
 
     /**
@@ -354,25 +587,50 @@ public class Crawler {
         return thesaurus.size() > 0 && inverseThesaurus.size() > 0;
     }
 
+    /**
+     * @return The terms of the thesaurus that aren't stopwords, compiled from the loaded thesauri the first time they
+     * are needed
+     */
+    private synchronized CompiledDictionary getIndexableTerms() {
+
+        if (indexableTerms == null)
+            indexableTerms = CompiledDictionary.compileIndexableTerms(thesaurus, inverseThesaurus);
+
+        return indexableTerms;
+    }
+
     /**
      * @return A complete representation of the inverted index built by this crawler that can be used to query terms.
      * This object shouldn't be modified
      */
-    public InvertedIndex exportInvertedIndex() {
+    public synchronized InvertedIndex exportInvertedIndex() {
 
         /* The cached representation should be updated if the current one is null or the inverted index or the
-        document's catalogue has changed */
+        document's catalogue has been replaced. Live changes are applied over copies, so comparing references is
+        enough to notice them */
 
         if (_cached_invertedIndex == null ||
-                !_cached_invertedIndex.getInvertedIndex().equals(invertedIndex) ||
-                !_cached_invertedIndex.getDocumentCatalogue().equals(documentCatalog)) {
+                _cached_invertedIndex.getInvertedIndex() != invertedIndex ||
+                _cached_invertedIndex.getDocumentCatalogue() != documentCatalog) {
+
+            // Without loaded thesauri the inverted index compiles its indexable terms itself when first needed
 
-            _cached_invertedIndex = new InvertedIndex(invertedIndex, documentCatalog);
+            _cached_invertedIndex = new InvertedIndex(invertedIndex, documentCatalog,
+                    areThesauriLoaded() ? getIndexableTerms() : null);
         }
 
         return _cached_invertedIndex;
     }
 
+    /**
+     * Serialize the current state of the inverted index, so live changes applied to it survive a restart
+     *
+     * @see Crawler#applyChanges(Collection)
+     */
+    public void persistInvertedIndex() {
+        createInvertedFile();
+    }
+
     /**
      * Serialize the built inverted index using the strategy specified by {@link Crawler#invertedIndexMarshaller} to
      * create an inverted file. If the provided root path is a file then the inverted file will be stored next to this
@@ -424,4 +682,179 @@ public class Crawler {
     public void setInvertedIndexMarshaller(IInvertedIndexMarshaller invertedIndexMarshaller) {
         this.invertedIndexMarshaller = invertedIndexMarshaller;
     }
+
+    public ParallelDirectoryWalker getDirectoryWalker() {
+        return directoryWalker;
+    }
+
+    public void setDirectoryWalker(ParallelDirectoryWalker directoryWalker) {
+        this.directoryWalker = directoryWalker;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        if (workerThreads < 1)
+            throw new IllegalArgumentException("At least 1 indexing worker is needed");
+
+        this.workerThreads = workerThreads;
+    }
+
+    public boolean isVirtualThreadExtraction() {
+        return virtualThreadExtraction;
+    }
+
+    public void setVirtualThreadExtraction(boolean virtualThreadExtraction) {
+        this.virtualThreadExtraction = virtualThreadExtraction;
+    }
+
+    public boolean isPositionalIndex() {
+        return positionalIndex;
+    }
+
+    public void setPositionalIndex(boolean positionalIndex) {
+        this.positionalIndex = positionalIndex;
+    }
+
+    public ExtractionWorkerPool getExtractionWorkers() {
+        return extractionWorkers;
+    }
+
+    public void setExtractionWorkers(ExtractionWorkerPool extractionWorkers) {
+        this.extractionWorkers = extractionWorkers;
+    }
+
+    /**
+     * Discovery stage of the crawl pipeline. Finds the documents to be indexed and publishes them
+     */
+    @FunctionalInterface
+    private interface DocumentDiscovery {
+
+        /**
+         * @param documentSink Where the documents to be indexed are published
+         * @throws InterruptedException If interrupted while publishing a document
+         */
+        void discover(DocumentSink documentSink) throws InterruptedException;
+
+    }
+
+    /**
+     * Receives the documents found by the discovery stage of the crawl pipeline
+     */
+    @FunctionalInterface
+    private interface DocumentSink {
+
+        /**
+         * @param document   A discovered document
+         * @param documentID The identifier assigned to the document
+         * @throws InterruptedException If interrupted while publishing the document
+         */
+        void publish(File document, int documentID) throws InterruptedException;
+
+    }
+
+    /**
+     * Unit of work of the crawl pipeline. A discovered document along with its assigned identifier
+     */
+    private static class IndexingTask {
+
+        // Special task to signal an indexing worker that there are no more documents to process
+        private static final IndexingTask END_OF_WORK = new IndexingTask(null, -1);
+
+        private final File document;
+        private final int documentID;
+
+        private IndexingTask(File document, int documentID) {
+            this.document = document;
+            this.documentID = documentID;
+        }
+    }
+
+    /**
+     * Compares the documents found in the filesystem with the ones recorded in a document's catalogue. New documents
+     * are catalogued and modified documents get their metadata updated, and both are published to be indexed. Unchanged
+     * documents are skipped
+     */
+    private static class DocumentChangeTracker {
+
+        private final IDocumentCatalogue catalogue; // The catalogue being brought up to date
+        private final int knownDocuments; // Upper bound of the document IDs catalogued before tracking any change
+        private final BitSet foundDocuments; // Catalogued documents still present in the hierarchy
+        private final BitSet staleDocuments; // Catalogued documents whose occurrences are outdated
+        private int addedDocuments = 0;
+        private int removedDocuments = 0;
+
+        private DocumentChangeTracker(IDocumentCatalogue catalogue) {
+            this.catalogue = catalogue;
+            knownDocuments = catalogue.getDocumentIDsUpperBound();
+            foundDocuments = new BitSet(knownDocuments);
+            staleDocuments = new BitSet(knownDocuments);
+        }
+
+        /**
+         * Publish a found document to be indexed if it's new or has been modified. Inverted files are never indexed
+         *
+         * @param file         A regular file found in the filesystem
+         * @param attributes   The file's attributes
+         * @param documentSink Where the documents to be indexed are published
+         * @throws InterruptedException If interrupted while publishing the document
+         */
+        private void track(Path file, BasicFileAttributes attributes, DocumentSink documentSink) throws InterruptedException {
+
+            if (file.getFileName().toString().equals(INVERTED_FILE_FILENAME)) return;
+
+            String documentURL = file.toString();
+            DocumentMetadata metadata = DocumentMetadata.fromAttributes(attributes);
+            int documentID = catalogue.getDocumentIDByURL(documentURL);
+
+            if (documentID == -1) { // New document
+
+                documentID = catalogue.addDocument(documentURL, metadata);
+                addedDocuments++;
+
+            } else { // Known document. Skip it if it hasn't changed
+
+                foundDocuments.set(documentID);
+
+                if (metadata.equals(catalogue.getDocumentMetadataByID(documentID))) return;
+
+                staleDocuments.set(documentID);
+                catalogue.updateDocumentMetadata(documentID, metadata);
+            }
+
+            documentSink.publish(file.toFile(), documentID);
+        }
+
+        /**
+         * Remove from the catalogue the previously catalogued documents that weren't found
+         *
+         * @param urlFilter Only the documents whose URL pass this filter are removed
+         */
+        private void removeMissingDocuments(Predicate<String> urlFilter) {
+
+            for (int documentID = 0; documentID < knownDocuments; documentID++) {
+
+                String documentURL = catalogue.getDocumentURLByID(documentID);
+
+                if (!foundDocuments.get(documentID) && documentURL != null && urlFilter.test(documentURL)) {
+                    catalogue.removeDocument(documentID);
+                    staleDocuments.set(documentID);
+                    removedDocuments++;
+                }
+            }
+        }
+
+        /**
+         * @param label Name of the operation that tracked the changes
+         */
+        private void printReport(String label) {
+
+            int modifiedDocuments = staleDocuments.cardinality() - removedDocuments;
+
+            System.out.printf("[INFO] %s => %d added, %d modified, %d removed, %d unchanged document(s)\n", label,
+                    addedDocuments, modifiedDocuments, removedDocuments, foundDocuments.cardinality() - modifiedDocuments);
+        }
+    }
 }
@@ -2,15 +2,29 @@ package es.unex.giiis.ribw.jgarciapft;
 
 import es.unex.giiis.ribw.jgarciapft.printers.ConsolePrinter;
 import es.unex.giiis.ribw.jgarciapft.printers.IInvertedIndexPrinter;
-import es.unex.giiis.ribw.jgarciapft.ranking.DescendingFrequencyRanking;
-import es.unex.giiis.ribw.jgarciapft.ranking.RankingCriterion;
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQuery;
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQueryEvaluator;
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQueryParser;
+import es.unex.giiis.ribw.jgarciapft.query.RankedRetrieval;
+import es.unex.giiis.ribw.jgarciapft.query.ResultPage;
+import es.unex.giiis.ribw.jgarciapft.query.TermSuggester;
+import es.unex.giiis.ribw.jgarciapft.query.TermSuggestion;
+import es.unex.giiis.ribw.jgarciapft.ranking.BM25Scoring;
+import es.unex.giiis.ribw.jgarciapft.ranking.IScoringCriterion;
+import es.unex.giiis.ribw.jgarciapft.ranking.ScoredDocument;
 import es.unex.giiis.ribw.jgarciapft.utils.NormalizationUtils;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
-import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_SUGGESTIONS;
+import static es.unex.giiis.ribw.jgarciapft.Config.RESULTS_CACHE_MAX_BYTES;
+import static es.unex.giiis.ribw.jgarciapft.Config.RESULTS_PAGE_SIZE;
 
 /**
  * Interactive commandline interface (CLI) to implement user operations. It depends on the exported inverted index
@@ -20,20 +34,32 @@ import java.util.TreeSet;
  */
 public class CrawlerCLI {
 
-    private final InvertedIndex invertedIndex; // The inverted index used to carry on operations
-    private RankingCriterion rankingCriterion; // Default ranking criterion to rank query results
+    private final Supplier<InvertedIndex> invertedIndexSupplier; // Provides the inverted index used to carry on operations
+    private IScoringCriterion scoringCriterion; // Default scoring criterion to rank query results
     private IInvertedIndexPrinter indexPrinter; // Default printer strategy to print the inverted index for the user
+    private final ResultPageCache resultsCache; // Pages of ranked results of recent searches
 
     /**
-     * Initializes the CLI with an inverted index and default ranking criterion and index printer
+     * Initializes the CLI with an inverted index and default scoring criterion and index printer
      *
      * @param invertedIndex An already built inverted index to be used to carry on operations
      */
     public CrawlerCLI(InvertedIndex invertedIndex) {
-        this.invertedIndex = invertedIndex;
+        this(() -> invertedIndex);
+    }
 
-        rankingCriterion = new DescendingFrequencyRanking();
+    /**
+     * Initializes the CLI with a source of inverted indexes and default scoring criterion and index printer. Each
+     * operation is carried on the inverted index provided at the time, so an inverted index kept up to date can be used
+     *
+     * @param invertedIndexSupplier Provides the most recent inverted index to be used to carry on each operation
+     */
+    public CrawlerCLI(Supplier<InvertedIndex> invertedIndexSupplier) {
+        this.invertedIndexSupplier = invertedIndexSupplier;
+
+        scoringCriterion = new BM25Scoring();
         indexPrinter = new ConsolePrinter();
+        resultsCache = new ResultPageCache(RESULTS_CACHE_MAX_BYTES);
     }
 
     /**
@@ -67,9 +93,28 @@ public class CrawlerCLI {
                 case OptionCodes.RANKED_TERM_SEARCH: // Perform a ranked single term search
 
                     prompt();
-                    System.out.print("[Term to search:] ");
+                    System.out.print("[Term to search (* and ? as wildcards):] ");
+
+                    rankedTermSearch(scanner.next(), scanner);
+
+                    break;
+
+                case OptionCodes.BOOLEAN_SEARCH: // Perform a ranked boolean search of several terms
+
+                    scanner.nextLine(); // Skip the rest of the option's line
+                    prompt();
+                    System.out.print("[Query (AND, OR, NOT, parentheses, \"phrases\", NEAR/k, wildcards):] ");
 
-                    rankedTermSearch(scanner.next());
+                    booleanSearch(scanner.nextLine(), scanner);
+
+                    break;
+
+                case OptionCodes.FUZZY_TERM_SEARCH: // Perform a ranked search of the terms similar to a term
+
+                    prompt();
+                    System.out.print("[Term to search, typos allowed:] ");
+
+                    fuzzyTermSearch(scanner.next(), scanner);
 
                     break;
 
@@ -93,52 +138,248 @@ public class CrawlerCLI {
 
     /**
      * Perform a ranked single term search. The input term is normalized so that it can match with the inverted index,
-     * which is also normalized. The output result contains the global and partial frequencies
+     * which is also normalized. The output result contains the global and partial frequencies. Terms with wildcards
+     * search every indexed term they match instead. If the term isn't indexed, similar indexed terms are suggested
      *
-     * @param term The term to search, not necessarily normalized yet
+     * @param term    The term to search, not necessarily normalized yet
+     * @param scanner Reads whether the user wants to see more results
      */
-    private void rankedTermSearch(String term) {
+    private void rankedTermSearch(String term, Scanner scanner) {
 
         if (term == null) return;
 
         String normalizedInputTerm = NormalizationUtils.normalizeStringNFD(term); // Get normalized representation
 
-        // If there's a match rank the occurrences with the ranking criterion, otherwise show no results were found
+        if (WildcardIndex.isPattern(normalizedInputTerm)) {
+            search(BooleanQuery.wildcard(normalizedInputTerm), scanner);
+            return;
+        }
+
+        InvertedIndex invertedIndex = invertedIndexSupplier.get(); // The whole search uses the same inverted index
+
+        // If there's a match rank the occurrences with the scoring criterion, otherwise show no results were found
 
         if (!normalizedInputTerm.isEmpty() && invertedIndex.getInvertedIndex().containsKey(normalizedInputTerm)) {
 
             // Retrieve unordered occurrences
             Occurrences occurrences = invertedIndex.getInvertedIndex().get(normalizedInputTerm);
 
-            // Rank the occurrences using the ranking criterion (a Comparator)
+            // Print the occurrences ranked with the scoring criterion
+
+            String header = String.format("%s [%d TOTAL]", normalizedInputTerm, occurrences.getGlobalFrequency());
+
+            printRankedResults(normalizedInputTerm, documentCount -> header,
+                    () -> new RankedRetrieval(invertedIndex, scoringCriterion, occurrences,
+                            List.of(normalizedInputTerm)),
+                    invertedIndex, scanner);
+        } else {
+            System.out.println("\nNo results found");
+
+            if (!normalizedInputTerm.isEmpty()) {
+
+                List<TermSuggestion> suggestions = suggest(normalizedInputTerm, invertedIndex);
 
-            TreeSet<Map.Entry<Integer, Integer>> supportTree = new TreeSet<>(rankingCriterion);
-            supportTree.addAll(occurrences.getOccurrences().entrySet()); // Occurrences are ranked when added
+                if (!suggestions.isEmpty()) {
+                    System.out.println("\nDid you mean:");
+                    printSuggestions(suggestions);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Perform a ranked search of the indexed terms similar to a term, which tolerates typos. The term and the indexed
+     * terms within a small edit distance of it are listed along with their global frequencies, and the documents with
+     * any of them are ranked
+     *
+     * @param term    The term to search, not necessarily normalized yet
+     * @param scanner Reads whether the user wants to see more results
+     * @see TermSuggester
+     */
+    private void fuzzyTermSearch(String term, Scanner scanner) {
+
+        if (term == null) return;
 
-            // Print the ranked results
+        String normalizedInputTerm = NormalizationUtils.normalizeStringNFD(term); // Get normalized representation
+        InvertedIndex invertedIndex = invertedIndexSupplier.get(); // The whole search uses the same inverted index
+
+        if (normalizedInputTerm.isEmpty()) {
+            System.out.println("\nNo results found");
+            return;
+        }
 
-            System.out.println("\n[Ranking criterion - " + rankingCriterion.getClass().getSimpleName() + "]");
-            System.out.printf("\n%s [%d TOTAL]\n", normalizedInputTerm, occurrences.getGlobalFrequency());
+        // The term itself, if it's indexed, and the most likely terms it's a misspelling of
 
-            for (Map.Entry<Integer, Integer> rankedResult : supportTree) {
+        List<TermSuggestion> similarTerms = new ArrayList<>();
+        Occurrences occurrences = invertedIndex.getInvertedIndex().get(normalizedInputTerm);
+
+        if (occurrences != null)
+            similarTerms.add(new TermSuggestion(normalizedInputTerm, 0, occurrences.getGlobalFrequency()));
+
+        similarTerms.addAll(suggest(normalizedInputTerm, invertedIndex));
+
+        if (similarTerms.isEmpty()) {
+            System.out.println("\nNo results found");
+            return;
+        }
+
+        System.out.println("\nSimilar terms:");
+        printSuggestions(similarTerms);
+
+        List<BooleanQuery> clauses = new ArrayList<>();
+
+        for (TermSuggestion similarTerm : similarTerms)
+            clauses.add(BooleanQuery.term(similarTerm.getTerm()));
+
+        search(clauses.size() == 1 ? clauses.get(0) : BooleanQuery.or(clauses), scanner);
+    }
+
+    /**
+     * @param term          A normalized term
+     * @param invertedIndex The inverted index whose terms are suggested
+     * @return The best suggestions for the term, empty if the term is too long to suggest anything for
+     */
+    private List<TermSuggestion> suggest(String term, InvertedIndex invertedIndex) {
 
-                String documentFullPath = invertedIndex.getDocumentCatalogue().getDocumentURLByID(rankedResult.getKey());
+        try {
+            return new TermSuggester(invertedIndex).suggest(term, MAX_SUGGESTIONS);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * @param suggestions Suggested terms to print, along with their edit distances and global frequencies
+     */
+    private void printSuggestions(List<TermSuggestion> suggestions) {
+
+        for (TermSuggestion suggestion : suggestions)
+            System.out.printf("  ├ %s (%d edit(s)) [%d TOTAL]\n", suggestion.getTerm(), suggestion.getDistance(),
+                    suggestion.getGlobalFrequency());
+    }
+
+    /**
+     * Perform a ranked boolean search. The query combines terms with the AND, OR and NOT operators and groups them with
+     * parentheses. Each matched document is ranked by its score for the terms of the query that aren't negated
+     *
+     * @param query   The query, whose terms aren't necessarily normalized yet
+     * @param scanner Reads whether the user wants to see more results
+     * @see BooleanQueryParser
+     */
+    private void booleanSearch(String query, Scanner scanner) {
+
+        BooleanQuery parsedQuery;
+
+        try {
+            parsedQuery = new BooleanQueryParser().parse(query);
+        } catch (IllegalArgumentException e) {
+            System.out.println("\nInvalid query (" + e.getMessage() + ")");
+            return;
+        }
+
+        search(parsedQuery, scanner);
+    }
+
+    /**
+     * Evaluate a parsed boolean query and print its ranked results. The query is only evaluated if its results aren't
+     * cached
+     *
+     * @param query   The parsed query
+     * @param scanner Reads whether the user wants to see more results
+     */
+    private void search(BooleanQuery query, Scanner scanner) {
+
+        InvertedIndex invertedIndex = invertedIndexSupplier.get(); // The whole search uses the same inverted index
+        BooleanQueryEvaluator evaluator = new BooleanQueryEvaluator(invertedIndex);
+
+        try {
+            printRankedResults(query.toString(),
+                    documentCount -> String.format("%s [%d DOCUMENT(S)]", query, documentCount),
+                    () -> new RankedRetrieval(invertedIndex, scoringCriterion, evaluator.evaluate(query),
+                            evaluator.getPositiveTerms(query)),
+                    invertedIndex, scanner);
+        } catch (IllegalArgumentException e) {
+            System.out.println("\nInvalid query (" + e.getMessage() + ")");
+        } catch (IllegalStateException e) {
+            System.out.println("\nUnsupported query (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Print the ranked results of a search a page at a time, asking the user after each page whether to show the next
+     * one. Pages are taken from the results cache when possible. Otherwise the search is ranked, only once, and the
+     * page is cached
+     *
+     * @param query         The normalized query, which identifies the search within the results cache
+     * @param header        Describes the search given its number of results
+     * @param ranking       Ranks the results of the search with the scoring criterion
+     * @param invertedIndex The inverted index searched
+     * @param scanner       Reads whether the user wants to see more results
+     */
+    private void printRankedResults(String query, IntFunction<String> header, Supplier<RankedRetrieval> ranking,
+                                    InvertedIndex invertedIndex, Scanner scanner) {
+
+        RankedRetrieval rankedResults = null; // Only ranked if some page isn't cached
+        int shown = 0;
+
+        while (true) {
+
+            // Get the next page of ranked results
+
+            ResultPage page = resultsCache.get(invertedIndex, query, scoringCriterion, shown, RESULTS_PAGE_SIZE);
+
+            if (page == null) {
+
+                if (rankedResults == null) rankedResults = ranking.get();
+
+                page = ResultPage.of(rankedResults, shown, RESULTS_PAGE_SIZE, invertedIndex.getDocumentCatalogue());
+                resultsCache.put(invertedIndex, query, scoringCriterion, shown, RESULTS_PAGE_SIZE, page);
+            }
+
+            if (page.getTotalCount() == 0) {
+                System.out.println("\nNo results found");
+                return;
+            }
+
+            if (shown == 0) {
+                System.out.println("\n[Scoring criterion - " + scoringCriterion.getClass().getSimpleName() + "]");
+                System.out.printf("\n%s\n", header.apply(page.getTotalCount()));
+            }
+
+            // Print it
+
+            ScoredDocument[] results = page.getResults();
+
+            for (int i = 0; i < results.length; i++) {
+
+                String documentFullPath = page.getDocumentURLs()[i];
                 String[] split = documentFullPath.split(File.separator.equals("\\") ? "\\\\" : File.separator);
                 String documentName = split[split.length - 1];
 
-                System.out.printf("  ├ %s => %d hit(s) [%s]\n", documentName, rankedResult.getValue(), documentFullPath);
+                System.out.printf("  ├ %s => %d hit(s), score %.4f [%s]\n", documentName, results[i].getFrequency(),
+                        results[i].getScore(), documentFullPath);
             }
-        } else {
-            System.out.println("\nNo results found");
-        }
 
+            shown += results.length;
+            System.out.printf("\nResults %d-%d of %d\n", shown - results.length + 1, shown, page.getTotalCount());
+
+            if (shown >= page.getTotalCount()) return;
+
+            // Ask whether to show the next page
+
+            prompt();
+            System.out.print("[Show more results? (y/n):] ");
+
+            if (!scanner.next().equalsIgnoreCase("y")) return;
+        }
     }
 
     /**
      * Use the index printer to print the inverted index
      */
     private void printInvertedIndex() {
-        indexPrinter.print(invertedIndex);
+        indexPrinter.print(invertedIndexSupplier.get());
     }
 
     /**
@@ -150,6 +391,8 @@ public class CrawlerCLI {
         System.out.println();
         System.out.println("[" + OptionCodes.RANKED_TERM_SEARCH + "] Ranked term search");
         System.out.println("[" + OptionCodes.PRINT_INVERTED_INDEX + "] Print inverted index");
+        System.out.println("[" + OptionCodes.BOOLEAN_SEARCH + "] Ranked boolean search");
+        System.out.println("[" + OptionCodes.FUZZY_TERM_SEARCH + "] Fuzzy term search");
         System.out.println();
         System.out.println("[" + OptionCodes.EXIT + "] EXIT");
         System.out.println();
@@ -162,12 +405,16 @@ public class CrawlerCLI {
         System.out.print("pc-crawler> ");
     }
 
-    public RankingCriterion getRankingHeuristic() {
-        return rankingCriterion;
+    public IScoringCriterion getScoringCriterion() {
+        return scoringCriterion;
+    }
+
+    public void setScoringCriterion(IScoringCriterion scoringCriterion) {
+        this.scoringCriterion = scoringCriterion;
     }
 
-    public void setRankingHeuristic(RankingCriterion rankingCriterion) {
-        this.rankingCriterion = rankingCriterion;
+    public ResultPageCache getResultsCache() {
+        return resultsCache;
     }
 
     public IInvertedIndexPrinter getIndexPrinter() {
@@ -186,6 +433,8 @@ public class CrawlerCLI {
         private static final int EXIT = 0;
         private static final int RANKED_TERM_SEARCH = 1;
         private static final int PRINT_INVERTED_INDEX = 2;
+        private static final int BOOLEAN_SEARCH = 3;
+        private static final int FUZZY_TERM_SEARCH = 4;
         private static final int NOP = 10;
 
     }
@@ -0,0 +1,339 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import es.unex.giiis.ribw.jgarciapft.extraction.ExtractionWorkerPool;
+import es.unex.giiis.ribw.jgarciapft.extraction.TikaExtractor;
+import es.unex.giiis.ribw.jgarciapft.extraction.TikaParserRegistry;
+import es.unex.giiis.ribw.jgarciapft.utils.FileExtensionUtils;
+import es.unex.giiis.ribw.jgarciapft.utils.NormalizationUtils;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.mime.MediaType;
+import org.xml.sax.SAXException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.TOKEN_DELIMITERS;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.encodeSortedInts;
+
+/**
+ * Extracts the textual content of documents and indexes it into a private partial inverted index. Each indexing
+ * worker owns one indexer, so no synchronization is needed while indexing. Once all documents are processed the
+ * partial indexes of every worker are merged into the crawler's inverted index
+ * <p>
+ * The text extracted by Tika is tokenized as it's extracted, never collected as a whole. The occurrences of each
+ * document are staged and only added to the partial index once its extraction ends, so a failed extraction attempt
+ * leaves nothing behind
+ * <p>
+ * Optionally, the position of each occurrence within its document is recorded too. The position of a token is the
+ * number of tokens that come before it in the document, whether they are indexed or not, so the gaps left by stopwords
+ * are kept
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class DocumentIndexer {
+
+    // Breaks textual content into tokens using the statically specified token delimiter list
+    private static final Tokenizer TOKENIZER = new Tokenizer(TOKEN_DELIMITERS);
+
+    // Terms of the thesaurus that aren't stopwords, the only ones indexed. Shared read-only between all indexers
+    private final CompiledDictionary indexableTerms;
+    // Extracts the text of structured documents in this process, with the Tika parsers shared between all indexers
+    private final TikaExtractor tikaExtractor;
+    // Child JVMs extracting the text of structured documents out of process. Shared between all indexers. Null if
+    // the text is extracted in this process
+    private final ExtractionWorkerPool extractionWorkers;
+    /* Partial inverted index holding the occurrences of the documents processed by this indexer. Terms aren't
+    ordered, the lexicographic order is established when the partial index is merged */
+    private final TermDictionary partialIndex;
+    // If the position of each occurrence is recorded
+    private final boolean recordPositions;
+
+    // Reusable buffer holding the normalized content being tokenized
+    private char[] contentBuffer;
+    // Identifier of the document whose content is being tokenized
+    private int currentDocumentID;
+    // Receives the tokens of the content being tokenized. Created once so tokenizing allocates nothing
+    private final Tokenizer.TokenSink tokenSink;
+    // Tokenizes the text extracted by Tika as it's extracted
+    private final TokenizingContentHandler tokenizingContentHandler;
+    // Occurrences of the document being indexed, added to the partial index once its extraction ends
+    private final TermDictionary documentTerms;
+    // Number of tokens of the document being indexed, whether they are indexed or not. Also the next token's position
+    private int currentDocumentLength;
+    // Positions of each term of the document being indexed, by term ID of the staged occurrences. Only used if
+    // positions are recorded. Reused between documents, the term's staged frequency tells how many are valid
+    private int[][] documentPositions;
+    // Identifier and length in tokens of each document indexed by this indexer, in indexing order
+    private int[] indexedDocumentIDs;
+    private int[] indexedDocumentLengths;
+    private int indexedDocumentCount;
+
+    /**
+     * @param indexableTerms    Terms that will be indexed, that is, the terms of the thesaurus that aren't stopwords
+     * @param parserRegistry    Where to get the Tika parsers from
+     * @param extractionWorkers Child JVMs that extract the text of structured documents, or null to extract it in this
+     *                          process
+     * @param recordPositions   If the position of each occurrence is recorded
+     * @see CompiledDictionary#compileIndexableTerms(java.util.Map, java.util.Map)
+     */
+    public DocumentIndexer(CompiledDictionary indexableTerms, TikaParserRegistry parserRegistry,
+                           ExtractionWorkerPool extractionWorkers, boolean recordPositions) {
+        this.indexableTerms = indexableTerms;
+        this.extractionWorkers = extractionWorkers;
+        this.recordPositions = recordPositions;
+
+        tikaExtractor = new TikaExtractor(parserRegistry);
+
+        partialIndex = new TermDictionary();
+
+        contentBuffer = new char[1024];
+        tokenSink = this::indexToken;
+        tokenizingContentHandler = new TokenizingContentHandler(TOKENIZER, tokenSink);
+        documentTerms = new TermDictionary();
+        documentPositions = recordPositions ? new int[64][] : null;
+
+        indexedDocumentIDs = new int[16];
+        indexedDocumentLengths = new int[16];
+        indexedDocumentCount = 0;
+    }
+
+    /**
+     * Extract the textual content of a document and index it into the partial index. The document's content is read
+     * directly from the filesystem
+     *
+     * @param document   The document to be indexed
+     * @param documentID The identifier associated with the document
+     * @see DocumentIndexer#index(File, ContentSource, int)
+     */
+    public void index(File document, int documentID) {
+        index(document, () -> new FileInputStream(document), documentID);
+    }
+
+    /**
+     * Extract the textual content of a document and index it into the partial index. The extraction strategy depends
+     * on the document's nature: 1) text based, 2) structured or semi-structured, analysable by a Tika parser
+     *
+     * @param document   The document to be indexed. Its name decides the extraction strategy
+     * @param content    Where to read the document's content from
+     * @param documentID The identifier associated with the document
+     */
+    public void index(File document, ContentSource content, int documentID) {
+
+        System.out.printf("[DOCUMENT] %s (%s)\n", document.getName(), document.getAbsolutePath());
+
+        // The document is known to be a regular file, so its extension is taken directly from its name
+        String extension = FileExtensionUtils.extractExtension(document.getName());
+
+        currentDocumentID = documentID;
+        currentDocumentLength = 0;
+        documentTerms.clear();
+
+        try {
+
+            if (FileExtensionUtils.isTextualExtension(extension)) { // 1) Textual file
+
+                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(content.open(), StandardCharsets.UTF_8));
+                String line;
+
+                // Read the file line by line and index each one
+
+                while ((line = bufferedReader.readLine()) != null)
+                    indexTextualContent(line);
+
+                bufferedReader.close();
+
+            } else { // 2) Structured file, parsed by the Tika parser of its detected media type
+
+                indexWithTika(document, content, extension);
+
+            }
+        } catch (FileNotFoundException e) { // Either the file disappeared or it isn't readable
+            System.err.println("[ERROR] Unable to read (" + document + ")");
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+
+            // Add the staged occurrences of the document to the partial index
+
+            for (int termID = 0; termID < documentTerms.size(); termID++) {
+
+                int frequency = documentTerms.getOccurrences(termID).getGlobalFrequency();
+
+                partialIndex.computeOccurrences(documentTerms.getTerm(termID), documentID, frequency,
+                        recordPositions ? encodeSortedInts(documentPositions[termID], frequency) : null);
+            }
+
+            recordDocumentLength(documentID, currentDocumentLength);
+        }
+    }
+
+    /**
+     * Feed non-structured text based content of the document being indexed to the partial index. The content is
+     * normalized and filtered with both a thesaurus and an inverse thesaurus before it is indexed.
+     *
+     * @param content The textual content to be indexed
+     */
+    private void indexTextualContent(String content) {
+
+        // Normalize the textual content into the reusable buffer before breaking it into tokens, growing the buffer if
+        // it doesn't fit
+
+        if (content.length() > contentBuffer.length)
+            contentBuffer = new char[Math.max(content.length(), contentBuffer.length * 2)];
+
+        int length = NormalizationUtils.normalizeStringNFD(content, contentBuffer);
+
+        // Break down the normalized content into tokens, each one is indexed by the token sink
+
+        TOKENIZER.tokenize(contentBuffer, 0, length, tokenSink);
+    }
+
+    /**
+     * Index a token of the content being tokenized. The token either creates a new entry with frequency 1 in the term
+     * dictionary if it wasn't already included, or increments its frequency count by 1
+     *
+     * @param buffer The buffer holding the token
+     * @param offset Offset of the token within the buffer
+     * @param length Length of the token
+     */
+    private void indexToken(char[] buffer, int offset, int length) {
+
+        int position = currentDocumentLength++;
+
+        /* Filter tokens. Only tokens present in the thesaurus that don't appear in the inverse thesaurus
+         (stopwords) are indexed, which a single lookup in the compiled indexable terms tells. Discarded tokens are
+         never turned into strings */
+
+        String term = indexableTerms.lookup(buffer, offset, length);
+
+        if (term != null) {
+
+            // The token is considered in the thesaurus, so process it. A single hash lookup finds or creates its entry
+
+            if (recordPositions) stagePosition(documentTerms.termID(term), position);
+            else documentTerms.computeOccurrence(term, currentDocumentID);
+        }
+    }
+
+    /**
+     * Register an occurrence of a term of the document being indexed along with its position
+     *
+     * @param termID   The term's ID within the staged occurrences
+     * @param position The occurrence's position
+     */
+    private void stagePosition(int termID, int position) {
+
+        Occurrences occurrences = documentTerms.getOccurrences(termID);
+        int count = occurrences.getGlobalFrequency(); // Positions of the term staged so far
+
+        if (termID >= documentPositions.length)
+            documentPositions = Arrays.copyOf(documentPositions, Math.max(termID + 1, documentPositions.length * 2));
+
+        int[] termPositions = documentPositions[termID];
+
+        if (termPositions == null)
+            termPositions = documentPositions[termID] = new int[4];
+        else if (count == termPositions.length)
+            termPositions = documentPositions[termID] = Arrays.copyOf(termPositions, count * 2);
+
+        termPositions[count] = position;
+        occurrences.computeOccurrenceInDocument(currentDocumentID);
+    }
+
+    /**
+     * Extract the textual information from a structured or semi-structured file using a Tika parser, indexing it as
+     * it's extracted. The file's media type is detected from its first bytes and its name, then the file is parsed
+     * once by the parser chosen for that type, which is the concrete parser of its extension unless the extension lies
+     * <p>
+     * If there are extraction workers, the file is parsed by one of them in a child JVM, which reads it by itself from
+     * the filesystem
+     *
+     * @param file      Input structured or semi-structured file
+     * @param content   Where to read the file's content from
+     * @param extension The file's extension
+     * @see Config#TIKA_PARSERS
+     * @see TikaParserRegistry#selectParser(String, MediaType)
+     * @see ExtractionWorkerPool
+     */
+    private void indexWithTika(File file, ContentSource content, String extension) {
+
+        // Index the textual content as it's extracted from the file
+
+        tokenizingContentHandler.reset();
+
+        try {
+
+            if (extractionWorkers != null) {
+                extractionWorkers.extract(file, tokenizingContentHandler,
+                        message -> System.out.println("\t[INFO] " + message));
+            } else {
+                try (InputStream inputStream = content.open()) {
+                    tikaExtractor.extract(file.getName(), extension, inputStream, tokenizingContentHandler,
+                            message -> System.out.println("\t[INFO] " + message));
+                }
+            }
+
+            tokenizingContentHandler.finish();
+
+        } catch (TikaException | SAXException e) {
+            documentTerms.clear();
+            currentDocumentLength = 0;
+            System.err.println("[ERROR] The file cannot interpreted by Tika. Ignoring it (" + e.getMessage() + ")");
+        } catch (IOException e) {
+            documentTerms.clear();
+            currentDocumentLength = 0;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param documentID The identifier of an indexed document
+     * @param length     The number of tokens of the document
+     */
+    private void recordDocumentLength(int documentID, int length) {
+
+        if (indexedDocumentCount == indexedDocumentIDs.length) {
+            indexedDocumentIDs = Arrays.copyOf(indexedDocumentIDs, indexedDocumentCount * 2);
+            indexedDocumentLengths = Arrays.copyOf(indexedDocumentLengths, indexedDocumentCount * 2);
+        }
+
+        indexedDocumentIDs[indexedDocumentCount] = documentID;
+        indexedDocumentLengths[indexedDocumentCount++] = length;
+    }
+
+    /**
+     * Record in a document's catalogue the length in tokens of every document indexed by this indexer. The catalogue
+     * isn't safe for concurrent use, so this is done once indexing ends
+     *
+     * @param catalogue The catalogue of the indexed documents
+     */
+    public void recordDocumentLengths(IDocumentCatalogue catalogue) {
+
+        for (int i = 0; i < indexedDocumentCount; i++)
+            catalogue.updateDocumentLength(indexedDocumentIDs[i], indexedDocumentLengths[i]);
+    }
+
+    /**
+     * @return The partial inverted index built by this indexer
+     */
+    public TermDictionary getPartialIndex() {
+        return partialIndex;
+    }
+
+    /**
+     * Source of a document's content. Each call opens a new stream positioned at the beginning of the content, so a
+     * document can be read again if the first extraction attempt fails
+     */
+    @FunctionalInterface
+    public interface ContentSource {
+
+        /**
+         * @return A new stream to read the document's content. The caller is responsible for closing it
+         * @throws IOException If the content can't be opened
+         */
+        InputStream open() throws IOException;
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.Serializable;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Filesystem attributes of a catalogued document at the time it was indexed. They are used to tell if a document has
+ * changed since then without reading its contents
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class DocumentMetadata implements Serializable {
+
+    // Fixed so catalogues already serialized with document metadata can still be deserialized if this class changes
+    private static final long serialVersionUID = -7308346876631486149L;
+
+    private final long size; // Size in bytes
+    private final long lastModified; // Last modification time in milliseconds since the epoch
+    private final String fileKey; // Unique identifier of the file in its filesystem (e.g. device and inode), if any
+
+    public DocumentMetadata(long size, long lastModified, String fileKey) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * @param attributes The attributes of a document read from the filesystem
+     * @return The metadata of the document
+     */
+    public static DocumentMetadata fromAttributes(BasicFileAttributes attributes) {
+        return new DocumentMetadata(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                attributes.fileKey() != null ? attributes.fileKey().toString() : null);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DocumentMetadata that = (DocumentMetadata) o;
+        return size == that.size && lastModified == that.lastModified && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, lastModified, fileKey);
+    }
+
+}
@@ -1,20 +1,52 @@
 package es.unex.giiis.ribw.jgarciapft;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
  * LUT table implementation of the document's catalogue backed by an ArrayList. It has O(1) complexity for both: adding
- * new documents and retrieving a document by ID. The index inside the array serves as the numeric document identifier
+ * new documents and retrieving a document by ID. The index inside the array serves as the numeric document identifier.
+ * Removed documents leave a null URL behind so identifiers are never reused
  *
  * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
  */
 public class DocumentsLUT implements IDocumentCatalogue {
 
+    // Fixed so catalogues serialized before document metadata was recorded can still be deserialized
+    private static final long serialVersionUID = -4663446987452255050L;
+
     private final ArrayList<String> documentsLUT;
+    // Metadata of each document, indexed by document ID. Null for catalogues serialized without metadata
+    private ArrayList<DocumentMetadata> documentsMetadata;
+    /* Length in tokens of each document, indexed by document ID, or -1 if it's unknown. Documents beyond its end have
+    unknown lengths. Null for catalogues serialized without lengths */
+    private int[] documentLengths;
+    // Reverse lookup of document IDs by URL. Built on demand
+    private transient Map<String, Integer> documentIDsByURL;
 
     public DocumentsLUT() {
         documentsLUT = new ArrayList<>();
+        documentsMetadata = new ArrayList<>();
+        documentLengths = new int[0];
+    }
+
+    /**
+     * Instantiate a catalogue with the given documents. The position of each document becomes its identifier
+     *
+     * @param documentURLs      The URL of each document, or null for removed documents
+     * @param documentsMetadata The metadata of each document, or null if it's unknown
+     */
+    public DocumentsLUT(List<String> documentURLs, List<DocumentMetadata> documentsMetadata) {
+        documentsLUT = new ArrayList<>(documentURLs);
+        this.documentsMetadata = new ArrayList<>(documentsMetadata);
+        documentLengths = new int[0];
     }
 
     /**
@@ -22,6 +54,14 @@ public class DocumentsLUT implements IDocumentCatalogue {
      */
     @Override
     public int addDocument(String documentURL) {
+        return addDocument(documentURL, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int addDocument(String documentURL, DocumentMetadata metadata) {
 
         // Check that the document URL is not null and has some content. -1 is the error code
 
@@ -29,6 +69,9 @@ public class DocumentsLUT implements IDocumentCatalogue {
 
         int nextDocumentID = documentsLUT.size(); // The array length becomes the ID for the new catalogued document
         documentsLUT.add(documentURL);
+        documentsMetadata.add(metadata);
+
+        if (documentIDsByURL != null) documentIDsByURL.put(documentURL, nextDocumentID);
 
         return nextDocumentID;
     }
@@ -46,17 +89,140 @@ public class DocumentsLUT implements IDocumentCatalogue {
         return documentsLUT.get(documentID);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDocumentIDByURL(String documentURL) {
+
+        // Build the reverse lookup the first time it's needed
+
+        if (documentIDsByURL == null) {
+
+            documentIDsByURL = new HashMap<>();
+
+            for (int documentID = 0; documentID < documentsLUT.size(); documentID++)
+                if (documentsLUT.get(documentID) != null)
+                    documentIDsByURL.put(documentsLUT.get(documentID), documentID);
+        }
+
+        return documentIDsByURL.getOrDefault(documentURL, -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DocumentMetadata getDocumentMetadataByID(int documentID) {
+
+        if (documentsMetadata.size() <= documentID) return null;
+
+        return documentsMetadata.get(documentID);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateDocumentMetadata(int documentID, DocumentMetadata metadata) {
+        if (documentID < documentsMetadata.size()) documentsMetadata.set(documentID, metadata);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDocumentLength(int documentID) {
+        return documentID < documentLengths.length ? documentLengths[documentID] : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateDocumentLength(int documentID, int length) {
+
+        if (documentID >= documentsLUT.size()) return;
+
+        // Grow the lengths up to the catalogue's size, unknown by default
+
+        if (documentID >= documentLengths.length) {
+
+            if (length < 0) return;
+
+            int previousLength = documentLengths.length;
+            documentLengths = Arrays.copyOf(documentLengths, documentsLUT.size());
+            Arrays.fill(documentLengths, previousLength, documentLengths.length, -1);
+        }
+
+        documentLengths[documentID] = length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeDocument(int documentID) {
+
+        if (documentsLUT.size() <= documentID) return;
+
+        if (documentIDsByURL != null) documentIDsByURL.remove(documentsLUT.get(documentID));
+
+        documentsLUT.set(documentID, null);
+        documentsMetadata.set(documentID, null);
+        updateDocumentLength(documentID, -1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDocumentIDsUpperBound() {
+        return documentsLUT.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IDocumentCatalogue copy() {
+
+        DocumentsLUT copy = new DocumentsLUT();
+        copy.documentsLUT.addAll(documentsLUT);
+        copy.documentsMetadata.addAll(documentsMetadata);
+        copy.documentLengths = documentLengths.clone();
+
+        return copy;
+    }
+
+    /**
+     * Catalogues serialized before document metadata or lengths were recorded are restored with unknown metadata or
+     * lengths
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        in.defaultReadObject();
+
+        if (documentsMetadata == null)
+            documentsMetadata = new ArrayList<>(Collections.nCopies(documentsLUT.size(), null));
+
+        if (documentLengths == null)
+            documentLengths = new int[0];
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         DocumentsLUT that = (DocumentsLUT) o;
-        return Objects.equals(documentsLUT, that.documentsLUT);
+        return Objects.equals(documentsLUT, that.documentsLUT) &&
+                Objects.equals(documentsMetadata, that.documentsMetadata) &&
+                Arrays.equals(documentLengths, that.documentLengths);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(documentsLUT);
+        return 31 * Objects.hash(documentsLUT, documentsMetadata) + Arrays.hashCode(documentLengths);
     }
 
 }
@@ -4,8 +4,9 @@ import java.io.Serializable;
 
 /**
  * Implementation agnostic definition of the operations that should support a document's catalogue. The purpose of the
- * catalogue is to establish a bijection between document URLs and numeric document identifiers, but only URLs can be
- * queried from identifiers
+ * catalogue is to establish a bijection between document URLs and numeric document identifiers. Each document also
+ * records the filesystem metadata it had when it was indexed, so changed documents can be detected, and its length in
+ * tokens, so search results can be scored
  *
  * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
  */
@@ -19,6 +20,15 @@ public interface IDocumentCatalogue extends Serializable {
      */
     int addDocument(String documentURL);
 
+    /**
+     * Add a new document identified by its URL to the catalogue along with its filesystem metadata
+     *
+     * @param documentURL The URL of the new document
+     * @param metadata    The metadata of the document when it was indexed
+     * @return The associated numeric identifier for the new document, or -1 in the event of an error
+     */
+    int addDocument(String documentURL, DocumentMetadata metadata);
+
     /**
      * Query a document URL associated with a document ID
      *
@@ -27,4 +37,59 @@ public interface IDocumentCatalogue extends Serializable {
      */
     String getDocumentURLByID(int documentID);
 
+    /**
+     * Query the document ID associated with a document URL
+     *
+     * @param documentURL The URL of a catalogued document
+     * @return The document ID associated with this URL, or -1 if no such mapping exists
+     */
+    int getDocumentIDByURL(String documentURL);
+
+    /**
+     * @param documentID Numeric document ID
+     * @return The metadata the document had when it was indexed, or null if it's unknown or no such mapping exists
+     */
+    DocumentMetadata getDocumentMetadataByID(int documentID);
+
+    /**
+     * Record the new filesystem metadata of a document that's going to be indexed again
+     *
+     * @param documentID Numeric document ID
+     * @param metadata   The metadata of the document when it's indexed again
+     */
+    void updateDocumentMetadata(int documentID, DocumentMetadata metadata);
+
+    /**
+     * @param documentID Numeric document ID
+     * @return The number of tokens of the document when it was indexed, or -1 if it's unknown or no such mapping
+     * exists
+     */
+    int getDocumentLength(int documentID);
+
+    /**
+     * Record the number of tokens of a document once it's indexed
+     *
+     * @param documentID Numeric document ID
+     * @param length     The number of tokens of the document
+     */
+    void updateDocumentLength(int documentID, int length);
+
+    /**
+     * Remove a document from the catalogue. Its identifier isn't reused, so the rest of identifiers remain valid
+     *
+     * @param documentID Numeric document ID
+     */
+    void removeDocument(int documentID);
+
+    /**
+     * @return The number of document identifiers ever assigned, including those of removed documents. Every valid
+     * document identifier is lower than this number
+     */
+    int getDocumentIDsUpperBound();
+
+    /**
+     * @return A copy of this catalogue that can be modified without affecting it
+     */
+    IDocumentCatalogue copy();
+
 }
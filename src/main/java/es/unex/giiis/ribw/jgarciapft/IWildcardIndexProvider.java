@@ -0,0 +1,17 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+/**
+ * Implemented by the inverted indexes that already hold a wildcard index of their terms, such as the ones read from a
+ * binary inverted file, so it isn't rebuilt from their terms
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see InvertedIndex#getWildcardIndex()
+ */
+public interface IWildcardIndexProvider {
+
+    /**
+     * @return The wildcard index of the inverted index's terms, or null if it doesn't hold one
+     */
+    WildcardIndex getWildcardIndex();
+
+}
@@ -1,7 +1,16 @@
 package es.unex.giiis.ribw.jgarciapft;
 
+import es.unex.giiis.ribw.jgarciapft.loaders.InverseThesaurusLoader;
+import es.unex.giiis.ribw.jgarciapft.loaders.ThesaurusLoader;
+import es.unex.giiis.ribw.jgarciapft.ranking.CollectionStatistics;
+
+import java.io.File;
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.DEFAULT_INVERSE_THESAURUS_PATH;
+import static es.unex.giiis.ribw.jgarciapft.Config.DEFAULT_THESAURUS_PATH;
 
 /**
  * Unmodifiable representation of a built inverted index for the purpose of exporting it out of the crawler and
@@ -11,12 +20,32 @@ import java.util.Map;
  */
 public class InvertedIndex implements Serializable {
 
+    private static final AtomicLong nextVersion = new AtomicLong(); // Version of the next snapshot
+
     private final Map<String, Occurrences> invertedIndex;
     private final IDocumentCatalogue documentCatalogue;
+    private final long version; // Identifies this snapshot of the inverted index
+    private transient volatile CollectionStatistics collectionStatistics; // Computed when first needed
+    private transient volatile WildcardIndex wildcardIndex; // Read or built when first needed
+    private transient volatile CompiledDictionary indexableTerms; // Given or compiled when first needed
 
     public InvertedIndex(Map<String, Occurrences> invertedIndex, IDocumentCatalogue documentCatalogue) {
+        this(invertedIndex, documentCatalogue, null);
+    }
+
+    /**
+     * @param invertedIndex     Occurrences of each indexed term
+     * @param documentCatalogue Catalogue of the indexed documents
+     * @param indexableTerms    Terms the index was built with, that is, the terms of the thesaurus that aren't
+     *                          stopwords. If null they're compiled from the default thesauri when first needed
+     */
+    public InvertedIndex(Map<String, Occurrences> invertedIndex, IDocumentCatalogue documentCatalogue,
+                         CompiledDictionary indexableTerms) {
         this.invertedIndex = invertedIndex;
         this.documentCatalogue = documentCatalogue;
+        this.indexableTerms = indexableTerms;
+
+        version = nextVersion.getAndIncrement();
     }
 
     public Map<String, Occurrences> getInvertedIndex() {
@@ -27,4 +56,65 @@ public class InvertedIndex implements Serializable {
         return documentCatalogue;
     }
 
+    /**
+     * @return Version of this snapshot of the inverted index. Snapshots created later have greater versions, so results
+     * computed over an older snapshot can be told apart
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Statistics of the catalogued documents needed to score search results
+     */
+    public CollectionStatistics getCollectionStatistics() {
+
+        if (collectionStatistics == null) collectionStatistics = new CollectionStatistics(documentCatalogue);
+
+        return collectionStatistics;
+    }
+
+    /**
+     * @return The wildcard index of the indexed terms. It's the one stored in the inverted file if the inverted index
+     * holds one, otherwise it's built from the terms
+     */
+    public WildcardIndex getWildcardIndex() {
+
+        if (wildcardIndex == null) {
+
+            WildcardIndex storedWildcardIndex = invertedIndex instanceof IWildcardIndexProvider ?
+                    ((IWildcardIndexProvider) invertedIndex).getWildcardIndex() : null;
+
+            wildcardIndex = storedWildcardIndex != null ? storedWildcardIndex :
+                    WildcardIndex.build(invertedIndex.keySet());
+        }
+
+        return wildcardIndex;
+    }
+
+    /**
+     * @return The terms the indexer keeps, that is, the terms of the thesaurus that aren't stopwords. Any other token is
+     * discarded before indexing. If they weren't given they're compiled from the default thesauri
+     * @throws IllegalStateException If they weren't given and the default thesauri can't be loaded
+     * @see Config#DEFAULT_THESAURUS_PATH
+     * @see Config#DEFAULT_INVERSE_THESAURUS_PATH
+     */
+    public CompiledDictionary getIndexableTerms() {
+
+        if (indexableTerms == null) {
+
+            Map<String, Object> thesaurus = new ThesaurusLoader().load(new File(DEFAULT_THESAURUS_PATH));
+            Map<String, Object> inverseThesaurus =
+                    new InverseThesaurusLoader().load(new File(DEFAULT_INVERSE_THESAURUS_PATH));
+
+            if (thesaurus == null || inverseThesaurus == null)
+                throw new IllegalStateException("The thesaurus, inverse thesaurus or both couldn't be loaded, so the " +
+                        "terms the inverted index was built with are unknown");
+
+            indexableTerms = CompiledDictionary.compileIndexableTerms(thesaurus, inverseThesaurus);
+        }
+
+        return indexableTerms;
+    }
+
 }
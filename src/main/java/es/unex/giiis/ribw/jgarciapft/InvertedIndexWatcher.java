@@ -0,0 +1,213 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the inverted index of a crawler up to date with the changes made to the crawled hierarchy. Every directory of
+ * the hierarchy is registered with a watch service, and the paths reported as created, modified or deleted are
+ * coalesced until no more events arrive for a short window (or the batch has been delayed for too long). Each batch is
+ * then applied to the crawler's inverted index, which keeps serving queries meanwhile. The updated inverted index is
+ * persisted periodically, and once more when the watcher is closed
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class InvertedIndexWatcher implements AutoCloseable {
+
+    private final Crawler crawler; // The crawler whose inverted index is kept up to date
+    private final Path root; // The root of the watched hierarchy
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>(); // Directory registered with each key
+
+    private final Thread watchThread; // Receives and coalesces the events, then applies them
+    private final ScheduledExecutorService persistScheduler; // Persists the inverted index periodically
+    private InvertedIndex lastPersistedIndex; // The inverted index snapshot persisted last
+
+    /**
+     * Register the hierarchy of the crawler's root path. The watcher won't receive events until it's started
+     *
+     * @param crawler  The crawler whose inverted index is kept up to date. It must have its thesauri loaded
+     * @param rootPath The root of the hierarchy the inverted index was built from
+     * @throws IOException If the watch service can't be created or the root can't be registered
+     */
+    public InvertedIndexWatcher(Crawler crawler, String rootPath) throws IOException {
+
+        this.crawler = crawler;
+        root = Paths.get(rootPath).toAbsolutePath();
+        watchService = root.getFileSystem().newWatchService();
+
+        // A single file is watched through its parent directory
+
+        registerHierarchy(Files.isDirectory(root) ? root : root.getParent());
+
+        watchThread = new Thread(this::watchLoop, "inverted-index-watcher");
+        watchThread.setDaemon(true);
+
+        persistScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inverted-index-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        lastPersistedIndex = crawler.exportInvertedIndex();
+    }
+
+    /**
+     * Start watching the hierarchy and persisting the inverted index periodically
+     */
+    public void start() {
+
+        System.out.printf("[INFO] Watching %d folder(s) for changes under (%s)\n", watchedDirectories.size(), root);
+
+        watchThread.start();
+        persistScheduler.scheduleWithFixedDelay(this::persistIfChanged, WATCH_PERSIST_INTERVAL_SECONDS,
+                WATCH_PERSIST_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop watching the hierarchy. Changes pending to be applied are discarded, but the ones already applied are
+     * persisted
+     */
+    @Override
+    public void close() {
+
+        watchThread.interrupt();
+        persistScheduler.shutdownNow();
+
+        try {
+            watchThread.join();
+            watchService.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("[ERROR] Unable to close the watch service");
+        }
+
+        persistIfChanged();
+    }
+
+    /**
+     * Body of the watch thread. Waits for the first event of a batch, then keeps coalescing events until the quiet
+     * window elapses without new events or the batch reaches its maximum delay, then applies it
+     */
+    private void watchLoop() {
+
+        try {
+
+            while (!Thread.currentThread().isInterrupted()) {
+
+                Set<Path> changedPaths = new LinkedHashSet<>();
+
+                // Wait for the first event of a batch
+
+                coalesceEvents(watchService.take(), changedPaths);
+
+                long batchDeadline = System.currentTimeMillis() + WATCH_MAX_BATCH_DELAY_MILLIS;
+                WatchKey key;
+
+                // Coalesce more events until the hierarchy is quiet or the batch is delayed for too long
+
+                while (System.currentTimeMillis() < batchDeadline &&
+                        (key = watchService.poll(WATCH_COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    coalesceEvents(key, changedPaths);
+
+                if (!changedPaths.isEmpty() && !crawler.applyChanges(changedPaths)) return;
+            }
+
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher has been closed
+        }
+    }
+
+    /**
+     * Add to the current batch the paths reported by the events of a watch key. New directories are registered so their
+     * contents are watched as well
+     *
+     * @param key          A signalled watch key
+     * @param changedPaths The paths changed within the current batch
+     */
+    private void coalesceEvents(WatchKey key, Set<Path> changedPaths) {
+
+        Path directory = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            // Events were lost. Reconcile the whole hierarchy
+
+            if (event.kind() == OVERFLOW || directory == null) {
+                changedPaths.add(root);
+                continue;
+            }
+
+            Path changedPath = directory.resolve((Path) event.context());
+
+            // Inverted files (and their temporary files) are written by the crawler itself
+
+            if (changedPath.getFileName().toString().startsWith(INVERTED_FILE_FILENAME)) continue;
+
+            // When a single file is watched, ignore the rest of its directory
+
+            if (!Files.isDirectory(root) && !changedPath.equals(root)) continue;
+
+            // Modifying a directory means its entries changed, which is reported by their own events
+
+            if (event.kind() == ENTRY_MODIFY && Files.isDirectory(changedPath)) continue;
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(changedPath)) registerHierarchy(changedPath);
+
+            changedPaths.add(changedPath);
+        }
+
+        // Directories that no longer exist can't be watched anymore
+
+        if (!key.reset()) watchedDirectories.remove(key);
+    }
+
+    /**
+     * Register a directory and all of its sub-directories with the watch service
+     *
+     * @param directory The root of the hierarchy to register
+     */
+    private void registerHierarchy(Path directory) {
+
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                    watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("[ERROR] Unable to watch (" + directory + ")");
+        }
+    }
+
+    /**
+     * Persist the inverted index if it has changed since it was last persisted
+     */
+    private synchronized void persistIfChanged() {
+
+        InvertedIndex currentIndex = crawler.exportInvertedIndex();
+
+        if (currentIndex == lastPersistedIndex) return;
+
+        crawler.persistInvertedIndex();
+        lastPersistedIndex = currentIndex;
+    }
+
+}
@@ -1,5 +1,25 @@
 package es.unex.giiis.ribw.jgarciapft;
 
+import es.unex.giiis.ribw.jgarciapft.extraction.ExtractionWorkerPool;
+import es.unex.giiis.ribw.jgarciapft.loaders.LazyInvertedFileLoader;
+import es.unex.giiis.ribw.jgarciapft.loaders.MappedInvertedFileLoader;
+import es.unex.giiis.ribw.jgarciapft.query.RankedSearcher;
+import es.unex.giiis.ribw.jgarciapft.ranking.BM25Scoring;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.DEFAULT_QUERY_THREADS;
+import static es.unex.giiis.ribw.jgarciapft.Config.DEFAULT_WORKER_THREADS;
+import static es.unex.giiis.ribw.jgarciapft.Config.RESULTS_CACHE_MAX_BYTES;
+import static es.unex.giiis.ribw.jgarciapft.Config.RESULTS_PAGE_SIZE;
 import static es.unex.giiis.ribw.jgarciapft.Config.TOKEN_DELIMITERS;
 
 /**
@@ -22,35 +42,319 @@ public class Main {
 
         // PARSE PROVIDED ARGUMENTS
 
-        boolean shouldLoadInvertedFile = args[0].equals("-I"); // arg1 = Load an already built inverted file
+        boolean shouldLoadInvertedFile = false; // -I = Load an already built inverted file
+        boolean shouldRefreshInvertedFile = false; // -R = Refresh an already built inverted file
+        int workerThreads = DEFAULT_WORKER_THREADS; // -t N = Number of indexing workers
+        boolean virtualThreadExtraction = false; // -V = Extract each document on its own virtual thread
+        int extractionProcesses = 0; // -X N = Number of child JVMs extracting structured documents (0 = in process)
+        boolean shouldWatchHierarchy = false; // -W = Keep the inverted index up to date while the CLI is open
+        boolean shouldMapInvertedFile = false; // -M = Query an already built inverted file without loading it
+        boolean shouldLazyLoadInvertedFile = false; // -L = Load postings lists of an already built inverted file on demand
+        boolean positionalIndex = false; // -P = Record the position of each occurrence
+        String batchQueriesPath = null; // -B file = Run the queries of a file (- = standard input) instead of the CLI
+        String batchResultsPath = null; // -O file = Write the results of the batch to a file instead of standard out
+        int queryThreads = DEFAULT_QUERY_THREADS; // -Q N = Number of threads running the queries of the batch or server
+        String serverPort = null; // -S port = Serve queries over HTTP on the port (0 = any free port) instead of the CLI
         String rootPath = args[args.length - 1]; // The root path will always be at the end of the args array
 
+        // Every argument but the last one is an option
+
+        for (int i = 0; i < args.length - 1; i++) {
+            switch (args[i]) {
+                case "-I":
+                    shouldLoadInvertedFile = true;
+                    break;
+                case "-R":
+                    shouldRefreshInvertedFile = true;
+                    break;
+                case "-t":
+                    workerThreads = parsePositiveInt(args, ++i);
+                    break;
+                case "-V":
+                    virtualThreadExtraction = true;
+                    break;
+                case "-X":
+                    extractionProcesses = parsePositiveInt(args, ++i);
+                    break;
+                case "-W":
+                    shouldWatchHierarchy = true;
+                    break;
+                case "-M":
+                    shouldMapInvertedFile = true;
+                    break;
+                case "-L":
+                    shouldLazyLoadInvertedFile = true;
+                    break;
+                case "-P":
+                    positionalIndex = true;
+                    break;
+                case "-B":
+                    batchQueriesPath = parseValue(args, ++i);
+                    break;
+                case "-O":
+                    batchResultsPath = parseValue(args, ++i);
+                    break;
+                case "-Q":
+                    queryThreads = parsePositiveInt(args, ++i);
+                    break;
+                case "-S":
+                    serverPort = parseValue(args, ++i);
+                    break;
+                default:
+                    System.err.println("[WARNING] Ignoring unknown option (" + args[i] + ")");
+            }
+        }
+
+        int port = serverPort != null ? parsePort(serverPort) : 0;
+
+        if (workerThreads < 1 || extractionProcesses < 0 || queryThreads < 1 || "".equals(batchQueriesPath) ||
+                "".equals(batchResultsPath) || port < 0 || (batchQueriesPath != null && serverPort != null)) {
+            showHelp();
+            return;
+        }
+
+        // A batch ends as soon as its queries are answered, so there's nothing to keep watching
+
+        if (batchQueriesPath != null && shouldWatchHierarchy) {
+            System.err.println("[WARNING] A batch of queries can't watch the root path. Ignoring -W");
+            shouldWatchHierarchy = false;
+        }
+
+        // A mapped or lazily loaded inverted file is read-only, so it can only be queried
+
+        if ((shouldMapInvertedFile || shouldLazyLoadInvertedFile) && (shouldRefreshInvertedFile || shouldWatchHierarchy)) {
+            System.err.println("[WARNING] A mapped or lazily loaded inverted file can't be refreshed nor watched. " +
+                    "Ignoring -R and -W");
+            shouldRefreshInvertedFile = false;
+            shouldWatchHierarchy = false;
+        }
+
         System.out.printf("\n\t Root path: %s\n\n", rootPath);
 
         // CRAWLER OPERATION
 
         Crawler pcCrawler = new Crawler(rootPath); // PC Crawler initialised with defaults
+        pcCrawler.setWorkerThreads(workerThreads);
+        pcCrawler.setVirtualThreadExtraction(virtualThreadExtraction);
+        pcCrawler.setPositionalIndex(positionalIndex);
+
+        // Extract structured documents out of process if requested, so the parsers can't take the crawler down
+
+        ExtractionWorkerPool extractionWorkers = null;
+
+        if (extractionProcesses > 0) {
+            extractionWorkers = new ExtractionWorkerPool(extractionProcesses);
+            pcCrawler.setExtractionWorkers(extractionWorkers);
+        }
 
         // Load an already built inverted index if requested, otherwise build one
 
-        if (shouldLoadInvertedFile) {
+        LazyInvertedFileLoader lazyLoader = null;
+
+        if (shouldMapInvertedFile) {
+            pcCrawler.setInvertedFileLoader(new MappedInvertedFileLoader());
             pcCrawler.loadInvertedFile();
+        } else if (shouldLazyLoadInvertedFile) {
+            lazyLoader = new LazyInvertedFileLoader();
+            pcCrawler.setInvertedFileLoader(lazyLoader);
+            pcCrawler.loadInvertedFile();
+        } else if (shouldLoadInvertedFile) {
+            pcCrawler.loadInvertedFile();
+            if (shouldWatchHierarchy) pcCrawler.initialiseThesauri(); // Changes can't be indexed without the thesauri
         } else {
             try {
-                pcCrawler.initialiseThesauri(); // Only load the thesauri to build a new inverted index
-                pcCrawler.buildInvertedIndex(rootPath);
+                pcCrawler.initialiseThesauri(); // Only load the thesauri to build or refresh an inverted index
+
+                // Refresh an already built inverted index if requested and it can be loaded, otherwise build one
+
+                if (shouldRefreshInvertedFile && pcCrawler.loadInvertedFile())
+                    pcCrawler.refreshInvertedIndex(rootPath);
+                else
+                    pcCrawler.buildInvertedIndex(rootPath);
             } catch (IllegalStateException e) {
                 System.err.println("[ERROR] " + e.getMessage());
+                if (extractionWorkers != null) extractionWorkers.close();
                 return;
             }
         }
 
-        CrawlerCLI crawlerCLI = new CrawlerCLI(pcCrawler.exportInvertedIndex()); // The CLI manager to interact with the user
+        // Run the batch of queries if requested, instead of opening the CLI
+
+        if (batchQueriesPath != null) {
+
+            runBatch(pcCrawler, batchQueriesPath, batchResultsPath, queryThreads);
+
+            if (extractionWorkers != null) extractionWorkers.close();
+
+            if (lazyLoader != null) System.out.println("[INFO] Postings cache => " + lazyLoader.getPostingsCache());
+
+            return;
+        }
+
+        // Keep the inverted index up to date with the changes of the hierarchy if requested
+
+        InvertedIndexWatcher watcher = null;
+
+        if (shouldWatchHierarchy) {
+            try {
+                watcher = new InvertedIndexWatcher(pcCrawler, rootPath);
+                watcher.start();
+            } catch (IOException e) {
+                System.err.println("[ERROR] Unable to watch the root path for changes");
+            }
+        }
+
+        CrawlerCLI crawlerCLI = null;
+
+        if (serverPort != null) {
+
+            // Serve queries over HTTP instead of opening the CLI. Each request uses the most recent inverted index
+
+            serve(pcCrawler, port, queryThreads);
+
+        } else {
+
+            // The CLI manager to interact with the user. Each operation uses the most recent inverted index
+            crawlerCLI = new CrawlerCLI(pcCrawler::exportInvertedIndex);
+
+            // OPEN AN INTERACTIVE CLI TO QUERY THE BUILT (OR LOADED) INVERTED INDEX
+
+            crawlerCLI.interactiveCLI();
+        }
 
-        // OPEN AN INTERACTIVE CLI TO QUERY THE BUILT (OR LOADED) INVERTED INDEX
+        if (watcher != null) watcher.close(); // Persist the changes applied while the CLI or the server were open
 
-        crawlerCLI.interactiveCLI();
+        if (extractionWorkers != null) extractionWorkers.close();
 
+        if (crawlerCLI != null) System.out.println("[INFO] Results cache => " + crawlerCLI.getResultsCache());
+
+        if (lazyLoader != null) System.out.println("[INFO] Postings cache => " + lazyLoader.getPostingsCache());
+
+    }
+
+    /**
+     * Run a batch of queries over the inverted index of the crawler, writing their results as JSON lines, and report
+     * its throughput and latency
+     *
+     * @param pcCrawler    The crawler whose inverted index is queried
+     * @param queriesPath  Path of the file with the queries, one per line, or - to read them from standard input
+     * @param resultsPath  Path of the file where the results are written, or null to write them to standard output
+     * @param queryThreads Number of threads running the queries
+     * @see BatchQueryRunner
+     */
+    private static void runBatch(Crawler pcCrawler, String queriesPath, String resultsPath, int queryThreads) {
+
+        RankedSearcher searcher = new RankedSearcher(pcCrawler::exportInvertedIndex, new BM25Scoring(),
+                new ResultPageCache(RESULTS_CACHE_MAX_BYTES));
+        BatchQueryRunner batchRunner = new BatchQueryRunner(searcher, queryThreads, RESULTS_PAGE_SIZE);
+        BatchQueryRunner.Report report;
+
+        try (BufferedReader queries = queriesPath.equals("-") ?
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                Files.newBufferedReader(Paths.get(queriesPath), StandardCharsets.UTF_8)) {
+
+            // Standard output is only flushed, never closed
+
+            Writer results = resultsPath != null ?
+                    Files.newBufferedWriter(Paths.get(resultsPath), StandardCharsets.UTF_8) :
+                    new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+            try {
+                report = batchRunner.run(queries, results);
+            } finally {
+                if (resultsPath != null) results.close();
+                else results.flush();
+            }
+
+        } catch (IOException e) {
+            System.err.println("[ERROR] Unable to run the batch of queries (" + e.getMessage() + ")");
+            return;
+        }
+
+        System.out.println("[INFO] Batch => " + report);
+        System.out.println("[INFO] Results cache => " + searcher.getResultsCache());
+    }
+
+    /**
+     * Serve queries over HTTP until a line is entered or standard input ends
+     *
+     * @param pcCrawler    The crawler whose inverted index is queried
+     * @param port         Port to listen to, or 0 to listen to any free port
+     * @param queryThreads Maximum number of searches running at the same time
+     * @see QueryServer
+     */
+    private static void serve(Crawler pcCrawler, int port, int queryThreads) {
+
+        RankedSearcher searcher = new RankedSearcher(pcCrawler::exportInvertedIndex, new BM25Scoring(),
+                new ResultPageCache(RESULTS_CACHE_MAX_BYTES));
+        QueryServer server;
+
+        try {
+            server = new QueryServer(pcCrawler::exportInvertedIndex, searcher, port, queryThreads);
+        } catch (IOException e) {
+            System.err.println("[ERROR] Unable to serve queries on port " + port + " (" + e.getMessage() + ")");
+            return;
+        }
+
+        server.start();
+
+        System.out.println("[INFO] Serving queries at http://localhost:" + server.getPort() + "/");
+        System.out.println("[Press ENTER to stop the server]");
+
+        try {
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+        } catch (IOException e) {
+            // Stop the server as if standard input ended
+        }
+
+        server.close();
+
+        System.out.println("[INFO] Server => " + server);
+        System.out.println("[INFO] Results cache => " + searcher.getResultsCache());
+    }
+
+    /**
+     * @param value Value of a port option
+     * @return The port, between 0 and 65535, or -1 if the value isn't one
+     */
+    private static int parsePort(String value) {
+
+        try {
+            int port = Integer.parseInt(value);
+            return port <= 0xFFFF ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parse the value of an option. The root path can't be used as the value of an option
+     *
+     * @param args  Program arguments
+     * @param index Position of the option's value
+     * @return The value, or an empty string if it's missing
+     */
+    private static String parseValue(String[] args, int index) {
+        return index < args.length - 1 ? args[index] : "";
+    }
+
+    /**
+     * Parse the value of a numeric option. The root path can't be used as the value of an option
+     *
+     * @param args  Program arguments
+     * @param index Position of the option's value
+     * @return The parsed value, or -1 if it's missing or isn't a positive integer
+     */
+    private static int parsePositiveInt(String[] args, int index) {
+
+        if (index >= args.length - 1) return -1;
+
+        try {
+            int value = Integer.parseInt(args[index]);
+            return value > 0 ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
@@ -59,18 +363,30 @@ public class Main {
     private static void showHelp() {
         System.out.println("USAGE\n" +
                 "\n" +
-                "\t(1) pc-crawler [-I] root-path\n" +
+                "\t(1) pc-crawler [-I | -M | -L | -R] [-t threads] [-V] [-X processes] [-P] [-W] [-B queries [-O results] | -S port] [-Q threads] root-path\n" +
                 "\t(2) pc-crawler --help\n" +
                 "\n" +
                 "SYNOPSIS\n" +
                 "\n" +
                 "\t* root-path: It can either expressed as a relative or full path (according to your OS), and it can either be a directory hierarchy or a file\n" +
                 "\t* -I: Load an already built index 'CRAWLERINDEX.idx' located at the specified root\n" +
+                "\t* -M: Map an already built index located at the specified root into memory and query it without loading it\n" +
+                "\t* -L: Load the dictionary of an already built index located at the specified root and its postings on demand, caching the most recently used ones\n" +
+                "\t* -R: Load an already built index located at the specified root and re-index only the files added or modified since then\n" +
+                "\t* -t threads: Number of indexing worker threads (default: one per available core)\n" +
+                "\t* -V: Extract each document on its own virtual thread. The number of concurrent parses is limited by -t\n" +
+                "\t* -X processes: Extract structured documents in the given number of child JVMs, each document with a time and extracted text budget\n" +
+                "\t* -P: Record the position of each occurrence, enabling phrase (\"...\") and proximity (NEAR/k) queries. Files indexed without it drop the positions of their terms\n" +
+                "\t* -W: Watch the root path while the CLI is open, applying the changes to the inverted index and persisting it periodically\n" +
+                "\t* -B queries: Instead of opening the CLI, run the boolean queries of the given file, one per line (- reads them from standard input), and report the throughput and latency percentiles\n" +
+                "\t* -O results: Write the results of the batch to the given file, one JSON line per query in the same order (default: standard output)\n" +
+                "\t* -S port: Instead of opening the CLI, serve queries as JSON over HTTP on the given port (0 picks a free one) until ENTER is pressed or standard input ends. Endpoints: /search?q=query[&offset=N][&count=N], /term?t=term, /health and /metrics\n" +
+                "\t* -Q threads: Number of threads running the queries of the batch, or maximum number of searches the server runs at once (default: one per available core)\n" +
                 "\t* --help: Invoke this help\n" +
                 "\n" +
                 "DESCRIPTION\n" +
                 "\n" +
-                "This is an iterative single threaded implementation of a crawler of text files intended to operate on local filesystems. This crawler will attempt to explore\n" +
+                "This is a multi-threaded implementation of a crawler of text files intended to operate on local filesystems. This crawler will attempt to explore\n" +
                 "a given path and index the content of all readable files, storing the total and partial frequencies of each indexed token (see TOKEN DELIMITERS).\n" +
                 "The result is the construction of an inverted index associated with the given path\n" +
                 "\n" +
@@ -1,23 +1,61 @@
 package es.unex.giiis.ribw.jgarciapft;
 
-import java.io.Serializable;
-import java.util.Map;
-import java.util.TreeMap;
+import es.unex.giiis.ribw.jgarciapft.query.IPostingsList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.decodeSortedInts;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.encodeSortedInts;
 
 /**
  * A class for storing the total and partial frequencies for a token within the document's catalogue.
  * Each partial frequency is addressed by the numeric document identifier and not by its URL (dictionary data structure)
+ * <p>
+ * Partial frequencies are stored in a pair of growable arrays of document IDs and frequencies sorted by document ID
+ * (postings list). Documents are usually indexed in increasing ID order, so registering an occurrence either bumps the
+ * frequency of the last document or appends a new one, both in constant time. Occurrences registered out of order are
+ * inserted in their place
+ * <p>
+ * Occurrences can also record the positions of the token within each document (see {@link TermPositions}), encoded
+ * in a separate block per document, so operations that only need the frequencies never decode them. Positions are
+ * only kept while every document has them, adding a document without positions drops them. Positions read from an
+ * inverted file are only read when they're first needed. Positions aren't part of the serialized form
  *
  * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
  */
-public class Occurrences implements Serializable {
+public class Occurrences implements Serializable, IPostingsList {
+
+    // Fixed so inverted files serialized by previous versions of this class can still be deserialized
+    private static final long serialVersionUID = 9146709550423814780L;
+
+    // Serialized form of previous versions of this class: the global frequency and a map of partial frequencies
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("globalFrequency", int.class),
+            new ObjectStreamField("occurrences", Map.class)
+    };
+
+    private static final int INITIAL_CAPACITY = 4; // Most tokens only appear in a few documents
+    private static final int[] EMPTY = new int[0];
 
     private int globalFrequency; // The total amount of times a certain token appears inside all the documents
-    private final Map<Integer, Integer> occurrences; // Holds the local count for each document
+    private int[] documentIDs; // Sorted IDs of the documents where the token appears
+    private int[] frequencies; // Holds the local count for each document, parallel to documentIDs
+    private int size; // Number of documents where the token appears
+    // Encoded positions of the token within each document, parallel to documentIDs. Null if positions aren't recorded
+    // or are still in an inverted file
+    private byte[][] positions;
+    // Reads the encoded positions from an inverted file. Null if they're held in memory or aren't recorded
+    private transient PositionsSource positionsSource;
 
     public Occurrences() {
         globalFrequency = 0;
-        occurrences = new TreeMap<>();
+        documentIDs = EMPTY;
+        frequencies = EMPTY;
+        size = 0;
+        positions = null;
+        positionsSource = null;
     }
 
     /**
@@ -26,36 +64,502 @@ public class Occurrences implements Serializable {
      * @param documentID The ID of the document where the fist occurrence occurred
      */
     public Occurrences(int documentID) {
-        globalFrequency = 0;
-        occurrences = new TreeMap<>();
+        this();
 
         // Compute this first occurrence immediately
         computeOccurrenceInDocument(documentID);
     }
 
+    /**
+     * Instantiate a copy of another occurrences object. The copy can be modified without affecting the original
+     *
+     * @param other The occurrences to be copied
+     */
+    public Occurrences(Occurrences other) {
+        globalFrequency = other.globalFrequency;
+        documentIDs = Arrays.copyOf(other.documentIDs, other.size);
+        frequencies = Arrays.copyOf(other.frequencies, other.size);
+        size = other.size;
+
+        // Blocks of positions are never modified in place, so they can be shared
+
+        byte[][] otherPositions = other.positionBlocks();
+        positions = otherPositions != null ? Arrays.copyOf(otherPositions, other.size) : null;
+        positionsSource = null;
+    }
+
     /**
      * Register one occurrence within the document identified by documentID. This also increments the global frequency
      *
      * @param documentID The ID of the document where the occurrence occurred
      */
     public void computeOccurrenceInDocument(int documentID) {
+        computeOccurrencesInDocument(documentID, 1);
+    }
+
+    /**
+     * Register several occurrences within the document identified by documentID. This also increments the global
+     * frequency
+     *
+     * @param documentID The ID of the document where the occurrences occurred
+     * @param frequency  The number of occurrences
+     */
+    public void computeOccurrencesInDocument(int documentID, int frequency) {
+        computeOccurrencesInDocument(documentID, frequency, null);
+    }
+
+    /**
+     * Register several occurrences within the document identified by documentID, along with their positions. This
+     * also increments the global frequency
+     *
+     * @param documentID        The ID of the document where the occurrences occurred
+     * @param frequency         The number of occurrences
+     * @param documentPositions The positions of the occurrences, encoded as varint deltas, or null if they aren't
+     *                          recorded. The array must not be modified afterwards
+     * @see es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils#encodeSortedInts(int[], int)
+     */
+    public void computeOccurrencesInDocument(int documentID, int frequency, byte[] documentPositions) {
+
+        loadPositions();
+
+        // The first document decides if positions are recorded, any later document without them drops them
+
+        if (size == 0) positions = documentPositions != null ? new byte[documentIDs.length][] : null;
+        else if (documentPositions == null) positions = null;
+
+        // Fast paths. The document is the last one or comes after it
+
+        if (size > 0 && documentIDs[size - 1] == documentID) {
+            bump(size - 1, frequency, documentPositions);
+        } else if (size == 0 || documentIDs[size - 1] < documentID) {
+            append(documentID, frequency);
+            if (positions != null) positions[size - 1] = documentPositions;
+        } else {
+
+            // Out of order. Bump the document if present, otherwise insert it in its place
+
+            int position = Arrays.binarySearch(documentIDs, 0, size, documentID);
+
+            if (position >= 0) {
+                bump(position, frequency, documentPositions);
+            } else {
+                position = -position - 1;
+                ensureCapacity(size + 1);
+                System.arraycopy(documentIDs, position, documentIDs, position + 1, size - position);
+                System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+                documentIDs[position] = documentID;
+                frequencies[position] = frequency;
+
+                if (positions != null) {
+                    System.arraycopy(positions, position, positions, position + 1, size - position);
+                    positions[position] = documentPositions;
+                }
+
+                size++;
+            }
+        }
+
+        globalFrequency += frequency;
+    }
+
+    /**
+     * Merge the occurrences of the same token registered in another set of documents. Partial frequencies of
+     * documents present in both sets are added up
+     *
+     * @param other Occurrences of the same token registered somewhere else (e.g. a partial inverted index)
+     * @return This object, holding the merged occurrences
+     */
+    public Occurrences merge(Occurrences other) {
+
+        if (other.size == 0) return this;
+
+        // Positions are kept only if both sides record them
+
+        loadPositions();
+        byte[][] otherPositions = other.positionBlocks();
+
+        if (size == 0) positions = otherPositions != null ? new byte[documentIDs.length][] : null;
+        else if (otherPositions == null) positions = null;
+
+        // Fast path. The other documents come after these ones
+
+        if (size == 0 || documentIDs[size - 1] < other.documentIDs[0]) {
+
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.documentIDs, 0, documentIDs, size, other.size);
+            System.arraycopy(other.frequencies, 0, frequencies, size, other.size);
+            if (positions != null) System.arraycopy(otherPositions, 0, positions, size, other.size);
+            size += other.size;
+
+        } else {
+
+            // Merge both sorted postings lists
+
+            int[] mergedDocumentIDs = new int[size + other.size];
+            int[] mergedFrequencies = new int[size + other.size];
+            byte[][] mergedPositions = positions != null ? new byte[size + other.size][] : null;
+            int i = 0, j = 0, merged = 0;
+
+            while (i < size || j < other.size) {
+
+                if (j == other.size || (i < size && documentIDs[i] < other.documentIDs[j])) {
+                    if (mergedPositions != null) mergedPositions[merged] = positions[i];
+                    mergedDocumentIDs[merged] = documentIDs[i];
+                    mergedFrequencies[merged++] = frequencies[i++];
+                } else if (i == size || other.documentIDs[j] < documentIDs[i]) {
+                    if (mergedPositions != null) mergedPositions[merged] = otherPositions[j];
+                    mergedDocumentIDs[merged] = other.documentIDs[j];
+                    mergedFrequencies[merged++] = other.frequencies[j++];
+                } else {
+                    if (mergedPositions != null)
+                        mergedPositions[merged] = mergePositions(positions[i], frequencies[i], otherPositions[j],
+                                other.frequencies[j]);
+                    mergedDocumentIDs[merged] = documentIDs[i];
+                    mergedFrequencies[merged++] = frequencies[i++] + other.frequencies[j++];
+                }
+            }
+
+            documentIDs = mergedDocumentIDs;
+            frequencies = mergedFrequencies;
+            positions = mergedPositions;
+            size = merged;
+        }
+
+        globalFrequency += other.globalFrequency;
+
+        return this;
+    }
+
+    /**
+     * Remove the occurrences within the given documents. The global frequency is decremented accordingly
+     *
+     * @param documentIDs The identifiers of the documents whose occurrences are removed
+     */
+    public void removeDocuments(BitSet documentIDs) {
+
+        loadPositions();
+
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (documentIDs.get(this.documentIDs[i])) {
+                globalFrequency -= frequencies[i];
+            } else {
+                if (positions != null) positions[kept] = positions[i];
+                this.documentIDs[kept] = this.documentIDs[i];
+                frequencies[kept++] = frequencies[i];
+            }
+        }
+
+        if (positions != null) Arrays.fill(positions, kept, size, null);
+
+        size = kept;
+    }
+
+    /**
+     * @param documentIDs The identifiers of a set of documents
+     * @return If the token occurs within any of the given documents
+     */
+    public boolean occursInAnyDocument(BitSet documentIDs) {
+
+        for (int i = 0; i < size; i++)
+            if (documentIDs.get(this.documentIDs[i])) return true;
+
+        return false;
+    }
+
+    /**
+     * @return An estimation of the memory taken by this object in bytes
+     */
+    public long estimateSizeInBytes() {
+
+        // Object header and fields, plus both arrays
+
+        long sizeInBytes = 40 + 2 * (16 + 4L * documentIDs.length);
+
+        // Plus the blocks of positions held in memory
+
+        if (positions != null) {
+
+            sizeInBytes += 16 + 4L * positions.length;
+
+            for (int i = 0; i < size; i++)
+                sizeInBytes += 16 + positions[i].length;
+        }
+
+        return sizeInBytes;
+    }
+
+    /**
+     * @return If the positions of the token within each document are recorded
+     */
+    public boolean hasPositions() {
+        return size > 0 && (positions != null || positionsSource != null);
+    }
+
+    /**
+     * Read the positions of the token within each document. Positions stored in an inverted file are read from it
+     * every time, without keeping them in memory
+     *
+     * @return The positions of the token, or null if they aren't recorded
+     * @throws UncheckedIOException If the positions can't be read from the inverted file
+     */
+    public TermPositions readPositions() {
+
+        if (!hasPositions()) return null;
+
+        if (positions != null) return new TermPositions(this, positions);
+
+        try {
+            return new TermPositions(this, positionsSource.read());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        // If the document ID is already present increment its frequency by 1, otherwise create the entry with a frequency of 1
+    /**
+     * Attach the positions of the token stored in an inverted file. They're read when they're first needed
+     *
+     * @param positionsSource Reads the encoded positions list of the token, as stored in the inverted file
+     */
+    public void setPositionsSource(PositionsSource positionsSource) {
+        this.positionsSource = positionsSource;
+        positions = null;
+    }
+
+    /**
+     * Read the positions stored in an inverted file into memory, if there are any, so the file isn't needed anymore.
+     * Done before any modification, so positions are always modified in memory
+     *
+     * @throws UncheckedIOException If the positions can't be read from the inverted file
+     */
+    public void loadPositions() {
 
-        if (occurrences.containsKey(documentID))
-            occurrences.compute(documentID, (currentDocID, currentFrequency) -> currentFrequency + 1);
-        else
-            occurrences.put(documentID, 1);
+        if (positionsSource == null) return;
 
-        globalFrequency++; // Always increment the global frequency by 1
+        // Keep the positions as long as the postings list, so they grow along with it
 
+        positions = Arrays.copyOf(positionBlocks(), documentIDs.length);
+        positionsSource = null;
     }
 
     public int getGlobalFrequency() {
         return globalFrequency;
     }
 
+    /**
+     * @return Number of documents where the token appears
+     */
+    @Override
+    public int getDocumentCount() {
+        return size;
+    }
+
+    /**
+     * @param index Position within the postings list, lower than {@link Occurrences#getDocumentCount()}
+     * @return The ID of the document at that position. Document IDs are sorted in increasing order
+     */
+    @Override
+    public int getDocumentID(int index) {
+        return documentIDs[index];
+    }
+
+    /**
+     * @param index Position within the postings list, lower than {@link Occurrences#getDocumentCount()}
+     * @return The partial frequency of the document at that position
+     */
+    @Override
+    public int getFrequency(int index) {
+        return frequencies[index];
+    }
+
+    /**
+     * @return A read-only view of the partial frequencies by document ID, sorted by document ID. The view reflects later
+     * changes to these occurrences
+     */
     public Map<Integer, Integer> getOccurrences() {
-        return occurrences;
+        return new PartialFrequenciesView();
+    }
+
+    /**
+     * @param minCapacity Minimum number of documents the arrays must be able to hold
+     */
+    private void ensureCapacity(int minCapacity) {
+
+        if (minCapacity <= documentIDs.length) return;
+
+        int newCapacity = Math.max(minCapacity, Math.max(INITIAL_CAPACITY, documentIDs.length + (documentIDs.length >> 1)));
+
+        documentIDs = Arrays.copyOf(documentIDs, newCapacity);
+        frequencies = Arrays.copyOf(frequencies, newCapacity);
+        if (positions != null) positions = Arrays.copyOf(positions, newCapacity);
+    }
+
+    /**
+     * Add occurrences to a document already in the postings list
+     *
+     * @param index             Position of the document within the postings list
+     * @param frequency         The number of new occurrences
+     * @param documentPositions Their encoded positions, or null if positions aren't recorded
+     */
+    private void bump(int index, int frequency, byte[] documentPositions) {
+
+        if (positions != null)
+            positions[index] = mergePositions(positions[index], frequencies[index], documentPositions, frequency);
+
+        frequencies[index] += frequency;
+    }
+
+    /**
+     * @return The encoded positions of each document, read from the inverted file if they're there. Null if positions
+     * aren't recorded
+     * @throws UncheckedIOException If the positions can't be read from the inverted file
+     */
+    private byte[][] positionBlocks() {
+
+        if (positionsSource == null) return positions;
+
+        try {
+            return TermPositions.splitBlocks(positionsSource.read(), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param first       Encoded positions within a document
+     * @param firstCount  Number of positions of the first block
+     * @param second      More encoded positions within the same document
+     * @param secondCount Number of positions of the second block
+     * @return The positions of both blocks, sorted and encoded
+     */
+    private static byte[] mergePositions(byte[] first, int firstCount, byte[] second, int secondCount) {
+
+        int[] merged = Arrays.copyOf(decodeSortedInts(ByteBuffer.wrap(first), firstCount), firstCount + secondCount);
+        System.arraycopy(decodeSortedInts(ByteBuffer.wrap(second), secondCount), 0, merged, firstCount, secondCount);
+        Arrays.sort(merged);
+
+        return encodeSortedInts(merged, merged.length);
+    }
+
+    /**
+     * @param documentID The ID of a document that comes after the last one
+     * @param frequency  The document's partial frequency
+     */
+    private void append(int documentID, int frequency) {
+        ensureCapacity(size + 1);
+        documentIDs[size] = documentID;
+        frequencies[size++] = frequency;
+    }
+
+    /**
+     * Serialize these occurrences with the same form as previous versions of this class
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("globalFrequency", globalFrequency);
+        fields.put("occurrences", new TreeMap<>(getOccurrences()));
+        out.writeFields();
+    }
+
+    /**
+     * Deserialize occurrences serialized with the form of previous versions of this class
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        ObjectInputStream.GetField fields = in.readFields();
+
+        @SuppressWarnings("unchecked")
+        Map<Integer, Integer> partialFrequencies = (Map<Integer, Integer>) fields.get("occurrences", null);
+
+        documentIDs = EMPTY;
+        frequencies = EMPTY;
+        size = 0;
+        positions = null;
+
+        if (partialFrequencies != null)
+            for (Map.Entry<Integer, Integer> occurrence : new TreeMap<>(partialFrequencies).entrySet())
+                computeOccurrencesInDocument(occurrence.getKey(), occurrence.getValue());
+
+        globalFrequency = fields.get("globalFrequency", globalFrequency);
     }
+
+    /**
+     * Read-only map view of the postings list
+     */
+    private class PartialFrequenciesView extends AbstractMap<Integer, Integer> {
+
+        @Override
+        public Integer get(Object key) {
+
+            if (!(key instanceof Integer)) return null;
+
+            int position = Arrays.binarySearch(documentIDs, 0, size, (Integer) key);
+
+            return position >= 0 ? frequencies[position] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && Arrays.binarySearch(documentIDs, 0, size, (Integer) key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<Integer, Integer>> entrySet() {
+
+            return new AbstractSet<Entry<Integer, Integer>>() {
+
+                @Override
+                public Iterator<Entry<Integer, Integer>> iterator() {
+
+                    return new Iterator<Entry<Integer, Integer>>() {
+
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < size;
+                        }
+
+                        @Override
+                        public Entry<Integer, Integer> next() {
+
+                            if (!hasNext()) throw new NoSuchElementException();
+
+                            int current = index++;
+
+                            return new SimpleImmutableEntry<>(documentIDs[current], frequencies[current]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * Reads the positions of a token stored in an inverted file
+     */
+    @FunctionalInterface
+    public interface PositionsSource {
+
+        /**
+         * @return The encoded positions list of the token: the encoded positions of each document of the postings list,
+         * in order, each one preceded by its length in bytes as a varint
+         * @throws IOException If the positions can't be read
+         */
+        ByteBuffer read() throws IOException;
+
+    }
+
 }
@@ -0,0 +1,311 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_PREFETCHED_DIRECTORIES;
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_PREFETCHED_DIRECTORY_ENTRIES;
+
+/**
+ * Walks a directory hierarchy streaming every regular file found to a visitor. Directories are read with NIO directory
+ * streams and the attributes of each entry are read only once.
+ * <p>
+ * Files are always visited in the same order, from the thread that started the walk: first the files of a directory
+ * in the order presented by the filesystem, then each of its sub-directories (depth first). Meanwhile, the listings of
+ * the sub-directories that will be visited next are read ahead on a fork/join pool, each listing forking the read of
+ * its own sub-directories, so different subtrees are read concurrently. The number of listings read ahead and their
+ * size are bounded, the directories that don't fit are streamed by the visiting thread when their turn comes.
+ * Every walk shares the same pool, whose threads retire while there's nothing to read
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class ParallelDirectoryWalker {
+
+    private final ForkJoinPool readAheadPool; // Reads directory listings ahead. Shared by every walk
+
+    /**
+     * @param parallelism Number of threads reading directory listings ahead
+     */
+    public ParallelDirectoryWalker(int parallelism) {
+        readAheadPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Visit every regular file within a hierarchy. If the root is a regular file only the root is visited
+     *
+     * @param root    The starting point of the walk
+     * @param visitor Receives the regular files found
+     * @throws InterruptedException If the visitor was interrupted. The walk is aborted
+     */
+    public void walk(Path root, FileVisitor visitor) throws InterruptedException {
+
+        BasicFileAttributes rootAttributes = readAttributes(root);
+
+        if (rootAttributes == null) return;
+
+        if (!rootAttributes.isDirectory()) {
+            if (rootAttributes.isRegularFile()) visitor.visitFile(root, rootAttributes);
+            return;
+        }
+
+        Semaphore readAheadPermits = new Semaphore(MAX_PREFETCHED_DIRECTORIES);
+
+        // Stack of directories whose sub-directories are pending to be visited (depth first search)
+
+        Deque<PendingSubdirectories> stack = new ArrayDeque<>();
+
+        try {
+
+            stack.push(visitDirectory(root, null, readAheadPool, readAheadPermits, visitor));
+
+            while (!stack.isEmpty()) {
+
+                PendingSubdirectories pending = stack.peek();
+
+                if (pending.hasNext()) {
+                    int next = pending.next++;
+                    stack.push(visitDirectory(pending.directories.get(next), pending.listings.get(next),
+                            readAheadPool, readAheadPermits, visitor));
+                } else {
+                    stack.pop();
+                }
+            }
+
+        } finally {
+
+            // An aborted walk leaves listings pending to be visited. Those not started yet won't be read
+
+            for (PendingSubdirectories pending : stack)
+                for (int i = pending.next; i < pending.listings.size(); i++)
+                    if (pending.listings.get(i) != null) pending.listings.get(i).cancel(false);
+        }
+    }
+
+    /**
+     * Visit the regular files of a directory, taking them from its listing if it was read ahead or streaming them
+     * otherwise. The listings of its sub-directories are scheduled to be read ahead
+     *
+     * @param directory        The directory to visit
+     * @param readAhead        The task reading its listing ahead, or null if it wasn't read ahead
+     * @param readAheadPool    Pool where listings are read ahead
+     * @param readAheadPermits Bounds the number of listings read ahead and not yet visited
+     * @param visitor          Receives the regular files found
+     * @return The sub-directories of the visited directory
+     * @throws InterruptedException If the visitor was interrupted
+     */
+    private PendingSubdirectories visitDirectory(Path directory, ReadAheadListing readAhead, ForkJoinPool readAheadPool,
+                                                 Semaphore readAheadPermits, FileVisitor visitor) throws InterruptedException {
+
+        PendingSubdirectories subdirectories = new PendingSubdirectories();
+
+        // Use the listing read ahead if it was complete
+
+        if (readAhead != null) {
+
+            readAhead.join();
+            readAheadPermits.release();
+
+            if (readAhead.isComplete()) {
+
+                for (int i = 0; i < readAhead.files.size(); i++)
+                    visitor.visitFile(readAhead.files.get(i), readAhead.fileAttributes.get(i));
+
+                printDirectory(directory, readAhead.files.size());
+
+                subdirectories.directories.addAll(readAhead.subdirectories.directories);
+                subdirectories.listings.addAll(readAhead.subdirectories.listings);
+
+                return subdirectories;
+            }
+        }
+
+        // Otherwise stream the directory from this thread
+
+        int visitedFiles = 0;
+
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+
+            for (Path entry : directoryStream) {
+
+                BasicFileAttributes attributes = readAttributes(entry);
+
+                if (attributes == null) continue;
+
+                if (attributes.isDirectory()) {
+                    subdirectories.directories.add(entry);
+                    subdirectories.listings.add(readAhead(entry, readAheadPool, readAheadPermits));
+                } else if (attributes.isRegularFile()) {
+                    visitor.visitFile(entry, attributes);
+                    visitedFiles++;
+                }
+            }
+
+        } catch (IOException e) {
+            System.err.println("[ERROR] Unable to read (" + directory + ")");
+        }
+
+        printDirectory(directory, visitedFiles);
+
+        return subdirectories;
+    }
+
+    /**
+     * Schedule the listing of a directory to be read ahead, if the read ahead bound allows it
+     *
+     * @param directory        The directory to be read ahead
+     * @param readAheadPool    Pool where listings are read ahead
+     * @param readAheadPermits Bounds the number of listings read ahead and not yet visited
+     * @return The task reading the listing, or null if it couldn't be scheduled
+     */
+    private static ReadAheadListing readAhead(Path directory, ForkJoinPool readAheadPool, Semaphore readAheadPermits) {
+
+        if (!readAheadPermits.tryAcquire()) return null;
+
+        ReadAheadListing listing = new ReadAheadListing(directory, readAheadPool, readAheadPermits);
+
+        if (ForkJoinTask.inForkJoinPool()) listing.fork();
+        else readAheadPool.execute(listing);
+
+        return listing;
+    }
+
+    /**
+     * @param path A filesystem entry
+     * @return The entry's attributes, or null if they can't be read
+     */
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            System.err.println("[ERROR] Unable to read (" + path + ")");
+            return null;
+        }
+    }
+
+    /**
+     * @param directory    A visited directory
+     * @param visitedFiles Number of regular files visited within the directory
+     */
+    private static void printDirectory(Path directory, int visitedFiles) {
+        if (visitedFiles > 0)
+            System.out.printf("[FOLDER] Found %d file(s) in (%s)\n", visitedFiles, directory);
+    }
+
+    /**
+     * Receives the regular files found while walking a hierarchy
+     */
+    @FunctionalInterface
+    public interface FileVisitor {
+
+        /**
+         * @param file       A regular file
+         * @param attributes The file's attributes
+         * @throws InterruptedException If interrupted while visiting the file
+         */
+        void visitFile(Path file, BasicFileAttributes attributes) throws InterruptedException;
+
+    }
+
+    /**
+     * Sub-directories of a visited directory and the tasks reading their listings ahead. Sub-directories not read ahead
+     * have a null task
+     */
+    private static class PendingSubdirectories {
+
+        private final List<Path> directories = new ArrayList<>();
+        private final List<ReadAheadListing> listings = new ArrayList<>();
+        private int next = 0; // Next sub-directory to visit
+
+        private boolean hasNext() {
+            return next < directories.size();
+        }
+    }
+
+    /**
+     * Task that reads ahead the listing of a directory, then forks the read of its sub-directories. Listings bigger
+     * than the read ahead bound are discarded, the directory will be streamed when visited
+     */
+    private static class ReadAheadListing extends RecursiveAction {
+
+        private static final long serialVersionUID = -1634573517255450920L;
+
+        private final Path directory;
+        private final ForkJoinPool readAheadPool;
+        private final Semaphore readAheadPermits;
+
+        private final List<Path> files = new ArrayList<>();
+        private final List<BasicFileAttributes> fileAttributes = new ArrayList<>();
+        private final PendingSubdirectories subdirectories = new PendingSubdirectories();
+        private boolean complete = false; // If the listing was fully read
+
+        private ReadAheadListing(Path directory, ForkJoinPool readAheadPool, Semaphore readAheadPermits) {
+            this.directory = directory;
+            this.readAheadPool = readAheadPool;
+            this.readAheadPermits = readAheadPermits;
+        }
+
+        @Override
+        protected void compute() {
+
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+
+                int entries = 0;
+
+                for (Path entry : directoryStream) {
+
+                    // Too big to be read ahead
+
+                    if (++entries > MAX_PREFETCHED_DIRECTORY_ENTRIES) {
+                        discard();
+                        return;
+                    }
+
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+
+                    if (attributes.isDirectory()) {
+                        subdirectories.directories.add(entry);
+                        subdirectories.listings.add(null); // Forked once the listing is known to be complete
+                    } else if (attributes.isRegularFile()) {
+                        files.add(entry);
+                        fileAttributes.add(attributes);
+                    }
+                }
+
+            } catch (IOException e) {
+                // Any error will be reported when the directory is streamed
+                discard();
+                return;
+            }
+
+            // Fork the read of the sub-directories
+
+            for (int i = 0; i < subdirectories.directories.size(); i++)
+                subdirectories.listings.set(i, readAhead(subdirectories.directories.get(i), readAheadPool, readAheadPermits));
+
+            complete = true;
+        }
+
+        private void discard() {
+            files.clear();
+            fileAttributes.clear();
+            subdirectories.directories.clear();
+            subdirectories.listings.clear();
+        }
+
+        private boolean isComplete() {
+            return complete;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of decoded postings lists, bounded by the estimated memory taken by the cached lists
+ * instead of by their number. Lists bigger than the whole cache are never cached. Hits, misses and evictions are
+ * counted so the cache can be sized for a given query mix. It's safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see Occurrences#estimateSizeInBytes()
+ */
+public class PostingsCache {
+
+    private final long maxBytes; // Maximum estimated memory taken by the cached postings lists
+    private final LinkedHashMap<String, Occurrences> cachedPostings; // Cached postings lists, least recently used first
+    private long cachedBytes = 0; // Estimated memory taken by the cached postings lists
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes Maximum estimated memory taken by the cached postings lists
+     */
+    public PostingsCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        cachedPostings = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param term A term
+     * @return The cached postings list of the term, or null if it isn't cached
+     */
+    public synchronized Occurrences get(String term) {
+
+        Occurrences occurrences = cachedPostings.get(term);
+
+        if (occurrences != null) hits++;
+        else misses++;
+
+        return occurrences;
+    }
+
+    /**
+     * Cache the postings list of a term, evicting the least recently used lists until it fits
+     *
+     * @param term        A term
+     * @param occurrences The term's decoded postings list
+     */
+    public synchronized void put(String term, Occurrences occurrences) {
+
+        long size = occurrences.estimateSizeInBytes();
+
+        if (size > maxBytes) return;
+
+        Occurrences previous = cachedPostings.put(term, occurrences);
+
+        if (previous != null) cachedBytes -= previous.estimateSizeInBytes();
+
+        cachedBytes += size;
+
+        // Evict the least recently used lists until the cache fits within its bound
+
+        Iterator<Map.Entry<String, Occurrences>> iterator = cachedPostings.entrySet().iterator();
+
+        while (cachedBytes > maxBytes) {
+            cachedBytes -= iterator.next().getValue().estimateSizeInBytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized int getCachedEntries() {
+        return cachedPostings.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hit(s), %d miss(es), %d eviction(s), %d cached postings list(s) taking %d of %d byte(s)",
+                hits, misses, evictions, cachedPostings.size(), cachedBytes, maxBytes);
+    }
+
+}
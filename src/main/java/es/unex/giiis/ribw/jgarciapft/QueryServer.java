@@ -0,0 +1,579 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQuery;
+import es.unex.giiis.ribw.jgarciapft.query.BooleanQueryParser;
+import es.unex.giiis.ribw.jgarciapft.query.RankedSearcher;
+import es.unex.giiis.ribw.jgarciapft.query.ResultPage;
+import es.unex.giiis.ribw.jgarciapft.ranking.ScoredDocument;
+import es.unex.giiis.ribw.jgarciapft.utils.NormalizationUtils;
+import es.unex.giiis.ribw.jgarciapft.utils.ThreadUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.RESULTS_PAGE_SIZE;
+import static es.unex.giiis.ribw.jgarciapft.Config.SERVER_LATENCY_SAMPLES;
+import static es.unex.giiis.ribw.jgarciapft.Config.SERVER_MAX_PAGE_SIZE;
+import static es.unex.giiis.ribw.jgarciapft.Config.SERVER_STOP_DELAY_SECONDS;
+import static es.unex.giiis.ribw.jgarciapft.Config.SERVER_STREAM_BUFFER_BYTES;
+import static es.unex.giiis.ribw.jgarciapft.utils.JsonUtils.appendNumber;
+import static es.unex.giiis.ribw.jgarciapft.utils.JsonUtils.appendString;
+
+/**
+ * HTTP server that answers queries over the inverted index with JSON, so several tools can query the same index at
+ * once. It's built on the JDK's embedded HTTP server, which keeps connections alive between requests. Each request is
+ * carried on the inverted index snapshot provided at the time, which is never modified. Only GET requests are served:
+ * <p>
+ * GET /search?q=query[&amp;offset=N][&amp;count=N] Ranked boolean search (see {@link BooleanQueryParser}). A single term
+ * is a ranked term search. Returns the total number of results and a page of them, best first
+ * <p>
+ * GET /term?t=term The global frequency of a term and its whole postings list, by increasing document ID
+ * <p>
+ * GET /health Whether the server is up, along with the version and size of the inverted index snapshot
+ * <p>
+ * GET /metrics Requests served by endpoint and status, latency percentiles and the results cache statistics
+ * <p>
+ * Requests run on their own virtual thread when the runtime supports them, otherwise on a bounded pool of threads.
+ * Either way a semaphore limits how many searches run at the same time, as searching is CPU bound. Result sets and
+ * postings lists are streamed as they are written, so large responses are never held in memory as a whole
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see RankedSearcher
+ */
+public class QueryServer implements AutoCloseable {
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    /* Property of the JDK's HTTP server that disables Nagle's algorithm on its connections. Otherwise each response
+    written in several segments, as every response is, waits for the client's delayed acknowledgement, which caps a
+    kept alive connection at a few dozen requests per second. It's read once, when the first server is created */
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final Supplier<InvertedIndex> invertedIndexSupplier; // Provides the inverted index queried
+    private final RankedSearcher searcher; // Runs the ranked searches
+    private final HttpServer server;
+    private final ExecutorService executor; // Runs the requests
+    private final Semaphore searchPermits; // Bounds the number of searches running at the same time
+
+    // Statistics
+
+    private final Map<String, AtomicLong> requestsByEndpoint; // Requests served by each endpoint
+    private final AtomicLong[] responsesByStatusClass; // Responses sent by status class (1xx to 5xx)
+    private final AtomicInteger inFlightRequests; // Requests being served
+    private final long[] latencies; // Latency in nanoseconds of the most recent requests, as a circular buffer
+    private long latencyCount = 0; // Requests whose latency was recorded
+    private final long startNanos; // When the server was created
+
+    /**
+     * Bind the server to a port. It doesn't serve requests until it's started
+     *
+     * @param invertedIndexSupplier Provides the most recent inverted index to be used to carry on each request
+     * @param searcher              Runs the ranked searches over the same inverted indexes
+     * @param port                  Port to listen to, or 0 to listen to any free port
+     * @param searchThreads         Maximum number of searches running at the same time
+     * @throws IOException If the server can't be bound to the port
+     */
+    public QueryServer(Supplier<InvertedIndex> invertedIndexSupplier, RankedSearcher searcher, int port,
+                       int searchThreads) throws IOException {
+        this.invertedIndexSupplier = invertedIndexSupplier;
+        this.searcher = searcher;
+
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) System.setProperty(NO_DELAY_PROPERTY, "true");
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = ThreadUtils.areVirtualThreadsSupported() ? ThreadUtils.newVirtualThreadPerTaskExecutor() :
+                Executors.newFixedThreadPool(searchThreads);
+        searchPermits = new Semaphore(searchThreads);
+
+        requestsByEndpoint = new LinkedHashMap<>();
+        responsesByStatusClass = new AtomicLong[5];
+        inFlightRequests = new AtomicInteger();
+        latencies = new long[SERVER_LATENCY_SAMPLES];
+        startNanos = System.nanoTime();
+
+        for (int i = 0; i < responsesByStatusClass.length; i++)
+            responsesByStatusClass[i] = new AtomicLong();
+
+        route("/search", this::handleSearch);
+        route("/term", this::handleTerm);
+        route("/health", this::handleHealth);
+        route("/metrics", this::handleMetrics);
+        route("/", exchange -> sendError(exchange, 404, "Unknown endpoint"));
+
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Start serving requests in the background
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving requests. The requests in progress are given a short time to finish
+     */
+    @Override
+    public void close() {
+
+        server.stop(SERVER_STOP_DELAY_SECONDS);
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(SERVER_STOP_DELAY_SECONDS, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Serve an endpoint. Every request of the endpoint is counted and timed, only GET requests are served and any
+     * failure not handled by the endpoint is answered with an internal server error, if the response isn't sent yet
+     *
+     * @param path    Path of the endpoint. Longer paths aren't served by it
+     * @param handler Serves the endpoint's requests
+     */
+    private void route(String path, HttpHandler handler) {
+
+        AtomicLong requests = new AtomicLong();
+
+        if (!path.equals("/")) requestsByEndpoint.put(path, requests);
+
+        server.createContext(path, exchange -> {
+
+            long startTime = System.nanoTime();
+            inFlightRequests.incrementAndGet();
+            requests.incrementAndGet();
+
+            try {
+
+                // Consume the request body, if any, so the connection can be kept alive
+
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+
+                if (!path.equals("/") && !exchange.getRequestURI().getPath().equals(path)) {
+                    sendError(exchange, 404, "Unknown endpoint");
+                } else if (!exchange.getRequestMethod().equals("GET")) {
+                    exchange.getResponseHeaders().set("Allow", "GET");
+                    sendError(exchange, 405, "Only GET requests are served");
+                } else {
+                    handler.handle(exchange);
+                }
+
+            } catch (RuntimeException | IOException e) {
+                if (exchange.getResponseCode() == -1) {
+                    System.err.println("[ERROR] Unable to serve a request to (" + exchange.getRequestURI() + "): " + e);
+                    sendError(exchange, 500, "Internal server error");
+                }
+            } finally {
+                exchange.close();
+                inFlightRequests.decrementAndGet();
+                recordResponse(exchange.getResponseCode(), System.nanoTime() - startTime);
+            }
+        });
+    }
+
+    /**
+     * Serve a ranked search, streaming a page of its results
+     *
+     * @param exchange The request
+     * @throws IOException If the response can't be sent
+     */
+    private void handleSearch(HttpExchange exchange) throws IOException {
+
+        Map<String, String> parameters = readParameters(exchange);
+
+        if (parameters == null) return;
+
+        String query = parameters.get("q");
+        int offset = parseIntParameter(parameters, "offset", 0);
+        int count = parseIntParameter(parameters, "count", RESULTS_PAGE_SIZE);
+
+        if (query == null || query.isBlank()) {
+            sendError(exchange, 400, "Missing query (q)");
+            return;
+        }
+
+        if (offset < 0 || count < 0 || count > SERVER_MAX_PAGE_SIZE) {
+            sendError(exchange, 400, "The offset must be a non-negative integer and the count an integer between 0 " +
+                    "and " + SERVER_MAX_PAGE_SIZE);
+            return;
+        }
+
+        BooleanQuery parsedQuery;
+        ResultPage page;
+
+        try {
+            parsedQuery = new BooleanQueryParser().parse(query);
+            page = search(parsedQuery, offset, count);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "Invalid query (" + e.getMessage() + ")");
+            return;
+        } catch (IllegalStateException e) {
+            sendError(exchange, 422, "Unsupported query (" + e.getMessage() + ")");
+            return;
+        }
+
+        // Stream the results
+
+        try (Writer response = startStreaming(exchange)) {
+
+            StringBuilder json = new StringBuilder(256);
+
+            json.append("{\"query\":");
+            appendString(json, query).append(",\"parsed\":");
+            appendString(json, parsedQuery.toString()).append(",\"documentCount\":").append(page.getTotalCount())
+                    .append(",\"offset\":").append(offset).append(",\"results\":[");
+
+            ScoredDocument[] results = page.getResults();
+
+            for (int i = 0; i < results.length; i++) {
+
+                if (i > 0) json.append(',');
+
+                json.append("{\"document\":");
+                appendString(json, page.getDocumentURLs()[i]).append(",\"score\":");
+                appendNumber(json, results[i].getScore()).append(",\"hits\":").append(results[i].getFrequency())
+                        .append('}');
+
+                response.append(json);
+                json.setLength(0);
+            }
+
+            response.append(json.append("]}"));
+        }
+    }
+
+    /**
+     * Serve the postings list of a term, streaming it
+     *
+     * @param exchange The request
+     * @throws IOException If the response can't be sent
+     */
+    private void handleTerm(HttpExchange exchange) throws IOException {
+
+        Map<String, String> parameters = readParameters(exchange);
+
+        if (parameters == null) return;
+
+        String term = parameters.get("t");
+
+        if (term == null || term.isBlank()) {
+            sendError(exchange, 400, "Missing term (t)");
+            return;
+        }
+
+        String normalizedTerm = NormalizationUtils.normalizeStringNFD(term);
+        InvertedIndex invertedIndex = invertedIndexSupplier.get(); // The whole request uses the same inverted index
+        Occurrences occurrences = invertedIndex.getInvertedIndex().get(normalizedTerm);
+        IDocumentCatalogue documentCatalogue = invertedIndex.getDocumentCatalogue();
+
+        try (Writer response = startStreaming(exchange)) {
+
+            StringBuilder json = new StringBuilder(256);
+
+            json.append("{\"term\":");
+            appendString(json, normalizedTerm).append(",\"globalFrequency\":")
+                    .append(occurrences != null ? occurrences.getGlobalFrequency() : 0).append(",\"documentCount\":")
+                    .append(occurrences != null ? occurrences.getDocumentCount() : 0).append(",\"postings\":[");
+
+            for (int i = 0; occurrences != null && i < occurrences.getDocumentCount(); i++) {
+
+                if (i > 0) json.append(',');
+
+                json.append("{\"document\":");
+                appendString(json, documentCatalogue.getDocumentURLByID(occurrences.getDocumentID(i)))
+                        .append(",\"hits\":").append(occurrences.getFrequency(i)).append('}');
+
+                response.append(json);
+                json.setLength(0);
+            }
+
+            response.append(json.append("]}"));
+        }
+    }
+
+    /**
+     * Serve the health of the server
+     *
+     * @param exchange The request
+     * @throws IOException If the response can't be sent
+     */
+    private void handleHealth(HttpExchange exchange) throws IOException {
+
+        InvertedIndex invertedIndex = invertedIndexSupplier.get();
+
+        sendJson(exchange, 200, String.format("{\"status\":\"up\",\"indexVersion\":%d,\"terms\":%d,\"documents\":%d}",
+                invertedIndex.getVersion(), invertedIndex.getInvertedIndex().size(),
+                invertedIndex.getCollectionStatistics().getDocumentCount()));
+    }
+
+    /**
+     * Serve the metrics of the server
+     *
+     * @param exchange The request
+     * @throws IOException If the response can't be sent
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+
+        StringBuilder json = new StringBuilder(512);
+
+        json.append("{\"uptimeSeconds\":");
+        appendNumber(json, (System.nanoTime() - startNanos) / 1e9).append(",\"inFlightRequests\":")
+                .append(inFlightRequests.get()).append(",\"requests\":{");
+
+        boolean first = true;
+
+        for (Map.Entry<String, AtomicLong> endpoint : requestsByEndpoint.entrySet()) {
+
+            if (!first) json.append(',');
+
+            appendString(json, endpoint.getKey()).append(':').append(endpoint.getValue().get());
+            first = false;
+        }
+
+        json.append("},\"responses\":{");
+
+        for (int i = 0; i < responsesByStatusClass.length; i++) {
+
+            if (i > 0) json.append(',');
+
+            json.append('"').append(i + 1).append("xx\":").append(responsesByStatusClass[i].get());
+        }
+
+        json.append("},\"latencyMillis\":{");
+
+        double[] percentiles = getLatencyPercentiles(50, 95, 99, 100);
+
+        json.append("\"p50\":");
+        appendNumber(json, percentiles[0]).append(",\"p95\":");
+        appendNumber(json, percentiles[1]).append(",\"p99\":");
+        appendNumber(json, percentiles[2]).append(",\"max\":");
+        appendNumber(json, percentiles[3]).append('}');
+
+        ResultPageCache resultsCache = searcher.getResultsCache();
+
+        if (resultsCache != null) {
+            json.append(",\"resultsCache\":{\"hits\":").append(resultsCache.getHits()).append(",\"misses\":")
+                    .append(resultsCache.getMisses()).append(",\"hitRatio\":");
+            appendNumber(json, resultsCache.getHitRatio()).append(",\"evictions\":")
+                    .append(resultsCache.getEvictions()).append(",\"invalidations\":")
+                    .append(resultsCache.getInvalidations()).append(",\"cachedBytes\":")
+                    .append(resultsCache.getCachedBytes()).append('}');
+        }
+
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    /**
+     * Run a ranked search once a search permit is available
+     *
+     * @param query  A parsed query
+     * @param offset Number of best results skipped
+     * @param count  Maximum number of results of the page
+     * @return The page of ranked results
+     * @throws InterruptedIOException If interrupted while waiting for a permit
+     */
+    private ResultPage search(BooleanQuery query, int offset, int count) throws InterruptedIOException {
+
+        try {
+            searchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to search");
+        }
+
+        try {
+            return searcher.search(query, offset, count);
+        } finally {
+            searchPermits.release();
+        }
+    }
+
+    /**
+     * @param percentiles Percentiles, between 0 and 100
+     * @return The latency in milliseconds of each percentile of the most recent requests (nearest rank), or 0 if there
+     * were none
+     */
+    public double[] getLatencyPercentiles(double... percentiles) {
+
+        long[] sorted;
+
+        synchronized (latencies) {
+            sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, latencies.length));
+        }
+
+        Arrays.sort(sorted);
+
+        double[] values = new double[percentiles.length];
+
+        for (int i = 0; i < percentiles.length && sorted.length > 0; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length);
+            values[i] = sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+        }
+
+        return values;
+    }
+
+    /**
+     * @param status       Status code of a response, or -1 if none was sent
+     * @param latencyNanos Time taken to serve the request
+     */
+    private void recordResponse(int status, long latencyNanos) {
+
+        if (status >= 100 && status < 600) responsesByStatusClass[status / 100 - 1].incrementAndGet();
+
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % latencies.length)] = latencyNanos;
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        long requests = requestsByEndpoint.values().stream().mapToLong(AtomicLong::get).sum();
+        double[] percentiles = getLatencyPercentiles(50, 95, 99);
+
+        return String.format("%d request(s) (%d client error(s), %d server error(s)), latency p50 %.3f ms, " +
+                        "p95 %.3f ms, p99 %.3f ms", requests, responsesByStatusClass[3].get(),
+                responsesByStatusClass[4].get(), percentiles[0], percentiles[1], percentiles[2]);
+    }
+
+    /**
+     * @param exchange A request
+     * @return The decoded parameters of the request's query string, or null if it's malformed, in which case the
+     * request has already been answered with an error
+     * @throws IOException If the error response can't be sent
+     */
+    private static Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+
+        try {
+            return parseParameters(exchange);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "Malformed query string (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * @param exchange A request
+     * @return The decoded parameters of the request's query string. Repeated parameters keep their first value
+     * @throws IllegalArgumentException If the query string is malformed
+     */
+    private static Map<String, String> parseParameters(HttpExchange exchange) {
+
+        Map<String, String> parameters = new HashMap<>();
+        String queryString = exchange.getRequestURI().getRawQuery();
+
+        if (queryString == null) return parameters;
+
+        for (String parameter : queryString.split("&")) {
+
+            if (parameter.isEmpty()) continue;
+
+            String[] pair = parameter.split("=", 2);
+
+            parameters.putIfAbsent(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                    pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+        }
+
+        return parameters;
+    }
+
+    /**
+     * @param parameters   Parameters of a request
+     * @param name         Name of an integer parameter
+     * @param defaultValue Value of the parameter if it's missing
+     * @return The value of the parameter, or -1 if it isn't an integer
+     */
+    private static int parseIntParameter(Map<String, String> parameters, String name, int defaultValue) {
+
+        String value = parameters.get(name);
+
+        if (value == null) return defaultValue;
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Send the headers of a response whose JSON body is streamed, with chunked transfer encoding
+     *
+     * @param exchange The request
+     * @return Writes the body of the response. Closing it ends the response
+     * @throws IOException If the headers can't be sent
+     */
+    private static Writer startStreaming(HttpExchange exchange) throws IOException {
+
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                SERVER_STREAM_BUFFER_BYTES);
+    }
+
+    /**
+     * Send a response with a JSON body of known length
+     *
+     * @param exchange The request
+     * @param status   Status code of the response
+     * @param json     Body of the response
+     * @throws IOException If the response can't be sent
+     */
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Send an error response, whose JSON body describes the error
+     *
+     * @param exchange The request
+     * @param status   Status code of the response
+     * @param message  Describes the error
+     * @throws IOException If the response can't be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, appendString(new StringBuilder("{\"error\":"), message).append('}').toString());
+    }
+
+}
@@ -0,0 +1,203 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import es.unex.giiis.ribw.jgarciapft.query.ResultPage;
+import es.unex.giiis.ribw.jgarciapft.ranking.IScoringCriterion;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least recently used cache of pages of ranked search results, keyed on the normalized query, the scoring criterion
+ * that ranked it and the page's bounds. Repeated searches are shown without evaluating, ranking or resolving their
+ * documents again. It's bounded by the estimated memory taken by the cached pages instead of by their number
+ * <p>
+ * Cached pages are only valid for the inverted index snapshot they were ranked on. The cache remembers the version of
+ * that snapshot, and is emptied as soon as it's used with a newer one. Hits, misses, evictions and invalidations are
+ * counted so the cache can be sized for a given query mix. It's safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see InvertedIndex#getVersion()
+ */
+public class ResultPageCache {
+
+    private final long maxBytes; // Maximum estimated memory taken by the cached pages
+    private final LinkedHashMap<Key, ResultPage> cachedPages; // Cached pages, least recently used first
+    private long cachedBytes = 0; // Estimated memory taken by the cached pages
+    private long version = -1; // Version of the inverted index snapshot the cached pages were ranked on
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    /**
+     * @param maxBytes Maximum estimated memory taken by the cached pages
+     */
+    public ResultPageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        cachedPages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param invertedIndex    The inverted index snapshot searched
+     * @param query            The normalized query
+     * @param scoringCriterion The criterion ranking the results
+     * @param offset           Number of best results skipped by the page
+     * @param count            Maximum number of results of the page
+     * @return The cached page, or null if it isn't cached for that snapshot
+     */
+    public synchronized ResultPage get(InvertedIndex invertedIndex, String query, IScoringCriterion scoringCriterion,
+                                       int offset, int count) {
+
+        ResultPage page = isCurrent(invertedIndex) ?
+                cachedPages.get(new Key(query, scoringCriterion, offset, count)) : null;
+
+        if (page != null) hits++;
+        else misses++;
+
+        return page;
+    }
+
+    /**
+     * Cache a page, evicting the least recently used pages until it fits. Pages of snapshots older than the cached ones
+     * aren't cached
+     *
+     * @param invertedIndex    The inverted index snapshot searched
+     * @param query            The normalized query
+     * @param scoringCriterion The criterion ranking the results
+     * @param offset           Number of best results skipped by the page
+     * @param count            Maximum number of results of the page
+     * @param page             The page
+     */
+    public synchronized void put(InvertedIndex invertedIndex, String query, IScoringCriterion scoringCriterion,
+                                 int offset, int count, ResultPage page) {
+
+        Key key = new Key(query, scoringCriterion, offset, count);
+        long size = key.estimateSizeInBytes() + page.estimateSizeInBytes();
+
+        if (!isCurrent(invertedIndex) || size > maxBytes) return;
+
+        ResultPage previous = cachedPages.put(key, page);
+
+        if (previous != null) cachedBytes -= key.estimateSizeInBytes() + previous.estimateSizeInBytes();
+
+        cachedBytes += size;
+
+        // Evict the least recently used pages until the cache fits within its bound
+
+        Iterator<Map.Entry<Key, ResultPage>> iterator = cachedPages.entrySet().iterator();
+
+        while (cachedBytes > maxBytes) {
+            Map.Entry<Key, ResultPage> evicted = iterator.next();
+            cachedBytes -= evicted.getKey().estimateSizeInBytes() + evicted.getValue().estimateSizeInBytes();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Empty the cache if the snapshot is newer than the one the cached pages were ranked on
+     *
+     * @param invertedIndex An inverted index snapshot
+     * @return If the cached pages are valid for the snapshot
+     */
+    private boolean isCurrent(InvertedIndex invertedIndex) {
+
+        if (invertedIndex.getVersion() > version) {
+
+            if (!cachedPages.isEmpty()) invalidations++;
+
+            cachedPages.clear();
+            cachedBytes = 0;
+            version = invertedIndex.getVersion();
+        }
+
+        return invertedIndex.getVersion() == version;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public synchronized int getCachedEntries() {
+        return cachedPages.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Fraction of the lookups that were hits, or 0 if there were none
+     */
+    public synchronized double getHitRatio() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hit(s), %d miss(es) (%.1f%% hit ratio), %d eviction(s), %d invalidation(s), " +
+                        "%d cached page(s) taking %d of %d byte(s)", hits, misses, 100 * getHitRatio(), evictions,
+                invalidations, cachedPages.size(), cachedBytes, maxBytes);
+    }
+
+    /**
+     * Identifies a cached page. Scoring criteria are told apart by their own equality, which is identity unless they
+     * define it
+     */
+    private static final class Key {
+
+        private final String query;
+        private final IScoringCriterion scoringCriterion;
+        private final int offset;
+        private final int count;
+
+        private Key(String query, IScoringCriterion scoringCriterion, int offset, int count) {
+            this.query = query;
+            this.scoringCriterion = scoringCriterion;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        private long estimateSizeInBytes() {
+            return 32 + 40 + 2L * query.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+
+            return offset == other.offset && count == other.count && query.equals(other.query) &&
+                    scoringCriterion.equals(other.scoringCriterion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, scoringCriterion, offset, count);
+        }
+
+    }
+
+}
@@ -0,0 +1,670 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.readVarInt;
+
+/**
+ * Minimal acyclic deterministic automaton accepting a set of terms. It's built in a single pass over the sorted terms
+ * (Daciuk et al.'s incremental construction), merging equivalent states as soon as they can't change anymore, so the
+ * prefixes and suffixes shared by many terms are stored once
+ * <p>
+ * The automaton is kept in a compact byte layout that's traversed in place, so an automaton stored in an inverted file
+ * is queried straight from its buffer. It starts with the offset of the initial state and the length of the longest
+ * term, as 4-byte ints, and the width in bytes of the labels (1 if every label fits in a byte, 2 otherwise) and of the
+ * state offsets (the fewest bytes that hold every offset), as single bytes, followed by the states. Each state is the
+ * number of its arcs times two, plus one if it accepts, as a varint, and its arcs sorted by label. Each arc is the label
+ * and the offset of the target state, big-endian and as wide as the header tells, so the arcs are binary searched
+ * <p>
+ * It's immutable, so it's safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see WildcardIndex
+ */
+public final class TermAutomaton {
+
+    // Wildcards of the patterns matched against the automaton
+    public static final char ANY_CHARS = '*'; // Matches any run of chars, even an empty one
+    public static final char ANY_CHAR = '?'; // Matches a single char
+
+    // Maximum length of a pattern or a fuzzy matched term, so the set of their positions reached at once fits in a long
+    public static final int MAX_PATTERN_LENGTH = Long.SIZE - 1;
+
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES + 2;
+
+    private final ByteBuffer encoded; // The encoded automaton. Offsets are relative to its start
+    private final int initialState; // Offset of the initial state
+    private final int maxTermLength; // Length of the longest term accepted
+    private final int labelWidth; // Width in bytes of the arcs' labels
+    private final int targetWidth; // Width in bytes of the arcs' target offsets
+
+    /**
+     * @param encoded An encoded automaton. Only its header is validated
+     * @throws IOException If the header is malformed
+     */
+    public TermAutomaton(ByteBuffer encoded) throws IOException {
+
+        this.encoded = encoded.slice();
+
+        if (this.encoded.limit() < HEADER_LENGTH + 1) throw new IOException("Malformed term automaton");
+
+        initialState = this.encoded.getInt(0);
+        maxTermLength = this.encoded.getInt(Integer.BYTES);
+        labelWidth = this.encoded.get(2 * Integer.BYTES);
+        targetWidth = this.encoded.get(2 * Integer.BYTES + 1);
+
+        if (initialState < HEADER_LENGTH || initialState >= this.encoded.limit() || maxTermLength < 0 ||
+                maxTermLength > this.encoded.limit() || labelWidth < 1 || labelWidth > Character.BYTES ||
+                targetWidth < 1 || targetWidth > Integer.BYTES)
+            throw new IOException("Malformed term automaton");
+    }
+
+    /**
+     * @param sortedTerms Terms in strictly increasing order
+     * @return The minimal automaton accepting exactly those terms
+     * @throws IllegalArgumentException If the terms aren't sorted or are repeated
+     */
+    public static TermAutomaton build(Iterable<String> sortedTerms) {
+
+        Map<State, State> register = new HashMap<>(); // Merged states that can't change anymore
+        State initial = new State();
+        String previousTerm = null;
+        int maxTermLength = 0;
+        char maxLabel = 0;
+
+        for (String term : sortedTerms) {
+
+            if (previousTerm != null && previousTerm.compareTo(term) >= 0)
+                throw new IllegalArgumentException("Terms must be sorted and unique ('" + previousTerm + "', '" +
+                        term + "')");
+
+            // Follow the prefix shared with the previous term. The rest of the previous term's path is final now
+
+            int sharedLength = 0;
+            State state = initial;
+
+            if (previousTerm != null) {
+
+                int maxShared = Math.min(previousTerm.length(), term.length());
+
+                while (sharedLength < maxShared && previousTerm.charAt(sharedLength) == term.charAt(sharedLength)) {
+                    state = state.lastTarget();
+                    sharedLength++;
+                }
+            }
+
+            if (state.arcCount > 0) replaceOrRegister(state, register);
+
+            // Append the rest of the term
+
+            for (int i = sharedLength; i < term.length(); i++) {
+                State next = new State();
+                state.addArc(term.charAt(i), next);
+                state = next;
+                maxLabel = (char) Math.max(maxLabel, term.charAt(i));
+            }
+
+            state.accepting = true;
+            previousTerm = term;
+            maxTermLength = Math.max(maxTermLength, term.length());
+        }
+
+        if (initial.arcCount > 0) replaceOrRegister(initial, register);
+
+        try {
+            return new TermAutomaton(encode(initial, maxTermLength, maxLabel <= 0xFF ? 1 : Character.BYTES));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The encoded automaton. It must not be modified
+     */
+    public ByteBuffer getEncoded() {
+        return encoded.duplicate();
+    }
+
+    /**
+     * @param term A term
+     * @return If the automaton accepts the term
+     */
+    public boolean accepts(CharSequence term) {
+
+        ByteBuffer reader = encoded.duplicate();
+        int state = initialState;
+
+        try {
+            for (int i = 0; i < term.length() && state >= 0; i++)
+                state = findTarget(reader, state, term.charAt(i));
+
+            return state >= 0 && (readVarInt(reader.position(state)) & 1) != 0;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalStateException("Malformed term automaton");
+        }
+    }
+
+    /**
+     * Find the terms accepted by the automaton that match a pattern, in increasing order. Patterns are made of literal
+     * chars and the wildcards {@link TermAutomaton#ANY_CHARS} and {@link TermAutomaton#ANY_CHAR}. The literal prefix of
+     * the pattern is followed directly, so only the states below it are visited
+     *
+     * @param pattern    The pattern
+     * @param maxMatches Maximum number of matches
+     * @param matches    Receives each match
+     * @return If every match was received, false if there are more than the maximum
+     * @throws IllegalArgumentException If the pattern is longer than {@link TermAutomaton#MAX_PATTERN_LENGTH}
+     */
+    public boolean match(String pattern, int maxMatches, Consumer<String> matches) {
+
+        if (pattern.length() > MAX_PATTERN_LENGTH)
+            throw new IllegalArgumentException("Patterns can't be longer than " + MAX_PATTERN_LENGTH + " chars");
+
+        ByteBuffer reader = encoded.duplicate();
+
+        try {
+
+            // Follow the literal prefix
+
+            int state = initialState;
+            int prefixLength = 0;
+
+            while (prefixLength < pattern.length() && !isWildcard(pattern.charAt(prefixLength))) {
+
+                state = findTarget(reader, state, pattern.charAt(prefixLength++));
+
+                if (state < 0 || prefixLength > maxTermLength) return true;
+            }
+
+            // Visit the states below it along with the pattern positions reached
+
+            PatternMatcher matcher = new PatternMatcher(reader, pattern, maxMatches, matches);
+            pattern.getChars(0, prefixLength, matcher.path, 0);
+
+            return matcher.visit(state, prefixLength, matcher.skipAnyChars(1L << prefixLength));
+
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalStateException("Malformed term automaton");
+        }
+    }
+
+    /**
+     * Find the terms accepted by the automaton within some edit distance of a term, in increasing order. The edit
+     * distance is the Levenshtein distance: the fewest insertions, deletions and substitutions of single chars that
+     * turn one term into the other. The automaton is walked along with a Levenshtein automaton of the term, simulated
+     * as bitsets of the term positions reached with each number of edits, so branches are left as soon as no term
+     * below them can be close enough
+     *
+     * @param term        The term. Wildcards are matched literally
+     * @param maxDistance Maximum edit distance
+     * @param maxMatches  Maximum number of matches
+     * @param matches     Receives each match along with its edit distance to the term
+     * @return If every match was received, false if there are more than the maximum
+     * @throws IllegalArgumentException If the term is longer than {@link TermAutomaton#MAX_PATTERN_LENGTH} or the
+     *                                  distance is negative
+     */
+    public boolean matchFuzzy(String term, int maxDistance, int maxMatches, ObjIntConsumer<String> matches) {
+
+        if (term.length() > MAX_PATTERN_LENGTH)
+            throw new IllegalArgumentException("Terms can't be longer than " + MAX_PATTERN_LENGTH + " chars");
+        if (maxDistance < 0) throw new IllegalArgumentException("The edit distance can't be negative");
+
+        FuzzyMatcher matcher = new FuzzyMatcher(encoded.duplicate(), term, maxDistance, maxMatches, matches);
+
+        try {
+            return matcher.visit(initialState, 0);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalStateException("Malformed term automaton");
+        }
+    }
+
+    /**
+     * @param c A char
+     * @return If the char is a wildcard of patterns
+     */
+    public static boolean isWildcard(char c) {
+        return c == ANY_CHARS || c == ANY_CHAR;
+    }
+
+    /**
+     * @param reader A reader of the encoded automaton
+     * @param state  Offset of a state
+     * @param label  A label
+     * @return Offset of the target of the state's arc with that label, or -1 if it has none
+     */
+    private int findTarget(ByteBuffer reader, int state, char label) {
+
+        int arcCount = readVarInt(reader.position(state)) >>> 1;
+        int arcsStart = reader.position();
+        int arcLength = labelWidth + targetWidth;
+
+        // Arcs are sorted by label
+
+        int low = 0, high = arcCount - 1;
+
+        while (low <= high) {
+
+            int middle = (low + high) >>> 1;
+            int arc = arcsStart + middle * arcLength;
+            char middleLabel = (char) readUnsigned(reader, arc, labelWidth);
+
+            if (middleLabel < label) low = middle + 1;
+            else if (middleLabel > label) high = middle - 1;
+            else return readUnsigned(reader, arc + labelWidth, targetWidth);
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param reader A reader of the encoded automaton
+     * @param offset Offset of a big-endian unsigned integer
+     * @param width  Width in bytes of the integer, up to 4
+     * @return The integer
+     */
+    private static int readUnsigned(ByteBuffer reader, int offset, int width) {
+
+        int value = 0;
+
+        for (int i = 0; i < width; i++)
+            value = (value << 8) | (reader.get(offset + i) & 0xFF);
+
+        return value;
+    }
+
+    /**
+     * @param out   Where to write the integer
+     * @param value An unsigned integer that fits in the width
+     * @param width Width in bytes of the integer, up to 4
+     */
+    private static void putUnsigned(ByteBuffer out, int value, int width) {
+
+        for (int i = width - 1; i >= 0; i--)
+            out.put((byte) (value >>> (8 * i)));
+    }
+
+    /**
+     * Merge the last child of a state, and recursively its own last children, with an equivalent registered state,
+     * or register it if there's none. Only done once the child can't change anymore
+     *
+     * @param state    A state
+     * @param register The registered states
+     */
+    private static void replaceOrRegister(State state, Map<State, State> register) {
+
+        State child = state.lastTarget();
+
+        if (child.arcCount > 0) replaceOrRegister(child, register);
+
+        State equivalent = register.putIfAbsent(child, child);
+
+        if (equivalent != null) state.targets[state.arcCount - 1] = equivalent;
+    }
+
+    /**
+     * @param initial       The initial state of a built automaton
+     * @param maxTermLength Length of the longest term accepted
+     * @param labelWidth    Width in bytes of the arcs' labels
+     * @return The encoded automaton
+     */
+    private static ByteBuffer encode(State initial, int maxTermLength, int labelWidth) {
+
+        // Lay out the states after their targets, with the narrowest target offsets that hold every offset
+
+        Map<State, Integer> offsets;
+        int targetWidth = 0;
+        long length;
+
+        do {
+            targetWidth++;
+            offsets = new IdentityHashMap<>();
+            length = layOut(initial, offsets, HEADER_LENGTH, labelWidth + targetWidth);
+        } while (targetWidth < Integer.BYTES && length > 1L << (8 * targetWidth));
+
+        if (length > Integer.MAX_VALUE) throw new IllegalStateException("The term automaton is too big");
+
+        ByteBuffer encoded = ByteBuffer.allocate((int) length);
+        encoded.putInt(offsets.get(initial)).putInt(maxTermLength).put((byte) labelWidth).put((byte) targetWidth);
+
+        for (Map.Entry<State, Integer> entry : offsets.entrySet()) {
+
+            State state = entry.getKey();
+            int header = state.arcCount << 1 | (state.accepting ? 1 : 0);
+
+            encoded.position(entry.getValue());
+
+            while ((header & ~0x7F) != 0) {
+                encoded.put((byte) ((header & 0x7F) | 0x80));
+                header >>>= 7;
+            }
+
+            encoded.put((byte) header);
+
+            for (int i = 0; i < state.arcCount; i++) {
+                putUnsigned(encoded, state.labels[i], labelWidth);
+                putUnsigned(encoded, offsets.get(state.targets[i]), targetWidth);
+            }
+        }
+
+        return encoded.rewind();
+    }
+
+    /**
+     * Assign an offset to a state and every state below it that doesn't have one yet, placing each state after its
+     * targets
+     *
+     * @param state     A state
+     * @param offsets   The offsets assigned so far
+     * @param next      The next free offset
+     * @param arcLength Length in bytes of each arc
+     * @return The next free offset after laying out the states
+     */
+    private static long layOut(State state, Map<State, Integer> offsets, long next, int arcLength) {
+
+        if (offsets.containsKey(state)) return next;
+
+        for (int i = 0; i < state.arcCount; i++)
+            next = layOut(state.targets[i], offsets, next, arcLength);
+
+        offsets.put(state, (int) Math.min(next, Integer.MAX_VALUE));
+
+        int headerLength = 1;
+
+        for (int header = state.arcCount << 1; (header & ~0x7F) != 0; header >>>= 7)
+            headerLength++;
+
+        return next + headerLength + (long) state.arcCount * arcLength;
+    }
+
+    /**
+     * State of an automaton being built. Registered states are never modified, so they are compared by their
+     * acceptance and their arcs, whose targets are registered states compared by identity
+     */
+    private static final class State {
+
+        private boolean accepting;
+        private char[] labels = new char[2];
+        private State[] targets = new State[2];
+        private int arcCount;
+
+        private void addArc(char label, State target) {
+
+            if (arcCount == labels.length) {
+                labels = Arrays.copyOf(labels, arcCount * 2);
+                targets = Arrays.copyOf(targets, arcCount * 2);
+            }
+
+            labels[arcCount] = label;
+            targets[arcCount++] = target;
+        }
+
+        private State lastTarget() {
+            return targets[arcCount - 1];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) return true;
+            if (!(o instanceof State)) return false;
+
+            State other = (State) o;
+
+            if (accepting != other.accepting || arcCount != other.arcCount) return false;
+
+            for (int i = 0; i < arcCount; i++)
+                if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+
+            int hash = accepting ? 1 : 0;
+
+            for (int i = 0; i < arcCount; i++)
+                hash = 31 * (31 * hash + labels[i]) + System.identityHashCode(targets[i]);
+
+            return hash;
+        }
+
+    }
+
+    /**
+     * Depth-first traversal of the automaton that tracks the positions of a pattern reached by the path followed. The
+     * positions are a bitset, where the position past the end of the pattern means the whole pattern matched
+     */
+    private final class PatternMatcher {
+
+        private final ByteBuffer reader; // Reader of the encoded automaton
+        private final String pattern; // The pattern matched
+        private final long anyCharsPositions; // Positions of the pattern holding ANY_CHARS
+        private final int maxMatches;
+        private final Consumer<String> matches;
+        private final char[] path; // Labels of the path followed
+        private int matchCount;
+
+        private PatternMatcher(ByteBuffer reader, String pattern, int maxMatches, Consumer<String> matches) {
+            this.reader = reader;
+            this.pattern = pattern;
+            this.maxMatches = maxMatches;
+            this.matches = matches;
+
+            long anyChars = 0;
+
+            for (int i = 0; i < pattern.length(); i++)
+                if (pattern.charAt(i) == ANY_CHARS) anyChars |= 1L << i;
+
+            anyCharsPositions = anyChars;
+            path = new char[Math.max(maxTermLength, pattern.length())];
+            matchCount = 0;
+        }
+
+        /**
+         * @param state     Offset of the state reached
+         * @param depth     Length of the path followed
+         * @param positions Positions of the pattern reached by the path
+         * @return If the traversal should go on, false once there are more matches than the maximum
+         */
+        private boolean visit(int state, int depth, long positions) {
+
+            int header = readVarInt(reader.position(state));
+            int arcsStart = reader.position();
+
+            if ((positions & (1L << pattern.length())) != 0 && (header & 1) != 0) {
+
+                if (++matchCount > maxMatches) return false;
+
+                matches.accept(new String(path, 0, depth));
+            }
+
+            // No state of a well-formed automaton has arcs this deep
+
+            if (depth == maxTermLength) return true;
+
+            int arcCount = header >>> 1;
+            int arcLength = labelWidth + targetWidth;
+
+            for (int i = 0; i < arcCount; i++) {
+
+                int arc = arcsStart + i * arcLength;
+                char label = (char) readUnsigned(reader, arc, labelWidth);
+                long nextPositions = advance(positions, label);
+
+                if (nextPositions != 0) {
+
+                    path[depth] = label;
+
+                    if (!visit(readUnsigned(reader, arc + labelWidth, targetWidth), depth + 1, nextPositions))
+                        return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @param positions Positions of the pattern reached
+         * @param label     The next char of the path
+         * @return Positions of the pattern reached after the char
+         */
+        private long advance(long positions, char label) {
+
+            long next = 0;
+
+            for (long remaining = positions; remaining != 0; remaining &= remaining - 1) {
+
+                int position = Long.numberOfTrailingZeros(remaining);
+
+                if (position == pattern.length()) continue;
+
+                char c = pattern.charAt(position);
+
+                if (c == ANY_CHARS) next |= 1L << position;
+                else if (c == ANY_CHAR || c == label) next |= 1L << (position + 1);
+            }
+
+            return skipAnyChars(next);
+        }
+
+        /**
+         * @param positions Positions of the pattern reached
+         * @return The same positions plus the ones past every run of ANY_CHARS that starts at them, as those may match
+         * nothing
+         */
+        private long skipAnyChars(long positions) {
+
+            for (int position = 0; position < pattern.length(); position++)
+                if ((positions & anyCharsPositions & (1L << position)) != 0) positions |= 1L << (position + 1);
+
+            return positions;
+        }
+
+    }
+
+    /**
+     * Depth-first traversal of the automaton that simulates a Levenshtein automaton of a term along the path followed.
+     * For each number of edits, the term positions reached with at most that many edits are a bitset, updated for each
+     * label as in Wu and Manber's bit-parallel approximate matching. The position past the end of the term means the
+     * whole term matched
+     */
+    private final class FuzzyMatcher {
+
+        private final ByteBuffer reader; // Reader of the encoded automaton
+        private final String term; // The term matched
+        private final int maxDistance;
+        private final int maxMatches;
+        private final ObjIntConsumer<String> matches;
+        private final long validPositions; // Every position of the term, including the one past its end
+        private final long[][] reached; // Positions reached at each depth of the path with each number of edits
+        private final char[] path; // Labels of the path followed
+        private int matchCount;
+
+        private FuzzyMatcher(ByteBuffer reader, String term, int maxDistance, int maxMatches,
+                             ObjIntConsumer<String> matches) {
+            this.reader = reader;
+            this.term = term;
+            this.maxDistance = maxDistance;
+            this.maxMatches = maxMatches;
+            this.matches = matches;
+
+            // Paths longer than the term plus the edits can't match, so the traversal never goes deeper
+
+            int maxDepth = (int) Math.min(maxTermLength, (long) term.length() + maxDistance);
+
+            validPositions = -1L >>> (Long.SIZE - 1 - term.length());
+            reached = new long[maxDepth + 1][maxDistance + 1];
+            path = new char[maxDepth];
+            matchCount = 0;
+
+            // Before any label, the first positions are reached by deleting the chars before them
+
+            for (int edits = 0; edits <= maxDistance; edits++)
+                reached[0][edits] = (-1L >>> (Long.SIZE - 1 - Math.min(edits, term.length()))) & validPositions;
+        }
+
+        /**
+         * @param state Offset of the state reached
+         * @param depth Length of the path followed
+         * @return If the traversal should go on, false once there are more matches than the maximum
+         */
+        private boolean visit(int state, int depth) {
+
+            int header = readVarInt(reader.position(state));
+            int arcsStart = reader.position();
+            long[] positions = reached[depth];
+
+            if ((header & 1) != 0) {
+
+                for (int edits = 0; edits <= maxDistance; edits++) {
+
+                    if ((positions[edits] & (1L << term.length())) != 0) {
+
+                        if (++matchCount > maxMatches) return false;
+
+                        matches.accept(new String(path, 0, depth), edits);
+                        break;
+                    }
+                }
+            }
+
+            if (depth == reached.length - 1) return true;
+
+            int arcCount = header >>> 1;
+            int arcLength = labelWidth + targetWidth;
+
+            for (int i = 0; i < arcCount; i++) {
+
+                int arc = arcsStart + i * arcLength;
+                char label = (char) readUnsigned(reader, arc, labelWidth);
+
+                // Only follow the arc while some position is still reachable with the edits allowed
+
+                if (advance(positions, label, reached[depth + 1])) {
+
+                    path[depth] = label;
+
+                    if (!visit(readUnsigned(reader, arc + labelWidth, targetWidth), depth + 1)) return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @param positions     Positions of the term reached with each number of edits
+         * @param label         The next char of the path
+         * @param nextPositions Receives the positions of the term reached after the char with each number of edits
+         * @return If any position is reached after the char
+         */
+        private boolean advance(long[] positions, char label, long[] nextPositions) {
+
+            long labelPositions = 0; // Positions of the term followed by the label
+
+            for (int i = 0; i < term.length(); i++)
+                if (term.charAt(i) == label) labelPositions |= 1L << i;
+
+            nextPositions[0] = (positions[0] & labelPositions) << 1;
+
+            // Besides matching the label, one more edit inserts it, substitutes the next char with it or deletes the
+            // next char after it
+
+            for (int edits = 1; edits <= maxDistance; edits++)
+                nextPositions[edits] = ((positions[edits] & labelPositions) << 1 | positions[edits - 1] |
+                        positions[edits - 1] << 1 | nextPositions[edits - 1] << 1) & validPositions;
+
+            return nextPositions[maxDistance] != 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,255 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Term dictionary used while building an inverted index. Terms are mapped to dense integer term IDs, assigned in order
+ * of appearance, by an open addressing hash table with linear probing. The occurrences of each term are held in an
+ * array indexed by term ID, so registering an occurrence costs a single hash lookup. Terms aren't kept in any order,
+ * the lexicographic order is established once, when the dictionary is exported
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class TermDictionary {
+
+    private static final int INITIAL_CAPACITY = 1024; // Initial number of slots. Always a power of two
+
+    private int[] slots; // Hash table of term IDs plus one. Zero marks an empty slot
+    private String[] terms; // Terms by term ID
+    private int[] hashes; // Hash of each term by term ID, so the table can grow without hashing terms again
+    private Occurrences[] occurrences; // Occurrences of each term by term ID
+    private int size; // Number of terms, which is also the next term ID
+
+    public TermDictionary() {
+        slots = new int[INITIAL_CAPACITY];
+        terms = new String[INITIAL_CAPACITY / 2];
+        hashes = new int[INITIAL_CAPACITY / 2];
+        occurrences = new Occurrences[INITIAL_CAPACITY / 2];
+        size = 0;
+    }
+
+    /**
+     * Register one occurrence of a term within a document, adding the term to the dictionary if it's new
+     *
+     * @param term       The term
+     * @param documentID The ID of the document where the occurrence occurred
+     */
+    public void computeOccurrence(String term, int documentID) {
+        int termID = termID(term); // Looked up first, as adding the term may grow the occurrences array
+        occurrences[termID].computeOccurrenceInDocument(documentID);
+    }
+
+    /**
+     * Register several occurrences of a term within a document, adding the term to the dictionary if it's new
+     *
+     * @param term       The term
+     * @param documentID The ID of the document where the occurrences occurred
+     * @param frequency  The number of occurrences
+     */
+    public void computeOccurrences(String term, int documentID, int frequency) {
+        computeOccurrences(term, documentID, frequency, null);
+    }
+
+    /**
+     * Register several occurrences of a term within a document along with their positions, adding the term to the
+     * dictionary if it's new
+     *
+     * @param term       The term
+     * @param documentID The ID of the document where the occurrences occurred
+     * @param frequency  The number of occurrences
+     * @param positions  The encoded positions of the occurrences, or null if they aren't recorded
+     * @see Occurrences#computeOccurrencesInDocument(int, int, byte[])
+     */
+    public void computeOccurrences(String term, int documentID, int frequency, byte[] positions) {
+        int termID = termID(term); // Looked up first, as adding the term may grow the occurrences array
+        occurrences[termID].computeOccurrencesInDocument(documentID, frequency, positions);
+    }
+
+    /**
+     * Remove every term, keeping the allocated capacity so the dictionary can be refilled. Only the slots of the terms
+     * removed are cleared when they're few compared with the capacity, so after growing to fit a large document the
+     * dictionary doesn't cost its whole capacity to clear after each small one
+     */
+    public void clear() {
+
+        if (size * 8 < slots.length) {
+
+            int mask = slots.length - 1;
+
+            for (int termID = 0; termID < size; termID++) {
+
+                int slot = hashes[termID] & mask;
+
+                while (slots[slot] != termID + 1)
+                    slot = (slot + 1) & mask;
+
+                slots[slot] = 0;
+            }
+
+        } else {
+            Arrays.fill(slots, 0);
+        }
+
+        Arrays.fill(terms, 0, size, null);
+        Arrays.fill(occurrences, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @param term A term
+     * @return The ID of the term, which is added to the dictionary with no occurrences if it's new
+     */
+    public int termID(String term) {
+
+        int hash = spread(term.hashCode());
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        // Probe until the term or an empty slot is found
+
+        while (slots[slot] != 0) {
+
+            int termID = slots[slot] - 1;
+
+            if (hashes[termID] == hash && terms[termID].equals(term)) return termID;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return add(term, hash, slot);
+    }
+
+    /**
+     * @param term A term
+     * @return The ID of the term, or -1 if it isn't in the dictionary
+     */
+    public int findTermID(String term) {
+
+        int hash = spread(term.hashCode());
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+
+            int termID = slots[slot] - 1;
+
+            if (hashes[termID] == hash && terms[termID].equals(term)) return termID;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Merge the occurrences of another dictionary into this one. Term IDs of the other dictionary aren't preserved
+     *
+     * @param other Another dictionary, whose occurrences may be reused by this one
+     */
+    public void merge(TermDictionary other) {
+
+        for (int otherTermID = 0; otherTermID < other.size; otherTermID++) {
+
+            int termID = termID(other.terms[otherTermID]);
+
+            if (occurrences[termID].getDocumentCount() == 0) occurrences[termID] = other.occurrences[otherTermID];
+            else occurrences[termID].merge(other.occurrences[otherTermID]);
+        }
+    }
+
+    /**
+     * @return The IDs of every term, sorted by the lexicographic order of the terms
+     */
+    public int[] sortedTermIDs() {
+
+        Integer[] termIDs = new Integer[size];
+
+        for (int termID = 0; termID < size; termID++)
+            termIDs[termID] = termID;
+
+        Arrays.sort(termIDs, Comparator.comparing(termID -> terms[termID]));
+
+        return Arrays.stream(termIDs).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param termID A term ID
+     * @return The term
+     */
+    public String getTerm(int termID) {
+        return terms[termID];
+    }
+
+    /**
+     * @param termID A term ID
+     * @return The term's occurrences
+     */
+    public Occurrences getOccurrences(int termID) {
+        return occurrences[termID];
+    }
+
+    /**
+     * @return Number of terms
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a new term to the dictionary
+     *
+     * @param term The term
+     * @param hash The term's spread hash
+     * @param slot The empty slot where the term's ID goes
+     * @return The ID assigned to the term
+     */
+    private int add(String term, int hash, int slot) {
+
+        int termID = size++;
+
+        if (termID == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            occurrences = Arrays.copyOf(occurrences, occurrences.length * 2);
+        }
+
+        terms[termID] = term;
+        hashes[termID] = hash;
+        occurrences[termID] = new Occurrences();
+        slots[slot] = termID + 1;
+
+        // Keep the load factor at most 1/2
+
+        if (size * 2 > slots.length) rehash(slots.length * 2);
+
+        return termID;
+    }
+
+    /**
+     * @param capacity The new number of slots. A power of two
+     */
+    private void rehash(int capacity) {
+
+        int[] newSlots = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int termID = 0; termID < size; termID++) {
+
+            int slot = hashes[termID] & mask;
+
+            while (newSlots[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            newSlots[slot] = termID + 1;
+        }
+
+        slots = newSlots;
+    }
+
+    /**
+     * @param hash A hash code
+     * @return The hash code with its high bits spread into the low ones, which are the ones used to choose slots
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
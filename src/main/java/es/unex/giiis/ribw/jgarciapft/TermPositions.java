@@ -0,0 +1,123 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.decodeSortedInts;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.readVarInt;
+
+/**
+ * Positions of a term within each document of its postings list. A position is the number of tokens of the document
+ * that come before the occurrence, whether they were indexed or not. The positions of each document are kept encoded,
+ * as varint deltas, and are only decoded when they are asked for, so documents that are never asked for cost nothing
+ * <p>
+ * It's a snapshot of the occurrences it was read from, only valid while they aren't modified
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see Occurrences#readPositions()
+ */
+public class TermPositions {
+
+    private final Occurrences occurrences; // The term's occurrences, which tell how many positions each document has
+    private final byte[][] blocks; // Encoded positions of each document. Null if they are read from the buffer
+    private final ByteBuffer buffer; // Encoded positions list as stored in an inverted file. Null if held in blocks
+    private final int[] blockOffsets; // Offset of the positions of each document within the buffer
+    private final int[] blockLengths; // Length in bytes of the positions of each document within the buffer
+
+    /**
+     * @param occurrences The term's occurrences
+     * @param blocks      The encoded positions of each document, parallel to the postings list
+     */
+    TermPositions(Occurrences occurrences, byte[][] blocks) {
+        this.occurrences = occurrences;
+        this.blocks = blocks;
+
+        buffer = null;
+        blockOffsets = null;
+        blockLengths = null;
+    }
+
+    /**
+     * @param occurrences The term's occurrences
+     * @param buffer      The encoded positions list, as stored in an inverted file. Only the length of each document's
+     *                    positions is read, to locate them
+     * @throws IOException If the positions list is malformed
+     */
+    TermPositions(Occurrences occurrences, ByteBuffer buffer) throws IOException {
+        this.occurrences = occurrences;
+        this.buffer = buffer;
+
+        blocks = null;
+        blockOffsets = new int[occurrences.getDocumentCount()];
+        blockLengths = new int[occurrences.getDocumentCount()];
+
+        ByteBuffer reader = buffer.duplicate();
+
+        try {
+            for (int i = 0; i < blockOffsets.length; i++) {
+                blockLengths[i] = readVarInt(reader);
+                blockOffsets[i] = reader.position();
+                reader.position(reader.position() + blockLengths[i]);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed positions list in binary inverted file");
+        }
+    }
+
+    /**
+     * @param index Position within the postings list
+     * @return The positions of the term within the document at that position, in increasing order
+     * @throws IllegalStateException If the encoded positions are malformed
+     */
+    public int[] getPositions(int index) {
+
+        ByteBuffer block = blocks != null ? ByteBuffer.wrap(blocks[index]) : buffer.duplicate().position(blockOffsets[index]);
+
+        try {
+            return decodeSortedInts(block, occurrences.getFrequency(index));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalStateException("Malformed positions list in binary inverted file");
+        }
+    }
+
+    /**
+     * @param index Position within the postings list
+     * @return The encoded positions of the term within the document at that position. It must not be modified
+     */
+    public byte[] getEncodedPositions(int index) {
+
+        if (blocks != null) return blocks[index];
+
+        byte[] block = new byte[blockLengths[index]];
+        buffer.duplicate().position(blockOffsets[index]).get(block);
+
+        return block;
+    }
+
+    /**
+     * Split an encoded positions list, as stored in an inverted file, into the encoded positions of each document
+     *
+     * @param buffer        The encoded positions list
+     * @param documentCount Number of documents of the postings list
+     * @return The encoded positions of each document
+     * @throws IOException If the positions list is malformed
+     */
+    static byte[][] splitBlocks(ByteBuffer buffer, int documentCount) throws IOException {
+
+        byte[][] blocks = new byte[documentCount][];
+        ByteBuffer reader = buffer.duplicate();
+
+        try {
+            for (int i = 0; i < documentCount; i++) {
+                blocks[i] = new byte[readVarInt(reader)];
+                reader.get(blocks[i]);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Malformed positions list in binary inverted file");
+        }
+
+        return blocks;
+    }
+
+}
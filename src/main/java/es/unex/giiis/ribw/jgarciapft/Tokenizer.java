@@ -0,0 +1,88 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+/**
+ * Breaks text held in a char buffer into tokens, which are the maximal runs of chars that aren't delimiters. It gives
+ * the same tokens as a {@link java.util.StringTokenizer} over the same delimiters, but tokens are emitted as spans of
+ * the buffer (offset and length) instead of as new strings, and delimiters are tested against a precomputed bitset
+ * instead of scanning the delimiters string for every char. It's immutable, so it's safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public final class Tokenizer {
+
+    private final long[] delimiters; // Bitset of delimiter chars. Chars beyond its end aren't delimiters
+
+    /**
+     * @param delimiters Chars that delimit tokens
+     */
+    public Tokenizer(String delimiters) {
+
+        char maxDelimiter = 0;
+
+        for (int i = 0; i < delimiters.length(); i++)
+            maxDelimiter = (char) Math.max(maxDelimiter, delimiters.charAt(i));
+
+        this.delimiters = new long[(maxDelimiter >> 6) + 1];
+
+        for (int i = 0; i < delimiters.length(); i++) {
+            char delimiter = delimiters.charAt(i);
+            this.delimiters[delimiter >> 6] |= 1L << delimiter;
+        }
+    }
+
+    /**
+     * Emit every token of a slice of a buffer in order of appearance
+     *
+     * @param buffer    The buffer
+     * @param offset    Offset of the slice within the buffer
+     * @param length    Length of the slice
+     * @param tokenSink Receives each token's span
+     */
+    public void tokenize(char[] buffer, int offset, int length, TokenSink tokenSink) {
+
+        int end = offset + length;
+        int position = offset;
+
+        while (position < end) {
+
+            // Skip delimiters
+
+            while (position < end && isDelimiter(buffer[position]))
+                position++;
+
+            // Consume the token
+
+            int tokenStart = position;
+
+            while (position < end && !isDelimiter(buffer[position]))
+                position++;
+
+            if (position > tokenStart) tokenSink.accept(buffer, tokenStart, position - tokenStart);
+        }
+    }
+
+    /**
+     * @param c A char
+     * @return If the char delimits tokens
+     */
+    public boolean isDelimiter(char c) {
+        int word = c >> 6;
+        return word < delimiters.length && (delimiters[word] & (1L << c)) != 0;
+    }
+
+    /**
+     * Receives the tokens found by a tokenizer. Spans are only valid during the call, as the buffer may be reused
+     */
+    @FunctionalInterface
+    public interface TokenSink {
+
+        /**
+         * @param buffer The buffer holding the token
+         * @param offset Offset of the token within the buffer
+         * @param length Length of the token. Always greater than zero
+         */
+        void accept(char[] buffer, int offset, int length);
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import es.unex.giiis.ribw.jgarciapft.utils.NormalizationUtils;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Arrays;
+
+/**
+ * SAX content handler that normalizes and tokenizes the text of a document as it's extracted, instead of collecting the
+ * whole text first. Only the token being built is buffered, so the memory taken per document doesn't depend on its
+ * size. The tokens are the same as normalizing the whole text with
+ * {@link NormalizationUtils#normalizeStringNFD(String)} and then tokenizing it, including the trimming of the text's
+ * ends. Wrap it in a {@link org.apache.tika.sax.BodyContentHandler} to receive only the body of an XHTML document
+ * <p>
+ * One handler can tokenize several documents one after another, but it isn't safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class TokenizingContentHandler extends DefaultHandler {
+
+    private final Tokenizer tokenizer; // Tells which chars delimit tokens
+    private final Tokenizer.TokenSink tokenSink; // Receives each token
+
+    private char[] token; // Normalized chars of the token being built
+    private int tokenLength;
+    /* Chars up to a space that arrived after the last visible char. They're dropped if the text ends before another
+    visible char arrives, as trimming the text would */
+    private char[] pendingWhitespace;
+    private int pendingWhitespaceLength;
+    private boolean textStarted; // If a visible char has arrived. Whitespace before it is trimmed
+    private char pendingHighSurrogate; // High surrogate waiting for its low surrogate, or zero
+
+    /**
+     * @param tokenizer Tells which chars delimit tokens
+     * @param tokenSink Receives each token
+     */
+    public TokenizingContentHandler(Tokenizer tokenizer, Tokenizer.TokenSink tokenSink) {
+        this.tokenizer = tokenizer;
+        this.tokenSink = tokenSink;
+
+        token = new char[64];
+        pendingWhitespace = new char[16];
+        reset();
+    }
+
+    /**
+     * Discard any text received so far and start a new one
+     */
+    public void reset() {
+        tokenLength = 0;
+        pendingWhitespaceLength = 0;
+        textStarted = false;
+        pendingHighSurrogate = 0;
+    }
+
+    /**
+     * End the text, trimming its trailing whitespace and emitting its last token. Then the handler is ready for a new
+     * text
+     */
+    public void finish() {
+
+        // An unpaired high surrogate is a visible char, although the normalization removes it
+
+        if (pendingHighSurrogate != 0) acceptVisible(-1);
+
+        emitToken();
+        reset();
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        feed(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        feed(ch, start, length);
+    }
+
+    /**
+     * Normalize and tokenize the next chars of the text
+     *
+     * @param chars  Buffer holding the chars
+     * @param offset Offset of the chars within the buffer
+     * @param length Number of chars
+     */
+    public void feed(char[] chars, int offset, int length) {
+
+        for (int i = offset; i < offset + length; i++) {
+
+            char c = chars[i];
+
+            // Pair surrogates, which may arrive in different calls
+
+            if (pendingHighSurrogate != 0) {
+
+                char highSurrogate = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+
+                if (Character.isLowSurrogate(c)) {
+                    acceptVisible(NormalizationUtils.foldCodePoint(Character.toCodePoint(highSurrogate, c)));
+                    continue;
+                }
+
+                acceptVisible(-1); // Unpaired, so the normalization removes it
+            }
+
+            if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+            } else if (c <= ' ') {
+
+                // Whitespace, as trimmed by String.trim(). Hold it until it's known not to be trailing
+
+                if (textStarted) {
+                    if (pendingWhitespaceLength == pendingWhitespace.length)
+                        pendingWhitespace = Arrays.copyOf(pendingWhitespace, pendingWhitespace.length * 2);
+
+                    pendingWhitespace[pendingWhitespaceLength++] = c;
+                }
+
+            } else {
+                acceptVisible(NormalizationUtils.foldCodePoint(c));
+            }
+        }
+    }
+
+    /**
+     * Accept a visible char, that is, one that isn't trimmed. The whitespace held before it isn't trailing, so it's
+     * accepted first
+     *
+     * @param folded The normalized char or -1 if the normalization removes it
+     */
+    private void acceptVisible(int folded) {
+
+        textStarted = true;
+
+        for (int i = 0; i < pendingWhitespaceLength; i++)
+            accept(pendingWhitespace[i]);
+
+        pendingWhitespaceLength = 0;
+
+        if (folded != -1) accept((char) folded);
+    }
+
+    /**
+     * @param c A normalized char, which either ends the current token or is part of it
+     */
+    private void accept(char c) {
+
+        if (tokenizer.isDelimiter(c)) {
+            emitToken();
+        } else {
+            if (tokenLength == token.length) token = Arrays.copyOf(token, token.length * 2);
+
+            token[tokenLength++] = c;
+        }
+    }
+
+    /**
+     * Emit the current token, if there is one
+     */
+    private void emitToken() {
+
+        if (tokenLength > 0) tokenSink.accept(token, 0, tokenLength);
+
+        tokenLength = 0;
+    }
+
+}
@@ -0,0 +1,217 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import es.unex.giiis.ribw.jgarciapft.utils.ThreadUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_PREFETCHED_BYTES;
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_PREFETCHED_DOCUMENT_BYTES;
+
+/**
+ * Alternative indexing stage of the crawl pipeline that runs the extraction of each document on its own virtual thread.
+ * Reading a document from the filesystem only blocks its own virtual thread, so many slow reads can be waited on at
+ * once. A semaphore limits how many documents are parsed and indexed at the same time, as that part is CPU bound.
+ * Each parse permit is bound to an indexer, so partial indexes are still never shared between threads
+ * <p>
+ * Documents are read into memory before they're parsed while the bytes held by every prefetched document fit in a
+ * shared budget. Otherwise they're read as they are parsed, so the documents in flight can't exhaust the heap
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class VirtualThreadDispatcher {
+
+    private final ExecutorService executor; // Starts a new virtual thread for each document
+    private final int maxInFlightDocuments; // Maximum number of dispatched documents not yet indexed
+    private final Semaphore inFlightPermits; // Bounds the number of dispatched documents not yet indexed
+    private final Semaphore parsePermits; // Bounds the number of documents parsed at the same time
+    private final Semaphore prefetchBudget; // Bytes that can still be read into memory ahead of parsing
+    private final Queue<DocumentIndexer> idleIndexers; // Indexers not bound to any parse permit at the moment
+
+    // Statistics
+
+    private final AtomicInteger inFlightDocuments; // Documents dispatched but not yet indexed
+    private final AtomicInteger peakInFlightDocuments; // Maximum number of documents in flight at any given time
+    private final AtomicInteger dispatchedDocuments; // Total number of dispatched documents
+    private final AtomicLong extractionNanos; // Time spent reading and indexing documents, added up over all documents
+    private final long startNanos; // When this stage started
+
+    /**
+     * @param indexers             Indexers used to parse and index documents. There will be as many concurrent
+     *                             parses as indexers
+     * @param maxInFlightDocuments Maximum number of dispatched documents not yet indexed
+     */
+    public VirtualThreadDispatcher(DocumentIndexer[] indexers, int maxInFlightDocuments) {
+
+        executor = ThreadUtils.newVirtualThreadPerTaskExecutor();
+        this.maxInFlightDocuments = maxInFlightDocuments;
+        inFlightPermits = new Semaphore(maxInFlightDocuments);
+        parsePermits = new Semaphore(indexers.length);
+        prefetchBudget = new Semaphore(MAX_PREFETCHED_BYTES);
+        idleIndexers = new ConcurrentLinkedQueue<>();
+
+        for (DocumentIndexer indexer : indexers)
+            idleIndexers.add(indexer);
+
+        inFlightDocuments = new AtomicInteger();
+        peakInFlightDocuments = new AtomicInteger();
+        dispatchedDocuments = new AtomicInteger();
+        extractionNanos = new AtomicLong();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Dispatch a document to its own virtual thread. Blocks while the maximum number of documents are in flight
+     *
+     * @param document   The document to be indexed
+     * @param documentID The identifier associated with the document
+     * @throws InterruptedException If interrupted while waiting for a document to leave the flight
+     */
+    public void dispatch(File document, int documentID) throws InterruptedException {
+
+        inFlightPermits.acquire();
+
+        peakInFlightDocuments.accumulateAndGet(inFlightDocuments.incrementAndGet(), Math::max);
+        dispatchedDocuments.incrementAndGet();
+
+        executor.execute(() -> {
+            try {
+                extract(document, documentID);
+            } finally {
+                inFlightDocuments.decrementAndGet();
+                inFlightPermits.release();
+            }
+        });
+    }
+
+    /**
+     * Wait until every dispatched document is indexed
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+
+        // Every document has left the flight once all the in flight permits are available again
+
+        inFlightPermits.acquire(maxInFlightDocuments);
+        inFlightPermits.release(maxInFlightDocuments);
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Abort the stage, interrupting every document in flight
+     */
+    public void abort() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Print the statistics of this stage: documents dispatched, the peak number of documents in flight and the
+     * wall-clock time saved compared with reading and indexing every document one after another
+     */
+    public void printReport() {
+
+        long wallClockMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long sequentialMillis = TimeUnit.NANOSECONDS.toMillis(extractionNanos.get());
+
+        System.out.printf("[INFO] %s extraction => %d document(s), %d peak in flight, %d ms wall-clock, " +
+                        "%d ms sequential, %d ms saved\n",
+                ThreadUtils.areVirtualThreadsSupported() ? "Virtual thread" : "Thread per document (virtual threads unavailable)",
+                dispatchedDocuments.get(), peakInFlightDocuments.get(), wallClockMillis, sequentialMillis,
+                Math.max(0, sequentialMillis - wallClockMillis));
+    }
+
+    /**
+     * Body of the virtual thread of a document. The document is read into memory without holding a parse permit, then
+     * it's parsed and indexed while holding one. Documents too big to be read into memory, or that don't fit in the
+     * prefetch budget left, are read as they are parsed
+     *
+     * @param document   The document to be indexed
+     * @param documentID The identifier associated with the document
+     */
+    private void extract(File document, int documentID) {
+
+        int prefetchedBytes = reservePrefetch(document);
+
+        try {
+
+            // Read the document. Only this virtual thread blocks while waiting for the filesystem
+
+            long readStartNanos = System.nanoTime();
+            DocumentIndexer.ContentSource content = prefetchedBytes >= 0 ? prefetch(document) :
+                    () -> new FileInputStream(document);
+            extractionNanos.addAndGet(System.nanoTime() - readStartNanos);
+
+            // Parse and index the document with an idle indexer
+
+            parsePermits.acquire();
+            DocumentIndexer indexer = idleIndexers.poll(); // There's always an idle indexer per available permit
+
+            try {
+                long parseStartNanos = System.nanoTime();
+                indexer.index(document, content, documentID);
+                extractionNanos.addAndGet(System.nanoTime() - parseStartNanos);
+            } finally {
+                idleIndexers.add(indexer);
+                parsePermits.release();
+            }
+
+        } catch (NoSuchFileException e) {
+            System.err.println("[ERROR] The file (" + document + ") disappeared before it could be processed");
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) { // A single faulty document shouldn't stop the crawl
+            System.err.println("[ERROR] Unexpected error indexing (" + document + ")");
+            e.printStackTrace();
+        } finally {
+            if (prefetchedBytes > 0) prefetchBudget.release(prefetchedBytes);
+        }
+    }
+
+    /**
+     * Reserve the prefetch budget needed to read a document into memory, without waiting for it
+     *
+     * @param document The document to be read
+     * @return The bytes reserved, or -1 if the document is too big to be prefetched or doesn't fit in the budget left
+     * @see Config#MAX_PREFETCHED_DOCUMENT_BYTES
+     * @see Config#MAX_PREFETCHED_BYTES
+     */
+    private int reservePrefetch(File document) {
+
+        long length = document.length();
+
+        if (length > MAX_PREFETCHED_DOCUMENT_BYTES || !prefetchBudget.tryAcquire((int) length)) return -1;
+
+        return (int) length;
+    }
+
+    /**
+     * Read a document's content into memory
+     *
+     * @param document The document to be read
+     * @return The source of the document's content, in memory
+     * @throws IOException If the document can't be read
+     */
+    private DocumentIndexer.ContentSource prefetch(File document) throws IOException {
+
+        byte[] bytes = Files.readAllBytes(document.toPath());
+
+        return () -> new ByteArrayInputStream(bytes);
+    }
+
+}
@@ -0,0 +1,177 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Expands wildcard patterns, such as conex*, *cion or d?to, into the indexed terms they match. It holds two term
+ * automata: one of the terms and one of the reversed terms. Patterns whose literal prefix is at least as long as their
+ * literal suffix are matched against the first one, the rest are reversed and matched against the second one, so
+ * suffix patterns only visit the terms ending with their suffix instead of every term
+ * <p>
+ * The terms automaton also finds the terms close to a misspelled one, walking only the branches that may still be
+ * within the edit distance
+ * <p>
+ * It's immutable, so it's safe for concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see TermAutomaton
+ */
+public final class WildcardIndex {
+
+    private final TermAutomaton terms; // Accepts the terms
+    private final TermAutomaton reversedTerms; // Accepts the reversed terms
+
+    private WildcardIndex(TermAutomaton terms, TermAutomaton reversedTerms) {
+        this.terms = terms;
+        this.reversedTerms = reversedTerms;
+    }
+
+    /**
+     * @param terms The indexed terms, without repetitions and in any order
+     * @return The wildcard index of the terms
+     */
+    public static WildcardIndex build(Collection<String> terms) {
+
+        String[] sortedTerms = terms.toArray(new String[0]);
+        String[] sortedReversedTerms = new String[sortedTerms.length];
+
+        for (int i = 0; i < sortedTerms.length; i++)
+            sortedReversedTerms[i] = reverse(sortedTerms[i]);
+
+        Arrays.sort(sortedTerms);
+        Arrays.sort(sortedReversedTerms);
+
+        return new WildcardIndex(TermAutomaton.build(Arrays.asList(sortedTerms)),
+                TermAutomaton.build(Arrays.asList(sortedReversedTerms)));
+    }
+
+    /**
+     * Decode a wildcard index written by {@link WildcardIndex#writeTo(OutputStream)}. The automata are used in place,
+     * so the buffer must stay unmodified
+     *
+     * @param encoded The encoded wildcard index
+     * @return The wildcard index
+     * @throws IOException If the wildcard index is malformed
+     */
+    public static WildcardIndex decode(ByteBuffer encoded) throws IOException {
+
+        ByteBuffer reader = encoded.duplicate();
+
+        if (reader.remaining() < Integer.BYTES) throw new IOException("Malformed wildcard index");
+
+        int termsLength = reader.getInt();
+
+        if (termsLength < 0 || termsLength > reader.remaining()) throw new IOException("Malformed wildcard index");
+
+        ByteBuffer terms = reader.slice().limit(termsLength);
+        ByteBuffer reversedTerms = reader.position(reader.position() + termsLength).slice();
+
+        return new WildcardIndex(new TermAutomaton(terms), new TermAutomaton(reversedTerms));
+    }
+
+    /**
+     * Write the wildcard index: the length in bytes of the terms automaton, as a 4-byte int, followed by the terms
+     * automaton and the reversed terms automaton
+     *
+     * @param out Where to write the wildcard index
+     * @throws IOException If it can't be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+
+        ByteBuffer encodedTerms = terms.getEncoded();
+        ByteBuffer encodedReversedTerms = reversedTerms.getEncoded();
+        DataOutputStream dataOut = new DataOutputStream(out);
+
+        dataOut.writeInt(encodedTerms.remaining());
+        writeBuffer(dataOut, encodedTerms);
+        writeBuffer(dataOut, encodedReversedTerms);
+        dataOut.flush();
+    }
+
+    /**
+     * @param pattern  A normalized pattern, made of literal chars and the wildcards {@link TermAutomaton#ANY_CHARS} and
+     *                 {@link TermAutomaton#ANY_CHAR}
+     * @param maxTerms Maximum number of terms the pattern may expand to
+     * @return The terms matching the pattern, in increasing order
+     * @throws IllegalArgumentException If the pattern matches more terms than the maximum or is too long
+     */
+    public List<String> expand(String pattern, int maxTerms) {
+
+        // Match against the automaton that follows the longest literal part of the pattern directly
+
+        int literalPrefixLength = 0;
+
+        while (literalPrefixLength < pattern.length() && !TermAutomaton.isWildcard(pattern.charAt(literalPrefixLength)))
+            literalPrefixLength++;
+
+        int literalSuffixLength = 0;
+
+        while (literalSuffixLength < pattern.length() &&
+                !TermAutomaton.isWildcard(pattern.charAt(pattern.length() - 1 - literalSuffixLength)))
+            literalSuffixLength++;
+
+        List<String> expansion = new ArrayList<>();
+        boolean complete;
+
+        if (literalSuffixLength > literalPrefixLength) {
+            complete = reversedTerms.match(reverse(pattern), maxTerms, term -> expansion.add(reverse(term)));
+            Collections.sort(expansion);
+        } else {
+            complete = terms.match(pattern, maxTerms, expansion::add);
+        }
+
+        if (!complete)
+            throw new IllegalArgumentException(String.format("'%s' matches more than %d terms. Make it more specific",
+                    pattern, maxTerms));
+
+        return expansion;
+    }
+
+    /**
+     * Find the indexed terms within some edit distance of a term
+     *
+     * @param term        A normalized term
+     * @param maxDistance Maximum edit distance
+     * @param maxTerms    Maximum number of terms found
+     * @param terms       Receives each term found, in increasing order, along with its edit distance to the term
+     * @return If every term was found, false if there are more than the maximum
+     * @throws IllegalArgumentException If the term is too long
+     * @see TermAutomaton#matchFuzzy(String, int, int, ObjIntConsumer)
+     */
+    public boolean findSimilar(String term, int maxDistance, int maxTerms, ObjIntConsumer<String> terms) {
+        return this.terms.matchFuzzy(term, maxDistance, maxTerms, terms);
+    }
+
+    /**
+     * @param term A term or a pattern
+     * @return If it has any wildcard
+     */
+    public static boolean isPattern(String term) {
+
+        for (int i = 0; i < term.length(); i++)
+            if (TermAutomaton.isWildcard(term.charAt(i))) return true;
+
+        return false;
+    }
+
+    private static String reverse(String term) {
+        return new StringBuilder(term).reverse().toString();
+    }
+
+    private static void writeBuffer(OutputStream out, ByteBuffer buffer) throws IOException {
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,99 @@
+package es.unex.giiis.ribw.jgarciapft.extraction;
+
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.DETECTION_SIGNATURE_BYTES;
+
+/**
+ * Detects the media type of documents from their first bytes (magic bytes) and their names with a Tika detector. Files
+ * with the same extension and the same signature (leading bytes) are almost always of the same type, so the detected
+ * type is cached by extension and signature and the detector only runs for new combinations. It's safe for concurrent
+ * use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.Config#DETECTION_SIGNATURE_BYTES
+ */
+public class ContentTypeDetector {
+
+    private final Detector detector; // Tika detector
+    private final Map<String, MediaType> detectedTypes; // Detected types by extension and signature
+
+    private final AtomicLong detections = new AtomicLong(); // Number of documents whose type was asked for
+    private final AtomicLong cacheHits = new AtomicLong(); // Number of documents whose type was already cached
+
+    /**
+     * @param detector Tika detector
+     */
+    public ContentTypeDetector(Detector detector) {
+        this.detector = detector;
+
+        detectedTypes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param prefix    Buffer holding the first bytes of a document
+     * @param length    Number of bytes held in the buffer. Less than the buffer's length if the document is shorter
+     * @param fileName  Name of the document's file
+     * @param extension The file's extension in lowercase
+     * @return The document's media type. application/octet-stream if it can't be told
+     * @throws IOException If the detector fails
+     */
+    public MediaType detect(byte[] prefix, int length, String fileName, String extension) throws IOException {
+
+        detections.incrementAndGet();
+
+        // Look up the cache by extension and signature
+
+        String key = cacheKey(prefix, Math.min(length, DETECTION_SIGNATURE_BYTES), extension);
+        MediaType type = detectedTypes.get(key);
+
+        if (type != null) {
+            cacheHits.incrementAndGet();
+            return type;
+        }
+
+        // Run the detector over the document's first bytes and its name
+
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+
+        type = detector.detect(new ByteArrayInputStream(prefix, 0, length), metadata);
+        detectedTypes.putIfAbsent(key, type);
+
+        return type;
+    }
+
+    public long getDetections() {
+        return detections.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @param signature Buffer holding the signature
+     * @param length    Length of the signature
+     * @param extension File extension
+     * @return The key of the extension and signature in the cache
+     */
+    private static String cacheKey(byte[] signature, int length, String extension) {
+
+        StringBuilder key = new StringBuilder(extension.length() + 1 + 2 * length);
+        key.append(extension).append('/');
+
+        for (int i = 0; i < length; i++)
+            key.append(Character.forDigit((signature[i] >> 4) & 0xF, 16)).append(Character.forDigit(signature[i] & 0xF, 16));
+
+        return key.toString();
+    }
+
+}
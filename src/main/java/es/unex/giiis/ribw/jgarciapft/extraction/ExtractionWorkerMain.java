@@ -0,0 +1,166 @@
+package es.unex.giiis.ribw.jgarciapft.extraction;
+
+import es.unex.giiis.ribw.jgarciapft.utils.FileExtensionUtils;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.*;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.TIKA_PARSERS;
+import static es.unex.giiis.ribw.jgarciapft.extraction.ExtractionWorkerPool.*;
+
+/**
+ * Entry point of an extraction worker, a child JVM spawned by an {@link ExtractionWorkerPool}. The worker reads the
+ * absolute paths of the documents to extract from its standard input, one after another, and streams back through its
+ * standard output the text extracted from each one as a sequence of frames that ends in either an end or an error
+ * frame. The worker exits once its standard input is closed
+ * <p>
+ * Anything the parsers print to the standard output is redirected to the standard error, so it can't corrupt the
+ * frames
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class ExtractionWorkerMain {
+
+    public static void main(String[] args) {
+
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+
+        System.setOut(System.err);
+
+        TikaExtractor extractor = new TikaExtractor(new TikaParserRegistry(TIKA_PARSERS));
+        TextFrameWriter textFrameWriter = new TextFrameWriter(frames);
+
+        // Initialise the media type detection with an empty document before announcing the worker is ready, so it
+        // doesn't count against the timeout of the first document
+
+        try {
+            extractor.extract("", "", new ByteArrayInputStream(new byte[0]), new DefaultHandler(), message -> {
+            });
+        } catch (Exception e) {
+            // Ignored, the first document will fail the same way
+        }
+
+        try {
+
+            frames.writeByte(READY_FRAME);
+            frames.flush();
+
+            while (true) {
+
+                String path;
+
+                try {
+                    path = requests.readUTF();
+                } catch (EOFException e) { // The pool closed the worker
+                    return;
+                }
+
+                File document = new File(path);
+
+                try (InputStream content = new FileInputStream(document)) {
+
+                    extractor.extract(document.getName(), FileExtensionUtils.extractExtension(document.getName()),
+                            content, textFrameWriter, message -> writeInfoFrame(frames, message));
+                    textFrameWriter.flush();
+                    frames.writeByte(END_FRAME);
+
+                } catch (Exception e) { // Any failure of the parsers only fails the current document
+                    textFrameWriter.discard();
+                    frames.writeByte(ERROR_FRAME);
+                    String message = e.getMessage() != null ? e.getMessage() : e.toString();
+                    frames.writeUTF(message.length() > MAX_TEXT_FRAME_CHARS ?
+                            message.substring(0, MAX_TEXT_FRAME_CHARS) : message);
+                }
+
+                frames.flush();
+            }
+        } catch (IOException e) { // The pool is gone, so there is no one to report to
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write an informative message frame. Failures are left for the next write, which will fail too
+     *
+     * @param frames  The frames' stream
+     * @param message The message
+     */
+    private static void writeInfoFrame(DataOutputStream frames, String message) {
+        try {
+            frames.writeByte(INFO_FRAME);
+            frames.writeUTF(message);
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+
+    /**
+     * SAX content handler that gathers the extracted text into text frames of a bounded size
+     */
+    private static class TextFrameWriter extends DefaultHandler {
+
+        private final DataOutputStream frames; // Where the text frames are written
+        private final char[] text; // Text of the next frame
+        private int textLength;
+
+        private TextFrameWriter(DataOutputStream frames) {
+            this.frames = frames;
+
+            text = new char[MAX_TEXT_FRAME_CHARS];
+            textLength = 0;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+
+            while (length > 0) {
+
+                int chunk = Math.min(length, text.length - textLength);
+
+                System.arraycopy(ch, start, text, textLength, chunk);
+                textLength += chunk;
+                start += chunk;
+                length -= chunk;
+
+                if (textLength == text.length) {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            characters(ch, start, length);
+        }
+
+        /**
+         * Write the gathered text as a frame, if there is any
+         *
+         * @throws IOException If the frame can't be written
+         */
+        private void flush() throws IOException {
+
+            if (textLength > 0) {
+                frames.writeByte(TEXT_FRAME);
+                frames.writeUTF(new String(text, 0, textLength));
+            }
+
+            textLength = 0;
+        }
+
+        /**
+         * Drop the gathered text
+         */
+        private void discard() {
+            textLength = 0;
+        }
+
+    }
+
+}
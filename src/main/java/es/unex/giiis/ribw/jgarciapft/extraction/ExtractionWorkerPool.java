@@ -0,0 +1,349 @@
+package es.unex.giiis.ribw.jgarciapft.extraction;
+
+import org.apache.tika.exception.TikaException;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.*;
+
+/**
+ * Pool of long-lived child JVMs (extraction workers) that extract the text of structured or semi-structured documents
+ * with Tika, so a pathological document can't hang the crawl nor exhaust its heap. Each worker reads the documents by
+ * itself from the filesystem and streams the extracted text back over a pipe, as it's extracted. The heap of each
+ * worker is bounded, and each document is given a wall-clock timeout and a budget of extracted text. A worker that
+ * exceeds either budget, or that crashes, is killed and respawned before its next document
+ * <p>
+ * Workers are spawned when they're first needed, so crawls without structured documents spawn none. The pool is safe
+ * for concurrent use, each concurrent extraction borrows its own worker
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see ExtractionWorkerMain
+ */
+public class ExtractionWorkerPool implements AutoCloseable {
+
+    // Types of the frames streamed back by the workers. Each frame starts with its type
+
+    static final int TEXT_FRAME = 1; // Followed by a chunk of the extracted text
+    static final int INFO_FRAME = 2; // Followed by an informative message about the extraction
+    static final int END_FRAME = 3; // The extraction ended
+    static final int ERROR_FRAME = 4; // Followed by the failure's message. The extraction failed
+    static final int READY_FRAME = 5; // The worker started and waits for documents
+
+    // Maximum chars per text frame. Each one takes at most 3 bytes of modified UTF-8, below the limit of 64 KiB
+    static final int MAX_TEXT_FRAME_CHARS = 16 * 1024;
+
+    private final List<Worker> workers; // Every worker, idle or not
+    private final BlockingQueue<Worker> idleWorkers; // Workers waiting for a document
+    private final ScheduledExecutorService watchdog; // Kills the workers whose extraction times out
+    private final List<String> workerCommand; // Command line that spawns a worker
+    private final long timeoutMillis; // Wall-clock time given to each extraction
+    private final long maxTextBytes; // Maximum size of the text extracted from each document
+    private volatile boolean closed;
+
+    // Metrics
+
+    private final AtomicLong extractions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong crashes = new AtomicLong();
+    private final AtomicLong respawns = new AtomicLong();
+
+    /**
+     * Create a pool whose workers have the default budgets
+     *
+     * @param workerCount Number of workers
+     * @see es.unex.giiis.ribw.jgarciapft.Config#EXTRACTION_TIMEOUT_MILLIS
+     * @see es.unex.giiis.ribw.jgarciapft.Config#EXTRACTION_MAX_TEXT_BYTES
+     * @see es.unex.giiis.ribw.jgarciapft.Config#EXTRACTION_WORKER_MAX_HEAP
+     */
+    public ExtractionWorkerPool(int workerCount) {
+        this(workerCount, EXTRACTION_TIMEOUT_MILLIS, EXTRACTION_MAX_TEXT_BYTES, EXTRACTION_WORKER_MAX_HEAP);
+    }
+
+    /**
+     * @param workerCount   Number of workers
+     * @param timeoutMillis Wall-clock time given to each extraction
+     * @param maxTextBytes  Maximum size of the text extracted from each document, 2 bytes per char. Any further text is
+     *                      dropped
+     * @param maxHeap       Maximum heap size of each worker, as given to the -Xmx option
+     */
+    public ExtractionWorkerPool(int workerCount, long timeoutMillis, long maxTextBytes, String maxHeap) {
+
+        if (workerCount < 1) throw new IllegalArgumentException("At least one extraction worker is needed");
+
+        this.timeoutMillis = timeoutMillis;
+        this.maxTextBytes = maxTextBytes;
+
+        // Workers run the same classpath as this JVM. They exit as soon as they run out of heap, instead of limping on
+
+        workerCommand = Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + maxHeap,
+                "-XX:+ExitOnOutOfMemoryError",
+                "-cp", System.getProperty("java.class.path"),
+                ExtractionWorkerMain.class.getName());
+
+        workers = new ArrayList<>(workerCount);
+        idleWorkers = new ArrayBlockingQueue<>(workerCount);
+
+        for (int i = 0; i < workerCount; i++) {
+            Worker worker = new Worker();
+            workers.add(worker);
+            idleWorkers.add(worker);
+        }
+
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "extraction-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Extract the body text of a document in a worker. Blocks until a worker is idle
+     *
+     * @param document The document. It's read by the worker from the filesystem
+     * @param handler  Receives the body text as it's extracted
+     * @param infoLog  Receives informative messages about the extraction, such as the chosen parser
+     * @throws IOException   If the pool is closed or the calling thread is interrupted while waiting for a worker
+     * @throws TikaException If the document can't be parsed, or its extraction timed out or crashed the worker
+     * @throws SAXException  If the handler fails
+     */
+    public void extract(File document, ContentHandler handler, Consumer<String> infoLog)
+            throws IOException, TikaException, SAXException {
+
+        if (closed) throw new IOException("The extraction worker pool is closed");
+
+        Worker worker;
+
+        try {
+            worker = idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an extraction worker");
+        }
+
+        try {
+            worker.extract(document, handler, infoLog);
+        } finally {
+            idleWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Print the extraction metrics
+     */
+    public void printReport() {
+        System.out.printf("[INFO] Extraction workers => %d document(s), %d timeout(s), %d over budget, %d crash(es), " +
+                        "%d respawn(s)\n", extractions.get(), timeouts.get(), overBudget.get(), crashes.get(),
+                respawns.get());
+    }
+
+    /**
+     * Stop every worker. Idle workers are asked to exit, busy ones are killed
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+        watchdog.shutdownNow();
+
+        for (Worker worker : workers)
+            worker.stop();
+    }
+
+    /**
+     * A child JVM running {@link ExtractionWorkerMain}, along with the pipes to talk to it
+     */
+    private class Worker {
+
+        private Process process; // Null until it's first needed
+        private DataOutputStream requests; // Paths of the documents to extract
+        private DataInputStream frames; // Frames streamed back
+
+        /**
+         * Extract a document, spawning the worker's JVM first if it isn't running. The JVM is killed unless the
+         * extraction ends in either an end or an error frame, so the next extraction never reads stale frames
+         */
+        private void extract(File document, ContentHandler handler, Consumer<String> infoLog)
+                throws IOException, TikaException, SAXException {
+
+            ensureRunning();
+            extractions.incrementAndGet();
+
+            // Kill the worker once the timeout elapses, which makes any pending read fail
+
+            Process timedProcess = process;
+            AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+                timedOut.set(true);
+                timedProcess.destroyForcibly();
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+            boolean completed = false;
+
+            try {
+
+                requests.writeUTF(document.getAbsolutePath());
+                requests.flush();
+
+                long textBytes = 0;
+
+                while (true) {
+
+                    int frameType = frames.readUnsignedByte();
+
+                    if (frameType == TEXT_FRAME) {
+
+                        char[] text = frames.readUTF().toCharArray();
+                        textBytes += 2L * text.length;
+
+                        if (textBytes > maxTextBytes) {
+
+                            // Keep the text within the budget and drop the rest, along with the worker
+
+                            handler.characters(text, 0, (int) (text.length - (textBytes - maxTextBytes + 1) / 2));
+                            overBudget.incrementAndGet();
+                            System.err.printf("[WARNING] The text extracted from %s exceeds %d bytes. Truncating it\n",
+                                    document, maxTextBytes);
+                            return;
+                        }
+
+                        handler.characters(text, 0, text.length);
+
+                    } else if (frameType == INFO_FRAME) {
+                        infoLog.accept(frames.readUTF());
+                    } else if (frameType == END_FRAME) {
+                        completed = true;
+                        return;
+                    } else if (frameType == ERROR_FRAME) {
+                        String message = frames.readUTF();
+                        completed = true;
+                        throw new TikaException(message);
+                    } else {
+                        throw new IOException("Unknown frame type " + frameType);
+                    }
+                }
+
+            } catch (IOException e) {
+
+                kill();
+
+                if (timedOut.get()) {
+                    timeouts.incrementAndGet();
+                    throw new TikaException(String.format("The extraction timed out after %d ms", timeoutMillis));
+                }
+
+                crashes.incrementAndGet();
+                throw new TikaException(String.format("The extraction worker crashed (%s)", describeExit(e)));
+
+            } finally {
+                deadline.cancel(false);
+                if (!completed) kill();
+            }
+        }
+
+        /**
+         * Spawn the worker's JVM if it isn't running, and wait for it to start. The JVM's startup is given its own
+         * timeout, so it doesn't count against the timeout of the first document
+         *
+         * @see es.unex.giiis.ribw.jgarciapft.Config#EXTRACTION_WORKER_STARTUP_TIMEOUT_MILLIS
+         *
+         * @throws IOException   If the JVM can't be spawned
+         * @throws TikaException If the JVM doesn't start in time or crashes while starting
+         */
+        private void ensureRunning() throws IOException, TikaException {
+
+            if (process != null && process.isAlive()) return;
+
+            if (process != null) respawns.incrementAndGet();
+
+            Process startingProcess = new ProcessBuilder(workerCommand)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            process = startingProcess;
+            requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            frames = new DataInputStream(new BufferedInputStream(process.getInputStream(), 64 * 1024));
+
+            AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+                timedOut.set(true);
+                startingProcess.destroyForcibly();
+            }, EXTRACTION_WORKER_STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+            try {
+                int frameType = frames.readUnsignedByte();
+
+                if (frameType != READY_FRAME) throw new IOException("Unknown frame type " + frameType);
+            } catch (IOException e) {
+                kill();
+                crashes.incrementAndGet();
+
+                if (timedOut.get())
+                    throw new TikaException(String.format("The extraction worker didn't start within %d ms",
+                            EXTRACTION_WORKER_STARTUP_TIMEOUT_MILLIS));
+
+                throw new TikaException(String.format("The extraction worker crashed while starting (%s)",
+                        describeExit(e)));
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+
+        /**
+         * @param e The failure that revealed the JVM is gone
+         * @return How the worker's JVM exited
+         */
+        private String describeExit(IOException e) {
+            return process.isAlive() ? String.valueOf(e) : "exit code " + process.exitValue();
+        }
+
+        /**
+         * Kill the worker's JVM and wait for it to exit. It's respawned before the next extraction
+         */
+        private void kill() {
+
+            if (process == null) return;
+
+            process.destroyForcibly();
+
+            try {
+                process.waitFor(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Ask the worker's JVM to exit by closing its requests pipe. It's killed if it doesn't exit shortly
+         */
+        private void stop() {
+
+            if (process == null) return;
+
+            try {
+                requests.close();
+
+                if (!process.waitFor(5, TimeUnit.SECONDS)) kill();
+            } catch (IOException e) {
+                kill();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                kill();
+            }
+        }
+
+    }
+
+}
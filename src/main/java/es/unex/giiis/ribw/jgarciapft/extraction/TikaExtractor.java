@@ -0,0 +1,110 @@
+package es.unex.giiis.ribw.jgarciapft.extraction;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.DETECTION_PREFIX_BYTES;
+
+/**
+ * Extracts the body text of structured or semi-structured documents with Tika. The media type of each document is
+ * detected from its first bytes and its name, then the document is parsed once by the parser chosen for that type. The
+ * text is streamed to a content handler as it's extracted
+ * <p>
+ * Each extractor reuses its buffers and parse contexts, so it isn't safe for concurrent use. Extractors can share a
+ * parser registry
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see TikaParserRegistry#selectParser(String, MediaType)
+ */
+public class TikaExtractor {
+
+    private final TikaParserRegistry parserRegistry; // Where to get the parsers from
+
+    // Parse context reused for every document parsed with the concrete parser of its extension
+    private final ParseContext parseContext;
+    // Parse context reused for every document parsed with another parser. Created when needed
+    private ParseContext autoDetectParseContext;
+    // Reusable buffer holding the first bytes of the document whose media type is being detected
+    private final byte[] detectionPrefix;
+
+    /**
+     * @param parserRegistry Where to get the parsers from
+     */
+    public TikaExtractor(TikaParserRegistry parserRegistry) {
+        this.parserRegistry = parserRegistry;
+
+        parseContext = parserRegistry.newParseContext();
+        autoDetectParseContext = null;
+        detectionPrefix = new byte[DETECTION_PREFIX_BYTES];
+    }
+
+    /**
+     * Extract the body text of a document
+     *
+     * @param fileName  Name of the document's file
+     * @param extension The file's extension in lowercase
+     * @param content   The document's content. It isn't closed
+     * @param handler   Receives the body text as it's extracted
+     * @param infoLog   Receives informative messages about the extraction, such as the chosen parser
+     * @throws IOException   If the content can't be read
+     * @throws TikaException If the document can't be parsed
+     * @throws SAXException  If the handler fails
+     */
+    public void extract(String fileName, String extension, InputStream content, ContentHandler handler,
+                        Consumer<String> infoLog) throws IOException, TikaException, SAXException {
+
+        InputStream inputStream = new BufferedInputStream(content, DETECTION_PREFIX_BYTES);
+
+        // Detect the media type from the first bytes, then rewind the stream so the parser reads it whole
+
+        inputStream.mark(DETECTION_PREFIX_BYTES);
+        int prefixLength = inputStream.readNBytes(detectionPrefix, 0, DETECTION_PREFIX_BYTES);
+        inputStream.reset();
+
+        MediaType detectedType = parserRegistry.getContentTypeDetector()
+                .detect(detectionPrefix, prefixLength, fileName, extension);
+
+        // Choose the parser from the detected media type
+
+        Parser tikaParser = parserRegistry.selectParser(extension, detectedType);
+
+        if (tikaParser == null) {
+            infoLog.accept(String.format("No Tika parser for %s. Ignoring it", detectedType));
+            return;
+        }
+
+        infoLog.accept(String.format("With Tika parser => %s (%s) for %s", tikaParser.getClass().getSimpleName(),
+                tikaParser.getClass().toString(), detectedType));
+
+        // Embedded documents are only parsed when the file isn't parsed by the concrete parser of its extension
+
+        ParseContext context = parseContext;
+
+        if (!parserRegistry.isExtensionParser(extension, tikaParser)) {
+            if (autoDetectParseContext == null) autoDetectParseContext = parserRegistry.newAutoDetectParseContext();
+
+            context = autoDetectParseContext;
+        }
+
+        // The file name and its media type help the parser
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+        metadata.set(Metadata.CONTENT_TYPE, detectedType.toString());
+
+        // Only the body's text is streamed to the handler, without the write limit of a buffering content handler
+
+        tikaParser.parse(inputStream, new BodyContentHandler(handler), metadata, context);
+    }
+
+}
@@ -0,0 +1,279 @@
+package es.unex.giiis.ribw.jgarciapft.extraction;
+
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of reusable Tika parsers. Each concrete parser class is instantiated once, the first time a file that it
+ * parses is found, and then shared. The automatic parser is shared too, so Tika's service registry is only loaded once.
+ * Tika parsers are thread-safe, so the registry can be shared by every indexing worker
+ * <p>
+ * Parse contexts aren't thread-safe, so each user of the registry gets its own ones and reuses them for every document
+ * <p>
+ * The registry chooses the parser of each document from its detected media type, so a single parse attempt is made even
+ * when the extension of the document lies. The concrete parser of the extension is preferred when it supports the
+ * detected type
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.Config#TIKA_PARSERS
+ */
+public class TikaParserRegistry {
+
+    private final Map<String, Class<? extends Parser>> parserClasses; // Concrete parser classes by file extension
+    private final Map<Class<? extends Parser>, Parser> parsers; // Instantiated parsers by class
+    private final Map<Parser, Set<MediaType>> supportedTypes; // Media types supported by each instantiated parser
+    private volatile AutoDetectParser autoDetectParser; // Created the first time it's needed
+    private volatile ContentTypeDetector contentTypeDetector; // Uses the detector of the automatic parser
+    private volatile Map<MediaType, Parser> parsersByType; // Parsers known by the automatic parser by media type
+
+    // Number of documents whose extension has a concrete parser that doesn't support their detected media type
+    private final AtomicLong extensionMismatches = new AtomicLong();
+
+    /**
+     * @param parserClasses Catalogue of concrete Tika parser classes associated with the file extensions they parse
+     */
+    public TikaParserRegistry(Map<String, Class<? extends Parser>> parserClasses) {
+        this.parserClasses = parserClasses;
+
+        parsers = new ConcurrentHashMap<>();
+        supportedTypes = new ConcurrentHashMap<>();
+        autoDetectParser = null;
+        contentTypeDetector = null;
+        parsersByType = null;
+    }
+
+    /**
+     * @param fileExtension A file extension in lowercase
+     * @return If files with this extension can be analysed with a concrete Tika parser
+     */
+    public boolean hasParser(String fileExtension) {
+        return parserClasses.containsKey(fileExtension);
+    }
+
+    /**
+     * @param fileExtension A file extension in lowercase
+     * @return The shared concrete parser for files with this extension, or null if there isn't one
+     * @throws ReflectiveOperationException If the parser can't be instantiated
+     */
+    public Parser getParser(String fileExtension) throws ReflectiveOperationException {
+
+        Class<? extends Parser> parserClass = parserClasses.get(fileExtension);
+
+        if (parserClass == null) return null;
+
+        Parser parser = parsers.get(parserClass);
+
+        // Instantiate the parser the first time it's needed. Two threads may race to instantiate it, only one
+        // instance is kept
+
+        if (parser == null) {
+
+            Parser newParser;
+
+            try {
+                newParser = parserClass.getDeclaredConstructor().newInstance();
+            } catch (LinkageError e) { // The parser's dependencies aren't available
+                throw new ReflectiveOperationException("Unable to load " + parserClass.getName(), e);
+            }
+
+            parser = parsers.putIfAbsent(parserClass, newParser);
+
+            if (parser == null) parser = newParser;
+        }
+
+        return parser;
+    }
+
+    /**
+     * Choose the parser of a document. The concrete parser of the document's extension is chosen if it supports the
+     * detected media type, or if the type couldn't be detected. Otherwise the parser that the automatic parser would
+     * delegate on is chosen
+     *
+     * @param fileExtension The document's extension in lowercase
+     * @param detectedType  The document's detected media type
+     * @return The parser of the document, or null if no parser supports its media type
+     * @see TikaParserRegistry#getContentTypeDetector()
+     */
+    public Parser selectParser(String fileExtension, MediaType detectedType) {
+
+        Parser extensionParser;
+
+        try {
+            extensionParser = getParser(fileExtension);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("[WARNING] " + e.getMessage() + ". Using the parser of the detected media type");
+            extensionParser = null;
+        }
+
+        if (extensionParser != null) {
+
+            if (MediaType.OCTET_STREAM.equals(detectedType) || supports(extensionParser, detectedType))
+                return extensionParser;
+
+            extensionMismatches.incrementAndGet();
+        }
+
+        // Look up the parser of the detected type or of its closest supertype
+
+        MediaTypeRegistry mediaTypeRegistry = getAutoDetectParser().getMediaTypeRegistry();
+        Map<MediaType, Parser> parsers = getParsersByType();
+
+        for (MediaType type = mediaTypeRegistry.normalize(detectedType.getBaseType()); type != null;
+             type = mediaTypeRegistry.getSupertype(type)) {
+
+            Parser parser = parsers.get(type);
+
+            if (parser != null) return parser;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param fileExtension A file extension in lowercase
+     * @param parser        A parser
+     * @return If the parser is the concrete parser of the extension
+     */
+    public boolean isExtensionParser(String fileExtension, Parser parser) {
+        return parserClasses.get(fileExtension) == parser.getClass();
+    }
+
+    /**
+     * @return The shared automatic parser, which detects the type of each file and delegates on the fitting parser
+     */
+    public AutoDetectParser getAutoDetectParser() {
+
+        AutoDetectParser parser = autoDetectParser;
+
+        if (parser == null) {
+            synchronized (this) {
+                if (autoDetectParser == null) autoDetectParser = new AutoDetectParser();
+
+                parser = autoDetectParser;
+            }
+        }
+
+        return parser;
+    }
+
+    /**
+     * @return The shared detector of the media type of documents, backed by the detector of the automatic parser
+     */
+    public ContentTypeDetector getContentTypeDetector() {
+
+        ContentTypeDetector detector = contentTypeDetector;
+
+        if (detector == null) {
+            synchronized (this) {
+                if (contentTypeDetector == null)
+                    contentTypeDetector = new ContentTypeDetector(getAutoDetectParser().getDetector());
+
+                detector = contentTypeDetector;
+            }
+        }
+
+        return detector;
+    }
+
+    /**
+     * @return A new parse context for concrete parsers. Embedded documents aren't parsed
+     */
+    public ParseContext newParseContext() {
+        return new ParseContext();
+    }
+
+    /**
+     * @return A new parse context for the automatic parser. Embedded documents are parsed with the automatic parser too
+     */
+    public ParseContext newAutoDetectParseContext() {
+
+        ParseContext parseContext = new ParseContext();
+        parseContext.set(Parser.class, getAutoDetectParser());
+
+        return parseContext;
+    }
+
+    /**
+     * Print the content detection statistics: documents detected, detections answered by the cache and documents whose
+     * extension disagrees with their detected type. Nothing is printed if no document has been detected
+     */
+    public void printReport() {
+
+        ContentTypeDetector detector = contentTypeDetector;
+
+        if (detector == null || detector.getDetections() == 0) return;
+
+        System.out.printf("[INFO] Content detection => %d document(s), %d signature cache hit(s), " +
+                        "%d extension mismatch(es)\n",
+                detector.getDetections(), detector.getCacheHits(), extensionMismatches.get());
+    }
+
+    public long getExtensionMismatches() {
+        return extensionMismatches.get();
+    }
+
+    /**
+     * @param parser A parser
+     * @param type   A media type
+     * @return If the parser supports the media type or any of its supertypes
+     */
+    private boolean supports(Parser parser, MediaType type) {
+
+        Set<MediaType> types = supportedTypes.computeIfAbsent(parser, p -> p.getSupportedTypes(new ParseContext()));
+        MediaTypeRegistry mediaTypeRegistry = getAutoDetectParser().getMediaTypeRegistry();
+
+        for (MediaType current = mediaTypeRegistry.normalize(type.getBaseType()); current != null;
+             current = mediaTypeRegistry.getSupertype(current))
+            if (types.contains(current)) return true;
+
+        return false;
+    }
+
+    /**
+     * @param compositeParser A composite parser
+     * @param leafParsers     Where to add the parsers that aren't composite that the composite parser delegates on,
+     *                        by media type
+     */
+    private static void addLeafParsers(CompositeParser compositeParser, Map<MediaType, Parser> leafParsers) {
+
+        for (Map.Entry<MediaType, Parser> parserEntry : compositeParser.getParsers(new ParseContext()).entrySet()) {
+            if (parserEntry.getValue() instanceof CompositeParser)
+                addLeafParsers((CompositeParser) parserEntry.getValue(), leafParsers);
+            else
+                leafParsers.putIfAbsent(parserEntry.getKey(), parserEntry.getValue());
+        }
+    }
+
+    /**
+     * @return The parsers the automatic parser delegates on by media type. Computed once
+     */
+    private Map<MediaType, Parser> getParsersByType() {
+
+        Map<MediaType, Parser> parsers = parsersByType;
+
+        if (parsers == null) {
+            synchronized (this) {
+                if (parsersByType == null) {
+                    Map<MediaType, Parser> leafParsers = new HashMap<>();
+                    addLeafParsers(getAutoDetectParser(), leafParsers);
+                    parsersByType = leafParsers;
+                }
+
+                parsers = parsersByType;
+            }
+        }
+
+        return parsers;
+    }
+
+}
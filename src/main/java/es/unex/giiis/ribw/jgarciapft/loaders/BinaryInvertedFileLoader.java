@@ -0,0 +1,191 @@
+package es.unex.giiis.ribw.jgarciapft.loaders;
+
+import es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.Section;
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+import es.unex.giiis.ribw.jgarciapft.InvertedFile;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.*;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.*;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Loads an inverted file written with the binary inverted file format. Every section is verified against its checksum
+ * before being decoded. Inverted files serialized by previous versions of this crawler (Java serialization) are
+ * still loaded through the legacy loading strategy, so they can be migrated by exporting them again
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat
+ */
+public class BinaryInvertedFileLoader implements IInvertedFileLoader {
+
+    private final IInvertedFileLoader legacyLoader; // Loads inverted files that aren't binary inverted files
+
+    public BinaryInvertedFileLoader() {
+        legacyLoader = new InvertedFileLoader();
+    }
+
+    /**
+     * Loads a binary inverted file, or a legacy inverted file if it isn't one
+     *
+     * @return The imported inverted file or null if an error arose while loading
+     */
+    @Override
+    public InvertedFile load(File marshalledInvertedFile) {
+
+        // Check that the exported file exists and is indeed a readable file
+
+        if (marshalledInvertedFile == null || !marshalledInvertedFile.exists() ||
+                !marshalledInvertedFile.isFile() || !marshalledInvertedFile.canRead())
+            return null;
+
+        try (FileChannel channel = FileChannel.open(marshalledInvertedFile.toPath(), READ)) {
+
+            long fileSize = channel.size();
+
+            // Fall back to the legacy format if the file doesn't start with the magic number
+
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(magic, 0);
+
+            if (!hasMagic(magic.flip())) {
+                System.out.println("[INFO] Loading a legacy inverted file. It will be migrated the next time it's exported");
+                return legacyLoader.load(marshalledInvertedFile);
+            }
+
+            if (fileSize > Integer.MAX_VALUE)
+                throw new IOException("The binary inverted file is too big to be loaded into memory");
+
+            // Read the whole file
+
+            return decode(readFully(channel, 0, (int) fileSize), fileSize);
+
+        } catch (IOException e) {
+            System.err.println("[ERROR] An error occurred loading the binary inverted file from a file (" +
+                    e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Decode a whole binary inverted file
+     *
+     * @param file     The file's contents
+     * @param fileSize The size of the file in bytes
+     * @return The decoded inverted file
+     * @throws IOException If the file is corrupted or malformed
+     */
+    private static InvertedFile decode(ByteBuffer file, long fileSize) throws IOException {
+
+        List<Section> sections = decodeHeader(file, fileSize);
+
+        ByteBuffer catalogue = sliceSection(file, findSection(sections, CATALOGUE_SECTION));
+        ByteBuffer postings = sliceSection(file, findSection(sections, POSTINGS_SECTION));
+        ByteBuffer dictionary = sliceSection(file, findSection(sections, DICTIONARY_SECTION));
+
+        verifySection(catalogue, findSection(sections, CATALOGUE_SECTION));
+        verifySection(postings, findSection(sections, POSTINGS_SECTION));
+        verifySection(dictionary, findSection(sections, DICTIONARY_SECTION));
+
+        IDocumentCatalogue documentCatalogue = decodeCatalogue(catalogue);
+
+        // Files written before document lengths were recorded lack their section
+
+        Section documentLengthsSection = findOptionalSection(sections, DOCUMENT_LENGTHS_SECTION);
+
+        if (documentLengthsSection != null) {
+            ByteBuffer documentLengths = sliceSection(file, documentLengthsSection);
+            verifySection(documentLengths, documentLengthsSection);
+            decodeDocumentLengths(documentLengths, documentCatalogue);
+        }
+
+        // Files written without positions lack their section
+
+        Section positionsSection = findOptionalSection(sections, POSITIONS_SECTION);
+        ByteBuffer positions = null;
+
+        if (positionsSection != null) {
+            positions = sliceSection(file, positionsSection);
+            verifySection(positions, positionsSection);
+        }
+
+        return new InvertedFile(decodeInvertedIndex(dictionary, postings, positions), documentCatalogue);
+    }
+
+    /**
+     * Decode every term of the dictionary section along with its postings list and positions list, if any
+     *
+     * @param dictionary The contents of the dictionary section
+     * @param postings   The contents of the postings section
+     * @param positions  The contents of the positions section, or null if the file doesn't record positions
+     * @return The decoded inverted index
+     * @throws IOException If the sections are malformed
+     */
+    private static Map<String, Occurrences> decodeInvertedIndex(ByteBuffer dictionary, ByteBuffer postings,
+                                                                ByteBuffer positions) throws IOException {
+
+        Map<String, Occurrences> invertedIndex = new TreeMap<>();
+
+        try {
+
+            int termCount = readVarInt(dictionary);
+            int blockSize = readVarInt(dictionary);
+            StringBuilder term = new StringBuilder();
+
+            long[] positionsOffsets = null;
+
+            if (positions != null) {
+                long tableOffset = positionsTableOffset(positions.remaining(), termCount);
+                positionsOffsets = decodePositionsTable(positions.duplicate().position((int) tableOffset), termCount,
+                        tableOffset);
+            }
+
+            for (int termIndex = 0; termIndex < termCount; termIndex++) {
+
+                // Each block starts with the offset of its first postings list
+
+                if (termIndex % blockSize == 0) postings.position((int) readVarLong(dictionary));
+
+                int prefixLength = readVarInt(dictionary);
+                term.setLength(prefixLength);
+                term.append(readString(dictionary));
+
+                int documentCount = readVarInt(dictionary);
+                int globalFrequency = readVarInt(dictionary);
+                readVarInt(dictionary); // The postings list is decoded sequentially, so its length isn't needed
+
+                Occurrences occurrences = decodePostings(postings, documentCount, globalFrequency);
+
+                // Positions are copied out of the file's contents, so the contents aren't kept in memory
+
+                if (positionsOffsets != null && positionsOffsets[termIndex + 1] > positionsOffsets[termIndex]) {
+                    ByteBuffer positionsList = positions.duplicate()
+                            .limit((int) positionsOffsets[termIndex + 1])
+                            .position((int) positionsOffsets[termIndex]);
+                    occurrences.setPositionsSource(positionsList::slice);
+                    occurrences.loadPositions();
+                }
+
+                invertedIndex.put(term.toString(), occurrences);
+            }
+
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed dictionary or postings section in binary inverted file");
+        } catch (UncheckedIOException e) { // Malformed positions list
+            throw e.getCause();
+        }
+
+        return invertedIndex;
+    }
+
+}
@@ -0,0 +1,348 @@
+package es.unex.giiis.ribw.jgarciapft.loaders;
+
+import es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.Section;
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+import es.unex.giiis.ribw.jgarciapft.IWildcardIndexProvider;
+import es.unex.giiis.ribw.jgarciapft.InvertedFile;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+import es.unex.giiis.ribw.jgarciapft.PostingsCache;
+import es.unex.giiis.ribw.jgarciapft.WildcardIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import static es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.*;
+import static es.unex.giiis.ribw.jgarciapft.Config.POSTINGS_CACHE_MAX_BYTES;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.*;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Loads a binary inverted file lazily. Only the document's catalogue and the term dictionary are loaded, along with the
+ * offset of each postings list. Postings lists are read from the file and decoded the first time their term is looked
+ * up, then they are kept in a postings cache bounded by memory. Positions, if the file records them, are read from the
+ * file every time a query asks for them and never cached. The loaded inverted index can't be modified
+ * <p>
+ * The inverted file is kept open while the loaded inverted index is in use. Inverted files that aren't binary inverted
+ * files are fully loaded through the legacy loading strategy
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see PostingsCache
+ */
+public class LazyInvertedFileLoader implements IInvertedFileLoader {
+
+    private final IInvertedFileLoader legacyLoader; // Loads inverted files that aren't binary inverted files
+    private final PostingsCache postingsCache; // Holds the postings lists decoded by the loaded inverted indexes
+
+    /**
+     * Instantiate a loader whose postings cache has the default bound
+     *
+     * @see es.unex.giiis.ribw.jgarciapft.Config#POSTINGS_CACHE_MAX_BYTES
+     */
+    public LazyInvertedFileLoader() {
+        this(POSTINGS_CACHE_MAX_BYTES);
+    }
+
+    /**
+     * @param postingsCacheMaxBytes Maximum estimated memory taken by the cached postings lists
+     */
+    public LazyInvertedFileLoader(long postingsCacheMaxBytes) {
+        legacyLoader = new InvertedFileLoader();
+        postingsCache = new PostingsCache(postingsCacheMaxBytes);
+    }
+
+    /**
+     * Loads the dictionary of a binary inverted file, or fully loads a legacy inverted file if it isn't one
+     *
+     * @return The lazily loaded inverted file or null if an error arose while loading
+     */
+    @Override
+    public InvertedFile load(File marshalledInvertedFile) {
+
+        // Check that the exported file exists and is indeed a readable file
+
+        if (marshalledInvertedFile == null || !marshalledInvertedFile.exists() ||
+                !marshalledInvertedFile.isFile() || !marshalledInvertedFile.canRead())
+            return null;
+
+        FileChannel channel = null;
+
+        try {
+
+            channel = FileChannel.open(marshalledInvertedFile.toPath(), READ);
+
+            // Fall back to the legacy format if the file doesn't start with the magic number
+
+            if (!hasMagic(readFully(channel, 0, (int) Math.min(channel.size(), Integer.BYTES)))) {
+                channel.close();
+                System.out.println("[INFO] Legacy inverted files can't be loaded lazily. Loading it fully");
+                return legacyLoader.load(marshalledInvertedFile);
+            }
+
+            List<Section> sections = readHeader(channel);
+
+            IDocumentCatalogue documentCatalogue = decodeCatalogue(readSection(channel, findSection(sections, CATALOGUE_SECTION)));
+
+            // Files written before document lengths were recorded lack their section
+
+            Section documentLengthsSection = findOptionalSection(sections, DOCUMENT_LENGTHS_SECTION);
+
+            if (documentLengthsSection != null)
+                decodeDocumentLengths(readSection(channel, documentLengthsSection), documentCatalogue);
+
+            // Files written before wildcard indexes were stored lack their section. It's small, so it's kept resident
+
+            Section wildcardIndexSection = findOptionalSection(sections, WILDCARD_INDEX_SECTION);
+            WildcardIndex wildcardIndex = wildcardIndexSection != null ?
+                    WildcardIndex.decode(readSection(channel, wildcardIndexSection)) : null;
+
+            // Files written without positions lack their section
+
+            LazyTermDictionary invertedIndex = new LazyTermDictionary(
+                    readSection(channel, findSection(sections, DICTIONARY_SECTION)), channel,
+                    findSection(sections, POSTINGS_SECTION), findOptionalSection(sections, POSITIONS_SECTION),
+                    wildcardIndex, postingsCache);
+
+            System.out.printf("[INFO] Loaded the dictionary of an inverted file with %d term(s)\n", invertedIndex.size());
+
+            return new InvertedFile(invertedIndex, documentCatalogue);
+
+        } catch (IOException e) {
+            System.err.println("[ERROR] An error occurred loading the binary inverted file (" + e.getMessage() + ")");
+
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * @return The cache of the postings lists decoded by the inverted indexes loaded by this loader
+     */
+    public PostingsCache getPostingsCache() {
+        return postingsCache;
+    }
+
+    /**
+     * @param channel The file
+     * @param section A section of the file
+     * @return The section's contents, verified against its checksum
+     * @throws IOException If the section can't be read, is corrupted or is bigger than 2 GiB
+     */
+    private static ByteBuffer readSection(FileChannel channel, Section section) throws IOException {
+
+        if (section.getLength() > Integer.MAX_VALUE)
+            throw new IOException("Section (" + section.getId() + ") is too big to be loaded");
+
+        ByteBuffer contents = readFully(channel, section.getOffset(), (int) section.getLength());
+        verifySection(contents, section);
+
+        return contents;
+    }
+
+    /**
+     * Read-only inverted index that keeps the sorted terms resident and reads their postings lists from the inverted
+     * file on demand. It can be queried concurrently
+     */
+    private static class LazyTermDictionary extends AbstractMap<String, Occurrences>
+            implements IWildcardIndexProvider {
+
+        private final String[] terms; // Sorted terms of the dictionary
+        private final int[] documentCounts; // Number of documents where each term occurs
+        private final int[] globalFrequencies; // Total number of occurrences of each term
+        private final long[] postingsOffsets; // Offset of each postings list within the file
+        private final int[] postingsLengths; // Length of each postings list in bytes
+        // Offset of each positions list within the file, plus the end of the last one. Null without positions
+        private final long[] positionsOffsets;
+        private final WildcardIndex wildcardIndex; // Read from the wildcard index section. Null if there is none
+
+        private final FileChannel channel; // The open inverted file
+        private final PostingsCache postingsCache; // Holds the decoded postings lists
+
+        /**
+         * @param dictionary       The contents of the dictionary section
+         * @param channel          The open inverted file
+         * @param postingsSection  The postings section of the inverted file
+         * @param positionsSection The positions section of the inverted file, or null if there is none
+         * @param wildcardIndex    The wildcard index read from the inverted file, or null if there is none
+         * @param postingsCache    Where to cache the decoded postings lists
+         * @throws IOException If the dictionary or the positions table are malformed
+         */
+        private LazyTermDictionary(ByteBuffer dictionary, FileChannel channel, Section postingsSection,
+                                   Section positionsSection, WildcardIndex wildcardIndex, PostingsCache postingsCache)
+                throws IOException {
+
+            this.channel = channel;
+            this.wildcardIndex = wildcardIndex;
+            this.postingsCache = postingsCache;
+
+            try {
+
+                int termCount = readVarInt(dictionary);
+                int blockSize = readVarInt(dictionary);
+
+                if (termCount < 0 || blockSize < 1)
+                    throw new IOException("Malformed dictionary section in binary inverted file");
+
+                terms = new String[termCount];
+                documentCounts = new int[termCount];
+                globalFrequencies = new int[termCount];
+                postingsOffsets = new long[termCount];
+                postingsLengths = new int[termCount];
+
+                StringBuilder term = new StringBuilder();
+                long postingsOffset = 0;
+
+                for (int termIndex = 0; termIndex < termCount; termIndex++) {
+
+                    // Each block starts with the offset of its first postings list
+
+                    if (termIndex % blockSize == 0) postingsOffset = readVarLong(dictionary);
+
+                    term.setLength(readVarInt(dictionary));
+                    term.append(readString(dictionary));
+
+                    terms[termIndex] = term.toString();
+                    documentCounts[termIndex] = readVarInt(dictionary);
+                    globalFrequencies[termIndex] = readVarInt(dictionary);
+                    postingsLengths[termIndex] = readVarInt(dictionary);
+                    postingsOffsets[termIndex] = postingsSection.getOffset() + postingsOffset;
+
+                    postingsOffset += postingsLengths[termIndex];
+
+                    if (postingsOffset > postingsSection.getLength())
+                        throw new IOException("Malformed dictionary section in binary inverted file");
+                }
+
+            } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IOException("Malformed dictionary section in binary inverted file");
+            }
+
+            // Keep the positions table resident, along with the offsets of the postings lists
+
+            if (positionsSection != null) {
+
+                long tableOffset = positionsTableOffset(positionsSection.getLength(), terms.length);
+
+                if ((terms.length + 1L) * Long.BYTES > Integer.MAX_VALUE)
+                    throw new IOException("The positions table is too big to be loaded");
+
+                positionsOffsets = decodePositionsTable(readFully(channel, positionsSection.getOffset() + tableOffset,
+                        (terms.length + 1) * Long.BYTES), terms.length, tableOffset);
+
+                for (int termIndex = 0; termIndex < positionsOffsets.length; termIndex++)
+                    positionsOffsets[termIndex] += positionsSection.getOffset();
+
+            } else {
+                positionsOffsets = null;
+            }
+        }
+
+        @Override
+        public Occurrences get(Object key) {
+
+            if (!(key instanceof String)) return null;
+
+            int termIndex = Arrays.binarySearch(terms, key);
+
+            if (termIndex < 0) return null;
+
+            Occurrences occurrences = postingsCache.get(terms[termIndex]);
+
+            if (occurrences == null) {
+                occurrences = decode(termIndex);
+                postingsCache.put(terms[termIndex], occurrences);
+            }
+
+            return occurrences;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && Arrays.binarySearch(terms, key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return terms.length;
+        }
+
+        @Override
+        public WildcardIndex getWildcardIndex() {
+            return wildcardIndex;
+        }
+
+        /**
+         * Iterates the terms in dictionary order. Postings lists are decoded without going through the cache, so
+         * traversing the whole index doesn't evict the lists of the terms being queried
+         */
+        @Override
+        public Set<Entry<String, Occurrences>> entrySet() {
+
+            return new AbstractSet<Entry<String, Occurrences>>() {
+
+                @Override
+                public Iterator<Entry<String, Occurrences>> iterator() {
+
+                    return new Iterator<Entry<String, Occurrences>>() {
+
+                        private int termIndex = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return termIndex < terms.length;
+                        }
+
+                        @Override
+                        public Entry<String, Occurrences> next() {
+
+                            if (!hasNext()) throw new NoSuchElementException();
+
+                            int current = termIndex++;
+
+                            return new SimpleImmutableEntry<>(terms[current], decode(current));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return terms.length;
+                }
+            };
+        }
+
+        /**
+         * @param termIndex Position of a term in the dictionary
+         * @return The term's occurrences read from the inverted file and decoded. Its positions list, if any, is
+         * attached without reading it
+         */
+        private Occurrences decode(int termIndex) {
+            try {
+                Occurrences occurrences = decodePostings(readFully(channel, postingsOffsets[termIndex],
+                        postingsLengths[termIndex]), documentCounts[termIndex], globalFrequencies[termIndex]);
+
+                long positionsStart = positionsOffsets != null ? positionsOffsets[termIndex] : 0;
+                long positionsLength = positionsOffsets != null ? positionsOffsets[termIndex + 1] - positionsStart : 0;
+
+                if (positionsLength > Integer.MAX_VALUE)
+                    throw new IOException("The positions list of (" + terms[termIndex] + ") is too big to be loaded");
+
+                if (positionsLength > 0)
+                    occurrences.setPositionsSource(() -> readFully(channel, positionsStart, (int) positionsLength));
+
+                return occurrences;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,471 @@
+package es.unex.giiis.ribw.jgarciapft.loaders;
+
+import es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.Section;
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+import es.unex.giiis.ribw.jgarciapft.InvertedFile;
+import es.unex.giiis.ribw.jgarciapft.IWildcardIndexProvider;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+import es.unex.giiis.ribw.jgarciapft.WildcardIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import static es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.*;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.*;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Maps a binary inverted file into memory instead of loading it. Only the document's catalogue is decoded, the
+ * inverted index is a read-only view of the mapped file: looking up a term binary searches the blocks of the on-disk
+ * dictionary by their first term, decodes a single block and then decodes the term's postings list straight from the
+ * mapped file. Loading time doesn't depend on the size of the dictionary or the postings. Positions, if the file
+ * records them, are only read from the mapped file when a query asks for them
+ * <p>
+ * The postings and positions sections are mapped in overlapping chunks so inverted files bigger than 2 GiB can be
+ * mapped. The mapped inverted index can't be modified. Inverted files that aren't binary inverted files are loaded
+ * into memory through the legacy loading strategy
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat
+ */
+public class MappedInvertedFileLoader implements IInvertedFileLoader {
+
+    // Distance between the start of consecutive chunks of the postings and positions sections. Each chunk maps up to
+    // twice this size, so every postings or positions list up to this size is fully contained in the chunk where it
+    // starts
+    private static final long CHUNK_STRIDE = 1L << 30;
+
+    private final IInvertedFileLoader legacyLoader; // Loads inverted files that aren't binary inverted files
+
+    public MappedInvertedFileLoader() {
+        legacyLoader = new InvertedFileLoader();
+    }
+
+    /**
+     * Maps a binary inverted file, or loads a legacy inverted file if it isn't one
+     *
+     * @return The mapped inverted file or null if an error arose while mapping
+     */
+    @Override
+    public InvertedFile load(File marshalledInvertedFile) {
+
+        // Check that the exported file exists and is indeed a readable file
+
+        if (marshalledInvertedFile == null || !marshalledInvertedFile.exists() ||
+                !marshalledInvertedFile.isFile() || !marshalledInvertedFile.canRead())
+            return null;
+
+        // Mappings remain valid once the channel is closed
+
+        try (FileChannel channel = FileChannel.open(marshalledInvertedFile.toPath(), READ)) {
+
+            // Fall back to the legacy format if the file doesn't start with the magic number
+
+            if (!hasMagic(readFully(channel, 0, (int) Math.min(channel.size(), Integer.BYTES)))) {
+                System.out.println("[INFO] Legacy inverted files can't be mapped. Loading it into memory");
+                return legacyLoader.load(marshalledInvertedFile);
+            }
+
+            List<Section> sections = readHeader(channel);
+
+            // The catalogue is small and needed by every query, decode it now
+
+            Section catalogueSection = findSection(sections, CATALOGUE_SECTION);
+            ByteBuffer catalogue = map(channel, catalogueSection);
+            verifySection(catalogue, catalogueSection);
+
+            IDocumentCatalogue documentCatalogue = decodeCatalogue(catalogue);
+
+            // Files written before document lengths were recorded lack their section
+
+            Section documentLengthsSection = findOptionalSection(sections, DOCUMENT_LENGTHS_SECTION);
+
+            if (documentLengthsSection != null) {
+                ByteBuffer documentLengths = map(channel, documentLengthsSection);
+                verifySection(documentLengths, documentLengthsSection);
+                decodeDocumentLengths(documentLengths, documentCatalogue);
+            }
+
+            // Only the small block index is verified, verifying the rest would mean reading the whole file
+
+            Section blockIndexSection = findSection(sections, BLOCK_INDEX_SECTION);
+            ByteBuffer blockIndex = map(channel, blockIndexSection);
+            verifySection(blockIndex, blockIndexSection);
+
+            // Files written without positions lack their section
+
+            Section positionsSection = findOptionalSection(sections, POSITIONS_SECTION);
+
+            // Files written before wildcard indexes were stored lack their section. It's small, so it's verified
+
+            Section wildcardIndexSection = findOptionalSection(sections, WILDCARD_INDEX_SECTION);
+            WildcardIndex wildcardIndex = null;
+
+            if (wildcardIndexSection != null) {
+                ByteBuffer encodedWildcardIndex = map(channel, wildcardIndexSection);
+                verifySection(encodedWildcardIndex, wildcardIndexSection);
+                wildcardIndex = WildcardIndex.decode(encodedWildcardIndex);
+            }
+
+            MappedTermDictionary invertedIndex = new MappedTermDictionary(
+                    map(channel, findSection(sections, DICTIONARY_SECTION)), blockIndex,
+                    mapChunks(channel, findSection(sections, POSTINGS_SECTION)),
+                    positionsSection != null ? mapChunks(channel, positionsSection) : null,
+                    positionsSection != null ? positionsSection.getLength() : 0, wildcardIndex);
+
+            System.out.printf("[INFO] Mapped an inverted file with %d term(s)\n", invertedIndex.size());
+
+            return new InvertedFile(invertedIndex, documentCatalogue);
+
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.err.println("[ERROR] An error occurred mapping the binary inverted file (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * @param channel The file
+     * @param section A section of the file
+     * @return The section mapped into memory
+     * @throws IOException If the section can't be mapped or is bigger than 2 GiB
+     */
+    private static ByteBuffer map(FileChannel channel, Section section) throws IOException {
+
+        if (section.getLength() > Integer.MAX_VALUE)
+            throw new IOException("Section (" + section.getId() + ") is too big to be mapped");
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, section.getOffset(), section.getLength());
+    }
+
+    /**
+     * @param channel The file
+     * @param section A section of the file
+     * @return The chunks of the section mapped into memory. Chunk i starts at i * CHUNK_STRIDE
+     * @throws IOException If the section can't be mapped
+     */
+    private static ByteBuffer[] mapChunks(FileChannel channel, Section section) throws IOException {
+
+        long length = section.getLength();
+        ByteBuffer[] chunks = new ByteBuffer[(int) Math.max(1, (length + CHUNK_STRIDE - 1) / CHUNK_STRIDE)];
+
+        for (int i = 0; i < chunks.length; i++) {
+            long chunkStart = i * CHUNK_STRIDE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, section.getOffset() + chunkStart,
+                    Math.min(length - chunkStart, 2 * CHUNK_STRIDE));
+        }
+
+        return chunks;
+    }
+
+    /**
+     * @param chunks The mapped chunks of a section
+     * @param offset Offset within the section
+     * @param length Number of bytes of the view
+     * @return A view of the given range of the section
+     * @throws IOException If the range isn't fully contained in the chunk where it starts
+     */
+    private static ByteBuffer view(ByteBuffer[] chunks, long offset, long length) throws IOException {
+
+        int chunk = (int) (offset / CHUNK_STRIDE);
+        ByteBuffer view = chunks[chunk].duplicate();
+
+        view.position((int) (offset - chunk * CHUNK_STRIDE));
+
+        if (length > view.remaining()) throw new IOException("A postings or positions list is too big to be mapped");
+
+        return view.limit(view.position() + (int) length);
+    }
+
+    /**
+     * Read-only inverted index backed by the dictionary and postings sections of a mapped binary inverted file. Every
+     * operation works on its own view of the mapped buffers, so it can be queried concurrently
+     */
+    private static class MappedTermDictionary extends AbstractMap<String, Occurrences>
+            implements IWildcardIndexProvider {
+
+        private final ByteBuffer dictionary; // Mapped dictionary section
+        private final ByteBuffer blockIndex; // Mapped block index section
+        private final ByteBuffer[] postings; // Mapped chunks of the postings section
+        private final ByteBuffer[] positions; // Mapped chunks of the positions section. Null if there is none
+        private final long positionsTableOffset; // Offset of the positions table within the positions section
+        private final WildcardIndex wildcardIndex; // Backed by the mapped wildcard index section. Null if there is none
+
+        private final int termCount; // Number of terms of the dictionary
+        private final int blockSize; // Number of terms of each block
+        private final int blocksStart; // Offset of the first block within the dictionary section
+        private final int blockCount; // Number of blocks of the dictionary
+
+        private MappedTermDictionary(ByteBuffer dictionary, ByteBuffer blockIndex, ByteBuffer[] postings,
+                                     ByteBuffer[] positions, long positionsLength, WildcardIndex wildcardIndex)
+                throws IOException {
+
+            this.dictionary = dictionary;
+            this.blockIndex = blockIndex;
+            this.postings = postings;
+            this.positions = positions;
+            this.wildcardIndex = wildcardIndex;
+
+            ByteBuffer dictionaryHeader = dictionary.duplicate();
+            termCount = readVarInt(dictionaryHeader);
+            blockSize = readVarInt(dictionaryHeader);
+            blocksStart = dictionaryHeader.position();
+            blockCount = blockIndex.getInt(0);
+
+            if (termCount < 0 || blockSize < 1 || blockCount != (termCount + blockSize - 1) / blockSize)
+                throw new IllegalArgumentException("Malformed dictionary section in binary inverted file");
+
+            // The positions table ends with its own offset
+
+            positionsTableOffset = positions != null ? positionsTableOffset(positionsLength, termCount) : 0;
+
+            if (positions != null && positionsOffset(termCount) != positionsTableOffset)
+                throw new IOException("Malformed positions section in binary inverted file");
+        }
+
+        @Override
+        public Occurrences get(Object key) {
+
+            if (!(key instanceof String)) return null;
+
+            TermEntry entry = lookup((String) key);
+
+            return entry != null ? decode(entry) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && lookup((String) key) != null;
+        }
+
+        @Override
+        public int size() {
+            return termCount;
+        }
+
+        @Override
+        public WildcardIndex getWildcardIndex() {
+            return wildcardIndex;
+        }
+
+        /**
+         * Iterates the terms in dictionary order, decoding the dictionary sequentially
+         */
+        @Override
+        public Set<Entry<String, Occurrences>> entrySet() {
+
+            return new AbstractSet<Entry<String, Occurrences>>() {
+
+                @Override
+                public Iterator<Entry<String, Occurrences>> iterator() {
+
+                    return new Iterator<Entry<String, Occurrences>>() {
+
+                        private final BlockReader reader = new BlockReader();
+                        private int termIndex = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return termIndex < termCount;
+                        }
+
+                        @Override
+                        public Entry<String, Occurrences> next() {
+
+                            if (!hasNext()) throw new NoSuchElementException();
+
+                            // Blocks are contiguous, so each one starts right after the previous one
+
+                            if (termIndex == 0) reader.seekBlock(blocksStart, 0);
+                            else if (termIndex % blockSize == 0) reader.startBlock();
+
+                            termIndex++;
+
+                            TermEntry entry = reader.next();
+
+                            return new SimpleImmutableEntry<>(entry.term, decode(entry));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return termCount;
+                }
+            };
+        }
+
+        /**
+         * Find a term in the dictionary. The block that may hold the term is binary searched by the first term of each
+         * block, then it's decoded until the term is found
+         *
+         * @param term The term to find
+         * @return The term's dictionary entry, or null if the term isn't in the dictionary
+         */
+        private TermEntry lookup(String term) {
+
+            BlockReader reader = new BlockReader();
+
+            // Find the last block whose first term isn't greater than the term
+
+            int low = 0;
+            int high = blockCount - 1;
+            int block = -1;
+
+            while (low <= high) {
+
+                int middle = (low + high) >>> 1;
+
+                reader.seekBlock(blockOffset(middle), middle * blockSize);
+
+                if (reader.next().term.compareTo(term) <= 0) {
+                    block = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            if (block == -1) return null;
+
+            // Decode the block until the term is found or a greater term is reached
+
+            reader.seekBlock(blockOffset(block), block * blockSize);
+
+            int blockTerms = Math.min(blockSize, termCount - block * blockSize);
+
+            for (int i = 0; i < blockTerms; i++) {
+
+                TermEntry entry = reader.next();
+                int comparison = entry.term.compareTo(term);
+
+                if (comparison == 0) return entry;
+                if (comparison > 0) return null;
+            }
+
+            return null;
+        }
+
+        /**
+         * @param block A block number
+         * @return The offset of the block within the dictionary section
+         */
+        private int blockOffset(int block) {
+            return (int) blockIndex.getLong(Integer.BYTES + block * Long.BYTES);
+        }
+
+        /**
+         * @param termIndex Position of a term in the dictionary, or the number of terms
+         * @return Offset of the term's positions list within the positions section, or the offset of the positions
+         * table if it's the number of terms
+         */
+        private long positionsOffset(int termIndex) {
+
+            long tableEntry = positionsTableOffset + (long) termIndex * Long.BYTES;
+            int chunk = (int) (tableEntry / CHUNK_STRIDE);
+
+            return positions[chunk].getLong((int) (tableEntry - chunk * CHUNK_STRIDE));
+        }
+
+        /**
+         * @param entry A dictionary entry
+         * @return The term's occurrences decoded from its postings list. Its positions list, if any, is attached
+         * without reading it
+         */
+        private Occurrences decode(TermEntry entry) {
+
+            try {
+                Occurrences occurrences = decodePostings(view(postings, entry.postingsOffset, entry.postingsLength),
+                        entry.documentCount, entry.globalFrequency);
+
+                if (positions != null) {
+
+                    long positionsStart = positionsOffset(entry.termIndex);
+                    long positionsEnd = positionsOffset(entry.termIndex + 1);
+
+                    if (positionsStart > positionsEnd || positionsEnd > positionsTableOffset)
+                        throw new IOException("Malformed positions section in binary inverted file");
+
+                    if (positionsEnd > positionsStart)
+                        occurrences.setPositionsSource(() -> view(positions, positionsStart, positionsEnd - positionsStart));
+                }
+
+                return occurrences;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Sequential reader of the entries of the dictionary blocks
+         */
+        private class BlockReader {
+
+            private final ByteBuffer buffer = dictionary.duplicate();
+            private final StringBuilder term = new StringBuilder(); // The last term read, prefix of the next one
+            private long postingsOffset; // Offset of the postings list of the next entry
+            private int termIndex; // Position in the dictionary of the next entry
+
+            /**
+             * @param offset         Offset of the block to read within the dictionary section
+             * @param firstTermIndex Position in the dictionary of the block's first term
+             */
+            private void seekBlock(int offset, int firstTermIndex) {
+                buffer.position(offset);
+                termIndex = firstTermIndex;
+                startBlock();
+            }
+
+            /**
+             * Start reading the block at the current position
+             */
+            private void startBlock() {
+                postingsOffset = readVarLong(buffer);
+            }
+
+            /**
+             * @return The next entry of the current block
+             */
+            private TermEntry next() {
+
+                term.setLength(readVarInt(buffer));
+                term.append(readString(buffer));
+
+                TermEntry entry = new TermEntry(term.toString(), termIndex++, readVarInt(buffer), readVarInt(buffer),
+                        postingsOffset, readVarInt(buffer));
+
+                postingsOffset += entry.postingsLength;
+
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Entry of the on-disk dictionary
+     */
+    private static class TermEntry {
+
+        private final String term;
+        private final int termIndex; // Position of the term in the dictionary
+        private final int documentCount; // Number of documents where the term occurs
+        private final int globalFrequency; // Total number of occurrences of the term
+        private final long postingsOffset; // Offset of the term's postings list within the postings section
+        private final int postingsLength; // Length of the term's postings list in bytes
+
+        private TermEntry(String term, int termIndex, int documentCount, int globalFrequency, long postingsOffset,
+                          int postingsLength) {
+            this.term = term;
+            this.termIndex = termIndex;
+            this.documentCount = documentCount;
+            this.globalFrequency = globalFrequency;
+            this.postingsOffset = postingsOffset;
+            this.postingsLength = postingsLength;
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+package es.unex.giiis.ribw.jgarciapft.marshallers;
+
+import es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.Section;
+import es.unex.giiis.ribw.jgarciapft.DocumentMetadata;
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+import es.unex.giiis.ribw.jgarciapft.InvertedIndex;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+import es.unex.giiis.ribw.jgarciapft.TermPositions;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat.*;
+import static es.unex.giiis.ribw.jgarciapft.utils.BinaryEncodingUtils.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Exports an inverted index to a file (inverted file) using the binary inverted file format. The inverted file is
+ * written to a temporary file first, which then replaces the output file, so an existing inverted file is never left
+ * half written
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.BinaryInvertedFileFormat
+ */
+public class BinaryInvertedIndexMarshaller implements IInvertedIndexMarshaller {
+
+    private static final int SECTION_COUNT = 6; // Number of sections always written. The positions section is optional
+
+    /**
+     * Encodes the inverted index with the binary inverted file format and exports it to a file so it can be restored.
+     * If the file already exists it's overwritten. The positions section is only written if any term records positions
+     *
+     * @param invertedIndex The inverted index to be serialized
+     * @param outFile       Where to write the inverted file
+     */
+    @Override
+    public void marshall(InvertedIndex invertedIndex, File outFile) {
+
+        Path target = outFile.toPath().toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try {
+
+            try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+
+                boolean hasPositions = invertedIndex.getInvertedIndex().values().stream().anyMatch(Occurrences::hasPositions);
+                int sectionCount = hasPositions ? SECTION_COUNT + 1 : SECTION_COUNT;
+                List<Section> sections = new ArrayList<>(sectionCount);
+
+                // The postings are streamed to the file, while the dictionary and its block index are kept in memory
+                // until all the postings offsets are known
+
+                ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+                List<Long> blockOffsets = new ArrayList<>();
+
+                channel.position(headerLength(sectionCount)); // Leave room for the header
+
+                sections.add(writeSection(channel, CATALOGUE_SECTION,
+                        out -> writeCatalogue(out, invertedIndex.getDocumentCatalogue())));
+                sections.add(writeSection(channel, POSTINGS_SECTION,
+                        out -> writePostingsAndDictionary(out, invertedIndex.getInvertedIndex(), dictionary, blockOffsets)));
+                sections.add(writeSection(channel, DICTIONARY_SECTION, dictionary::writeTo));
+                sections.add(writeSection(channel, BLOCK_INDEX_SECTION, out -> writeBlockIndex(out, blockOffsets)));
+                sections.add(writeSection(channel, DOCUMENT_LENGTHS_SECTION,
+                        out -> writeDocumentLengths(out, invertedIndex.getDocumentCatalogue())));
+                sections.add(writeSection(channel, WILDCARD_INDEX_SECTION, invertedIndex.getWildcardIndex()::writeTo));
+
+                if (hasPositions)
+                    sections.add(writeSection(channel, POSITIONS_SECTION,
+                            out -> writePositions(out, invertedIndex.getInvertedIndex())));
+
+                channel.write(encodeHeader(sections), 0);
+                channel.force(true);
+            }
+
+            // Replace the output file
+
+            try {
+                Files.move(temporary, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, REPLACE_EXISTING);
+            }
+
+        } catch (IOException e) {
+            System.err.println("[ERROR] Something went wrong serializing and exporting the inverted index");
+            e.printStackTrace();
+
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Write a section at the current position of a file
+     *
+     * @param channel       The file
+     * @param id            The section identifier
+     * @param sectionWriter Writes the section's contents
+     * @return The entry of the section in the section directory
+     * @throws IOException If the section can't be written
+     */
+    private static Section writeSection(FileChannel channel, int id, SectionWriter sectionWriter) throws IOException {
+
+        long offset = channel.position();
+        CRC32 crc = new CRC32();
+
+        // The stream isn't closed because that would close the channel
+
+        CheckedOutputStream out = new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), crc);
+        sectionWriter.write(out);
+        out.flush();
+
+        return new Section(id, offset, channel.position() - offset, (int) crc.getValue());
+    }
+
+    /**
+     * Write the document lengths section
+     *
+     * @param out       Where to write the section
+     * @param catalogue The document's catalogue
+     * @throws IOException If the section can't be written
+     */
+    private static void writeDocumentLengths(OutputStream out, IDocumentCatalogue catalogue) throws IOException {
+
+        int documentCount = catalogue.getDocumentIDsUpperBound();
+
+        writeVarInt(out, documentCount);
+
+        for (int documentID = 0; documentID < documentCount; documentID++)
+            writeVarInt(out, catalogue.getDocumentLength(documentID) + 1);
+    }
+
+    /**
+     * Write the catalogue section. The directory of each document is written once to a string table
+     *
+     * @param out       Where to write the section
+     * @param catalogue The document's catalogue
+     * @throws IOException If the section can't be written
+     */
+    private static void writeCatalogue(OutputStream out, IDocumentCatalogue catalogue) throws IOException {
+
+        int documentCount = catalogue.getDocumentIDsUpperBound();
+
+        // Build the string table of directories. Each directory keeps its trailing separator
+
+        Map<String, Integer> directories = new LinkedHashMap<>();
+
+        for (int documentID = 0; documentID < documentCount; documentID++) {
+
+            String documentURL = catalogue.getDocumentURLByID(documentID);
+
+            if (documentURL != null)
+                directories.putIfAbsent(documentURL.substring(0, directoryLength(documentURL)), directories.size());
+        }
+
+        writeVarInt(out, documentCount);
+        writeVarInt(out, directories.size());
+
+        for (String directory : directories.keySet())
+            writeString(out, directory);
+
+        // Write each document referencing its directory
+
+        for (int documentID = 0; documentID < documentCount; documentID++) {
+
+            String documentURL = catalogue.getDocumentURLByID(documentID);
+            DocumentMetadata metadata = catalogue.getDocumentMetadataByID(documentID);
+
+            int flags = 0;
+            if (documentURL != null) flags |= DOCUMENT_PRESENT;
+            if (metadata != null) flags |= DOCUMENT_HAS_METADATA;
+            if (metadata != null && metadata.getFileKey() != null) flags |= DOCUMENT_HAS_FILE_KEY;
+
+            out.write(flags);
+
+            if (documentURL != null) {
+                int directoryLength = directoryLength(documentURL);
+
+                writeVarInt(out, directories.get(documentURL.substring(0, directoryLength)));
+                writeString(out, documentURL.substring(directoryLength));
+            }
+
+            if (metadata != null) {
+                writeVarLong(out, metadata.getSize());
+                writeVarLong(out, metadata.getLastModified());
+                if (metadata.getFileKey() != null) writeString(out, metadata.getFileKey());
+            }
+        }
+    }
+
+    /**
+     * Write the postings section and, at the same time, build the dictionary section and the offsets of its blocks
+     *
+     * @param out           Where to write the postings section
+     * @param invertedIndex The sorted inverted index
+     * @param dictionary    Where to write the dictionary section
+     * @param blockOffsets  Where to add the offset of each block of the dictionary section
+     * @throws IOException If the section can't be written
+     */
+    private static void writePostingsAndDictionary(OutputStream out, Map<String, Occurrences> invertedIndex,
+                                                   ByteArrayOutputStream dictionary, List<Long> blockOffsets) throws IOException {
+
+        ByteArrayOutputStream termPostings = new ByteArrayOutputStream(); // Postings of the current term
+        long postingsOffset = 0; // Offset of the postings of the current term within the section
+        String previousTerm = null;
+        int termIndex = 0;
+
+        writeVarInt(dictionary, invertedIndex.size());
+        writeVarInt(dictionary, DICTIONARY_BLOCK_SIZE);
+
+        for (Map.Entry<String, Occurrences> tokenEntry : invertedIndex.entrySet()) {
+
+            String term = tokenEntry.getKey();
+            Occurrences occurrences = tokenEntry.getValue();
+
+            // Encode the postings list as document ID deltas and frequencies
+
+            termPostings.reset();
+            int previousDocumentID = 0;
+
+            for (int i = 0; i < occurrences.getDocumentCount(); i++) {
+                writeVarInt(termPostings, occurrences.getDocumentID(i) - previousDocumentID);
+                writeVarInt(termPostings, occurrences.getFrequency(i));
+                previousDocumentID = occurrences.getDocumentID(i);
+            }
+
+            // Front-code the term. The first term of each block is written in full
+
+            int prefixLength = 0;
+
+            if (termIndex % DICTIONARY_BLOCK_SIZE == 0) {
+                blockOffsets.add((long) dictionary.size());
+                writeVarLong(dictionary, postingsOffset);
+            } else {
+                prefixLength = commonPrefixLength(previousTerm, term);
+            }
+
+            writeVarInt(dictionary, prefixLength);
+            writeString(dictionary, term.substring(prefixLength));
+            writeVarInt(dictionary, occurrences.getDocumentCount());
+            writeVarInt(dictionary, occurrences.getGlobalFrequency());
+            writeVarInt(dictionary, termPostings.size());
+
+            termPostings.writeTo(out);
+
+            postingsOffset += termPostings.size();
+            previousTerm = term;
+            termIndex++;
+        }
+    }
+
+    /**
+     * Write the positions section
+     *
+     * @param out           Where to write the section
+     * @param invertedIndex The sorted inverted index
+     * @throws IOException If the section can't be written
+     */
+    private static void writePositions(OutputStream out, Map<String, Occurrences> invertedIndex) throws IOException {
+
+        ByteArrayOutputStream termPositions = new ByteArrayOutputStream(); // Positions list of the current term
+        long[] offsets = new long[invertedIndex.size() + 1]; // Offset of each positions list, plus the table's
+        int termIndex = 0;
+
+        for (Occurrences occurrences : invertedIndex.values()) {
+
+            // Encode the positions of each document preceded by their length. Terms without positions are left empty
+
+            TermPositions positions = occurrences.readPositions();
+            termPositions.reset();
+
+            for (int i = 0; positions != null && i < occurrences.getDocumentCount(); i++) {
+                byte[] block = positions.getEncodedPositions(i);
+                writeVarInt(termPositions, block.length);
+                termPositions.write(block);
+            }
+
+            termPositions.writeTo(out);
+
+            offsets[termIndex + 1] = offsets[termIndex] + termPositions.size();
+            termIndex++;
+        }
+
+        // Write the positions table
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+
+        for (long offset : offsets)
+            dataOut.writeLong(offset);
+
+        dataOut.flush();
+    }
+
+    /**
+     * Write the block index section
+     *
+     * @param out          Where to write the section
+     * @param blockOffsets The offset of each block of the dictionary section
+     * @throws IOException If the section can't be written
+     */
+    private static void writeBlockIndex(OutputStream out, List<Long> blockOffsets) throws IOException {
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+
+        dataOut.writeInt(blockOffsets.size());
+
+        for (long blockOffset : blockOffsets)
+            dataOut.writeLong(blockOffset);
+
+        dataOut.flush();
+    }
+
+    /**
+     * @param documentURL A document URL
+     * @return Length of the directory part of the URL, including its trailing separator
+     */
+    private static int directoryLength(String documentURL) {
+        return Math.max(documentURL.lastIndexOf('/'), documentURL.lastIndexOf('\\')) + 1;
+    }
+
+    /**
+     * @param a A string
+     * @param b Another string
+     * @return Number of leading chars both strings share, never splitting a surrogate pair
+     */
+    private static int commonPrefixLength(String a, String b) {
+
+        int length = 0;
+        int maxLength = Math.min(a.length(), b.length());
+
+        while (length < maxLength && a.charAt(length) == b.charAt(length))
+            length++;
+
+        if (length > 0 && Character.isHighSurrogate(a.charAt(length - 1))) length--;
+
+        return length;
+    }
+
+    /**
+     * Writes the contents of a section
+     */
+    @FunctionalInterface
+    private interface SectionWriter {
+
+        /**
+         * @param out Where to write the section's contents
+         * @throws IOException If the contents can't be written
+         */
+        void write(OutputStream out) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,166 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable node of a boolean query: either a single term, a wildcard pattern (WILDCARD), a conjunction (AND) or
+ * disjunction (OR) of clauses, the negation (NOT) of a clause, a phrase (PHRASE) of consecutive terms or a pair of
+ * terms near each other (NEAR). The clauses of phrases and proximity queries are always single terms
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see BooleanQueryParser
+ * @see BooleanQueryEvaluator
+ */
+public final class BooleanQuery {
+
+    private final Operator operator;
+    private final String term; // Normalized term or pattern. Only for term and wildcard queries
+    private final List<BooleanQuery> clauses; // Operands of the operator. Empty for term queries
+    private final int distance; // Maximum distance in tokens between both terms. Only for proximity queries
+
+    private BooleanQuery(Operator operator, String term, List<BooleanQuery> clauses, int distance) {
+        this.operator = operator;
+        this.term = term;
+        this.clauses = clauses;
+        this.distance = distance;
+    }
+
+    /**
+     * @param term A normalized term
+     * @return A query matching the documents where the term occurs
+     */
+    public static BooleanQuery term(String term) {
+        return new BooleanQuery(Operator.TERM, term, Collections.emptyList(), 0);
+    }
+
+    /**
+     * @param pattern A normalized pattern with wildcards
+     * @return A query matching the documents where any term matching the pattern occurs
+     * @see es.unex.giiis.ribw.jgarciapft.WildcardIndex
+     */
+    public static BooleanQuery wildcard(String pattern) {
+        return new BooleanQuery(Operator.WILDCARD, pattern, Collections.emptyList(), 0);
+    }
+
+    /**
+     * @param clauses At least one clause
+     * @return A query matching the documents that match every clause
+     */
+    public static BooleanQuery and(List<BooleanQuery> clauses) {
+        return clauses.size() == 1 ? clauses.get(0) : new BooleanQuery(Operator.AND, null, List.copyOf(clauses), 0);
+    }
+
+    /**
+     * @param clauses At least one clause
+     * @return A query matching the documents that match any clause
+     */
+    public static BooleanQuery or(List<BooleanQuery> clauses) {
+        return clauses.size() == 1 ? clauses.get(0) : new BooleanQuery(Operator.OR, null, List.copyOf(clauses), 0);
+    }
+
+    /**
+     * @param clause A clause
+     * @return A query matching the documents that don't match the clause
+     */
+    public static BooleanQuery not(BooleanQuery clause) {
+        return new BooleanQuery(Operator.NOT, null, List.of(clause), 0);
+    }
+
+    /**
+     * @param terms At least one normalized term, in order
+     * @return A query matching the documents where the terms occur one right after another
+     */
+    public static BooleanQuery phrase(List<String> terms) {
+
+        if (terms.size() == 1) return term(terms.get(0));
+
+        List<BooleanQuery> clauses = new ArrayList<>(terms.size());
+
+        for (String term : terms)
+            clauses.add(term(term));
+
+        return new BooleanQuery(Operator.PHRASE, null, List.copyOf(clauses), 0);
+    }
+
+    /**
+     * @param first    A normalized term
+     * @param second   Another normalized term
+     * @param distance Maximum distance in tokens between both terms. At least one
+     * @return A query matching the documents where the terms occur, in any order, at most the distance apart
+     */
+    public static BooleanQuery near(String first, String second, int distance) {
+        return new BooleanQuery(Operator.NEAR, null, List.of(term(first), term(second)), distance);
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public List<BooleanQuery> getClauses() {
+        return clauses;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return The terms whose documents the query matches, that is, every term not under a negation, in order of
+     * appearance. Wildcard patterns are included as they are
+     */
+    public List<String> getPositiveTerms() {
+
+        List<String> positiveTerms = new ArrayList<>();
+        collectPositiveTerms(positiveTerms);
+
+        return positiveTerms;
+    }
+
+    private void collectPositiveTerms(List<String> positiveTerms) {
+
+        if (operator == Operator.TERM || operator == Operator.WILDCARD) positiveTerms.add(term);
+        else if (operator != Operator.NOT)
+            for (BooleanQuery clause : clauses)
+                clause.collectPositiveTerms(positiveTerms);
+    }
+
+    /**
+     * @return The query written with the same syntax the parser accepts, with every clause parenthesized
+     */
+    @Override
+    public String toString() {
+
+        switch (operator) {
+            case TERM:
+            case WILDCARD:
+                return term;
+            case NOT:
+                return "NOT " + clauses.get(0);
+            case PHRASE:
+                return clauses.stream()
+                        .map(BooleanQuery::toString)
+                        .collect(Collectors.joining(" ", "\"", "\""));
+            case NEAR:
+                return "(" + clauses.get(0) + " NEAR/" + distance + " " + clauses.get(1) + ")";
+            default:
+                return clauses.stream()
+                        .map(BooleanQuery::toString)
+                        .collect(Collectors.joining(" " + operator + " ", "(", ")"));
+        }
+    }
+
+    /**
+     * Operators of boolean queries
+     */
+    public enum Operator {
+        TERM, WILDCARD, AND, OR, NOT, PHRASE, NEAR
+    }
+
+}
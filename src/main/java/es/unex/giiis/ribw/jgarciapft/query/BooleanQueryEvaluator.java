@@ -0,0 +1,432 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import es.unex.giiis.ribw.jgarciapft.CompiledDictionary;
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+import es.unex.giiis.ribw.jgarciapft.InvertedIndex;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+import es.unex.giiis.ribw.jgarciapft.TermPositions;
+import es.unex.giiis.ribw.jgarciapft.WildcardIndex;
+
+import java.util.*;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_WILDCARD_EXPANSION;
+
+/**
+ * Evaluates boolean queries over an inverted index. The postings lists of the inverted index are combined as they are,
+ * never copied, and the partial frequency of each matched document is the sum of the partial frequencies of the terms
+ * it matched (negated terms aren't counted)
+ * <p>
+ * Conjunctions are planned from their estimated result sizes: the clause with the shortest postings list is evaluated
+ * first and the rest are intersected with the running result in increasing size order, so each intersection walks the
+ * running result and gallops through the other clause. Once the running result is empty the remaining clauses aren't
+ * evaluated at all. Negated clauses of a conjunction are subtracted from the running result at the end, instead of
+ * being complemented against every document
+ * <p>
+ * Wildcard patterns are expanded with the inverted index's wildcard index into at most
+ * {@link es.unex.giiis.ribw.jgarciapft.Config#MAX_WILDCARD_EXPANSION} terms, whose postings lists are merged. The
+ * partial frequency of each matched document is the sum of the frequencies of the expanded terms it contains
+ * <p>
+ * Phrases and proximity queries need an inverted index that records positions. Their candidate documents are the
+ * intersection of the postings lists of their terms, walked from the rarest term onwards, and the positions of the
+ * terms are only decoded for the candidates. The partial frequency of each matched document is the number of times
+ * the phrase, or the first term near the second one, occurs in it. Words of a phrase the indexer discards, because
+ * they're stopwords or aren't in the thesaurus, still take up their position between the indexable ones, so any token
+ * matches them. At either end of the phrase they're ignored. An indexable word that no document contains matches
+ * nothing
+ * <p>
+ * Each evaluator works on a single inverted index and remembers the postings lists it looks up, so it isn't safe for
+ * concurrent use
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class BooleanQueryEvaluator {
+
+    private static final PostingsList NO_DOCUMENTS = new PostingsList();
+
+    private final InvertedIndex invertedIndex; // The inverted index queried
+    private final Map<String, IPostingsList> postingsLists; // Postings lists looked up so far, by term
+    private final Map<String, TermPositions> termPositions; // Positions lists read so far, by term
+    private final Map<String, List<String>> expansions; // Terms each wildcard pattern expanded to so far
+    private PostingsList allDocuments; // Every catalogued document. Only built to evaluate standalone negations
+    private CompiledDictionary indexableTerms; // Terms the indexer keeps. Only fetched to evaluate phrases
+
+    /**
+     * @param invertedIndex The inverted index queried
+     */
+    public BooleanQueryEvaluator(InvertedIndex invertedIndex) {
+        this.invertedIndex = invertedIndex;
+
+        postingsLists = new HashMap<>();
+        termPositions = new HashMap<>();
+        expansions = new HashMap<>();
+        allDocuments = null;
+        indexableTerms = null;
+    }
+
+    /**
+     * @param query A boolean query
+     * @return The documents matching the query. It must not be modified, as it may be a postings list of the inverted
+     * index
+     * @throws IllegalStateException    If the query has phrases or proximity queries and the inverted index doesn't
+     *                                  record the positions of their terms, or the query has phrases and the terms
+     *                                  the inverted index was built with are unknown
+     * @throws IllegalArgumentException If a wildcard pattern of the query matches too many terms
+     */
+    public IPostingsList evaluate(BooleanQuery query) {
+
+        switch (query.getOperator()) {
+            case TERM:
+                return lookup(query.getTerm());
+            case WILDCARD:
+                return evaluateWildcard(query.getTerm());
+            case AND:
+                return evaluateConjunction(query.getClauses());
+            case OR:
+                return evaluateDisjunction(query.getClauses());
+            case PHRASE:
+                return evaluatePhrase(query.getClauses());
+            case NEAR:
+                return evaluateNear(query);
+            default: // NOT
+                return PostingsOperations.difference(getAllDocuments(), evaluate(query.getClauses().get(0)));
+        }
+    }
+
+    /**
+     * @param query A boolean query
+     * @return An upper bound of the number of documents matching the query, computed without combining postings lists
+     */
+    public int estimateDocumentCount(BooleanQuery query) {
+
+        switch (query.getOperator()) {
+            case TERM:
+                return lookup(query.getTerm()).getDocumentCount();
+            case WILDCARD:
+                long expansionSum = 0;
+
+                for (String term : expand(query.getTerm()))
+                    expansionSum += lookup(term).getDocumentCount();
+
+                return (int) Math.min(expansionSum, Integer.MAX_VALUE);
+            case AND:
+                int minimum = Integer.MAX_VALUE;
+
+                for (BooleanQuery clause : query.getClauses())
+                    if (clause.getOperator() != BooleanQuery.Operator.NOT)
+                        minimum = Math.min(minimum, estimateDocumentCount(clause));
+
+                return minimum != Integer.MAX_VALUE ? minimum : invertedIndex.getDocumentCatalogue().getDocumentIDsUpperBound();
+            case OR:
+                long sum = 0;
+
+                for (BooleanQuery clause : query.getClauses())
+                    sum += estimateDocumentCount(clause);
+
+                return (int) Math.min(sum, Integer.MAX_VALUE);
+            case PHRASE:
+            case NEAR:
+                // Bounded by the rarest indexable term. Words of a phrase the indexer discards match anything
+
+                int rarest = Integer.MAX_VALUE;
+
+                for (BooleanQuery clause : query.getClauses())
+                    if (query.getOperator() == BooleanQuery.Operator.NEAR || isIndexable(clause.getTerm()))
+                        rarest = Math.min(rarest, lookup(clause.getTerm()).getDocumentCount());
+
+                return rarest != Integer.MAX_VALUE ? rarest : 0;
+            default: // NOT
+                return invertedIndex.getDocumentCatalogue().getDocumentIDsUpperBound();
+        }
+    }
+
+    /**
+     * @param query A boolean query
+     * @return The terms whose documents the query matches, with each wildcard pattern replaced by the terms it expands
+     * to. These are the terms its results are scored for
+     * @throws IllegalArgumentException If a wildcard pattern of the query matches too many terms
+     * @see BooleanQuery#getPositiveTerms()
+     */
+    public List<String> getPositiveTerms(BooleanQuery query) {
+
+        List<String> positiveTerms = new ArrayList<>();
+
+        for (String term : query.getPositiveTerms()) {
+            if (WildcardIndex.isPattern(term)) positiveTerms.addAll(expand(term));
+            else positiveTerms.add(term);
+        }
+
+        return positiveTerms;
+    }
+
+    /**
+     * @param clauses Clauses of a conjunction
+     * @return The documents matching every clause
+     */
+    private IPostingsList evaluateConjunction(List<BooleanQuery> clauses) {
+
+        // Split the positive clauses from the negated ones, and order the positive ones by increasing estimated size
+
+        List<BooleanQuery> positiveClauses = new ArrayList<>();
+        List<BooleanQuery> negatedClauses = new ArrayList<>();
+
+        for (BooleanQuery clause : clauses) {
+            if (clause.getOperator() == BooleanQuery.Operator.NOT) negatedClauses.add(clause.getClauses().get(0));
+            else positiveClauses.add(clause);
+        }
+
+        positiveClauses.sort(Comparator.comparingInt(this::estimateDocumentCount));
+
+        // Intersect from the shortest clause onwards, stopping as soon as nothing is left
+
+        IPostingsList result = positiveClauses.isEmpty() ? getAllDocuments() : evaluate(positiveClauses.get(0));
+
+        for (int i = 1; i < positiveClauses.size() && result.getDocumentCount() > 0; i++)
+            result = PostingsOperations.intersect(result, evaluate(positiveClauses.get(i)));
+
+        // Subtract the negated clauses
+
+        for (int i = 0; i < negatedClauses.size() && result.getDocumentCount() > 0; i++)
+            result = PostingsOperations.difference(result, evaluate(negatedClauses.get(i)));
+
+        return result;
+    }
+
+    /**
+     * @param clauses Clauses of a disjunction
+     * @return The documents matching any clause
+     */
+    private IPostingsList evaluateDisjunction(List<BooleanQuery> clauses) {
+
+        IPostingsList result = evaluate(clauses.get(0));
+
+        for (int i = 1; i < clauses.size(); i++)
+            result = PostingsOperations.union(result, evaluate(clauses.get(i)));
+
+        return result;
+    }
+
+    /**
+     * @param pattern A normalized wildcard pattern
+     * @return The documents where any term matching the pattern occurs
+     */
+    private IPostingsList evaluateWildcard(String pattern) {
+
+        List<IPostingsList> matchingPostingsLists = new ArrayList<>();
+
+        for (String term : expand(pattern))
+            matchingPostingsLists.add(lookup(term));
+
+        return PostingsOperations.union(matchingPostingsLists);
+    }
+
+    /**
+     * @param clauses Terms of a phrase, in order
+     * @return The documents where the phrase occurs
+     */
+    private IPostingsList evaluatePhrase(List<BooleanQuery> clauses) {
+
+        // Only the indexable terms are matched, the words the indexer discards are left as gaps between them. Offsets
+        // are relative to the first indexable term, so discarded words before it are ignored
+
+        List<Occurrences> phraseTerms = new ArrayList<>(clauses.size());
+        List<String> indexedTerms = new ArrayList<>(clauses.size());
+        int[] offsets = new int[clauses.size()];
+        int firstIndexed = -1;
+
+        for (int i = 0; i < clauses.size(); i++) {
+
+            String term = clauses.get(i).getTerm();
+
+            if (!isIndexable(term)) continue;
+
+            // An indexable term no document contains can't be matched
+
+            IPostingsList postingsList = lookup(term);
+
+            if (postingsList == NO_DOCUMENTS) return NO_DOCUMENTS;
+            if (firstIndexed < 0) firstIndexed = i;
+
+            offsets[phraseTerms.size()] = i - firstIndexed;
+            phraseTerms.add((Occurrences) postingsList);
+            indexedTerms.add(term);
+        }
+
+        if (phraseTerms.isEmpty()) return NO_DOCUMENTS;
+
+        int[] phraseOffsets = Arrays.copyOf(offsets, phraseTerms.size());
+
+        return matchPositions(phraseTerms, indexedTerms,
+                positions -> PositionsOperations.countPhraseOccurrences(positions, phraseOffsets));
+    }
+
+    /**
+     * @param query A proximity query
+     * @return The documents where the first term occurs near the second one
+     */
+    private IPostingsList evaluateNear(BooleanQuery query) {
+
+        String first = query.getClauses().get(0).getTerm();
+        String second = query.getClauses().get(1).getTerm();
+        IPostingsList firstPostings = lookup(first);
+        IPostingsList secondPostings = lookup(second);
+
+        if (firstPostings == NO_DOCUMENTS || secondPostings == NO_DOCUMENTS) return NO_DOCUMENTS;
+
+        return matchPositions(List.of((Occurrences) firstPostings, (Occurrences) secondPostings), List.of(first, second),
+                positions -> PositionsOperations.countNearOccurrences(positions[0], positions[1], query.getDistance()));
+    }
+
+    /**
+     * Match the positions of some terms within each document where all of them occur
+     *
+     * @param occurrences The terms' occurrences
+     * @param terms       The terms, parallel to their occurrences
+     * @param matcher     Counts the matches within a document from the positions of each term
+     * @return The documents with at least one match, along with their number of matches
+     */
+    private IPostingsList matchPositions(List<Occurrences> occurrences, List<String> terms, PositionsMatcher matcher) {
+
+        int termCount = occurrences.size();
+        TermPositions[] positionsLists = new TermPositions[termCount];
+
+        for (int i = 0; i < termCount; i++)
+            positionsLists[i] = readPositions(terms.get(i), occurrences.get(i));
+
+        // Walk the rarest term's postings list and gallop through the rest
+
+        Integer[] order = new Integer[termCount];
+
+        for (int i = 0; i < termCount; i++)
+            order[i] = i;
+
+        Arrays.sort(order, Comparator.comparingInt(i -> occurrences.get(i).getDocumentCount()));
+
+        Occurrences rarest = occurrences.get(order[0]);
+        int[] cursors = new int[termCount];
+        int[][] documentPositions = new int[termCount][];
+        PostingsList matches = new PostingsList();
+
+        candidates:
+        for (int i = 0; i < rarest.getDocumentCount(); i++) {
+
+            int documentID = rarest.getDocumentID(i);
+            cursors[order[0]] = i;
+
+            for (int j = 1; j < termCount; j++) {
+
+                Occurrences termOccurrences = occurrences.get(order[j]);
+                int cursor = PostingsOperations.gallop(termOccurrences, cursors[order[j]], documentID);
+                cursors[order[j]] = cursor;
+
+                if (cursor == termOccurrences.getDocumentCount()) break candidates;
+                if (termOccurrences.getDocumentID(cursor) != documentID) continue candidates;
+            }
+
+            // Every term occurs in the document, decode their positions within it
+
+            for (int j = 0; j < termCount; j++)
+                documentPositions[j] = positionsLists[j].getPositions(cursors[j]);
+
+            int matchCount = matcher.countMatches(documentPositions);
+
+            if (matchCount > 0) matches.add(documentID, matchCount);
+        }
+
+        return matches;
+    }
+
+    /**
+     * @param term        A normalized term
+     * @param occurrences The term's occurrences
+     * @return The term's positions
+     * @throws IllegalStateException If the inverted index doesn't record the term's positions
+     */
+    private TermPositions readPositions(String term, Occurrences occurrences) {
+
+        return termPositions.computeIfAbsent(term, key -> {
+
+            TermPositions positions = occurrences.readPositions();
+
+            if (positions == null)
+                throw new IllegalStateException("The inverted index doesn't record the positions of '" + key +
+                        "'. Rebuild it with positions (-P) to search phrases and NEAR/k");
+
+            return positions;
+        });
+    }
+
+    /**
+     * @param term A normalized term
+     * @return The term's postings list, or an empty one if the term isn't indexed
+     */
+    private IPostingsList lookup(String term) {
+
+        return postingsLists.computeIfAbsent(term, key -> {
+
+            Occurrences occurrences = key.isEmpty() ? null : invertedIndex.getInvertedIndex().get(key);
+
+            return occurrences != null ? occurrences : NO_DOCUMENTS;
+        });
+    }
+
+    /**
+     * @param term A normalized term
+     * @return If the indexer keeps the term, that is, if it's in the thesaurus and isn't a stopword
+     * @throws IllegalStateException If the terms the inverted index was built with are unknown
+     */
+    private boolean isIndexable(String term) {
+
+        if (indexableTerms == null) indexableTerms = invertedIndex.getIndexableTerms();
+
+        return indexableTerms.contains(term);
+    }
+
+    /**
+     * @param pattern A normalized wildcard pattern
+     * @return The indexed terms matching the pattern
+     * @throws IllegalArgumentException If the pattern matches too many terms
+     */
+    private List<String> expand(String pattern) {
+
+        List<String> expansion = expansions.get(pattern);
+
+        if (expansion == null) {
+            expansion = invertedIndex.getWildcardIndex().expand(pattern, MAX_WILDCARD_EXPANSION);
+            expansions.put(pattern, expansion);
+        }
+
+        return expansion;
+    }
+
+    /**
+     * @return Every catalogued document, with partial frequency zero
+     */
+    private IPostingsList getAllDocuments() {
+
+        if (allDocuments == null) {
+
+            IDocumentCatalogue catalogue = invertedIndex.getDocumentCatalogue();
+            allDocuments = new PostingsList(catalogue.getDocumentIDsUpperBound());
+
+            for (int documentID = 0; documentID < catalogue.getDocumentIDsUpperBound(); documentID++)
+                if (catalogue.getDocumentURLByID(documentID) != null) allDocuments.add(documentID, 0);
+        }
+
+        return allDocuments;
+    }
+
+    /**
+     * Counts the matches of a positional query within a document
+     */
+    @FunctionalInterface
+    private interface PositionsMatcher {
+
+        /**
+         * @param positions Positions of each term within the document
+         * @return Number of matches within the document
+         */
+        int countMatches(int[][] positions);
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import es.unex.giiis.ribw.jgarciapft.TermAutomaton;
+import es.unex.giiis.ribw.jgarciapft.Tokenizer;
+import es.unex.giiis.ribw.jgarciapft.WildcardIndex;
+import es.unex.giiis.ribw.jgarciapft.utils.NormalizationUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.TOKEN_DELIMITERS;
+
+/**
+ * Parses boolean queries. Terms are combined with the uppercase operators AND, OR and NOT, and grouped with
+ * parentheses. NOT binds tighter than AND, which binds tighter than OR, and adjacent terms without an operator between
+ * them are combined with AND. Terms are normalized the same way as the inverted index
+ * <p>
+ * Text between double quotes is a phrase, normalized and broken into terms the same way as the documents' content.
+ * Two single terms joined by NEAR/k, with k at least one, match when they occur at most k tokens apart in any order.
+ * NEAR/k binds tighter than NOT
+ * <p>
+ * Terms with the wildcards * (any run of chars) and ? (any single char) are patterns, which match the documents of
+ * every indexed term they describe. Phrases can't have wildcards
+ * <p>
+ * Grammar:
+ * <pre>
+ * query   := or
+ * or      := and ("OR" and)*
+ * and     := unary (["AND"] unary)*
+ * unary   := "NOT" unary | near
+ * near    := primary ["NEAR/k" primary]
+ * primary := "(" or ")" | '"' phrase '"' | term
+ * </pre>
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class BooleanQueryParser {
+
+    private static final Tokenizer TOKENIZER = new Tokenizer(TOKEN_DELIMITERS);
+    private static final String NEAR_PREFIX = "NEAR/";
+
+    private List<String> tokens; // Tokens of the query being parsed
+    private int position; // Position of the next token
+
+    /**
+     * @param query The query's text
+     * @return The parsed query
+     * @throws IllegalArgumentException If the query is empty or malformed
+     */
+    public BooleanQuery parse(String query) {
+
+        tokens = lex(query);
+        position = 0;
+
+        if (tokens.isEmpty()) throw new IllegalArgumentException("The query is empty");
+
+        BooleanQuery parsedQuery = parseOr();
+
+        if (position < tokens.size())
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "'");
+
+        return parsedQuery;
+    }
+
+    private BooleanQuery parseOr() {
+
+        List<BooleanQuery> clauses = new ArrayList<>();
+        clauses.add(parseAnd());
+
+        while (accept("OR"))
+            clauses.add(parseAnd());
+
+        return BooleanQuery.or(clauses);
+    }
+
+    private BooleanQuery parseAnd() {
+
+        List<BooleanQuery> clauses = new ArrayList<>();
+        clauses.add(parseUnary());
+
+        // Either an explicit AND or the start of another clause
+
+        while (accept("AND") || (position < tokens.size() && !peek("OR") && !peek(")")))
+            clauses.add(parseUnary());
+
+        return BooleanQuery.and(clauses);
+    }
+
+    private BooleanQuery parseUnary() {
+        return accept("NOT") ? BooleanQuery.not(parseUnary()) : parseNear();
+    }
+
+    private BooleanQuery parseNear() {
+
+        BooleanQuery first = parsePrimary();
+
+        if (position == tokens.size() || !isNear(tokens.get(position))) return first;
+
+        int distance = parseDistance(tokens.get(position++));
+        BooleanQuery second = parsePrimary();
+
+        if (first.getOperator() != BooleanQuery.Operator.TERM || second.getOperator() != BooleanQuery.Operator.TERM)
+            throw new IllegalArgumentException("NEAR/" + distance + " only joins single terms");
+
+        return BooleanQuery.near(first.getTerm(), second.getTerm(), distance);
+    }
+
+    private BooleanQuery parsePrimary() {
+
+        if (position == tokens.size()) throw new IllegalArgumentException("Missing term at the end of the query");
+
+        if (accept("(")) {
+
+            BooleanQuery group = parseOr();
+
+            if (!accept(")")) throw new IllegalArgumentException("Missing ')'");
+
+            return group;
+        }
+
+        String token = tokens.get(position);
+
+        if (token.equals(")") || token.equals("AND") || token.equals("OR") || isNear(token))
+            throw new IllegalArgumentException("Missing term before '" + token + "'");
+
+        position++;
+
+        // Phrase tokens keep their opening quote
+
+        if (token.startsWith("\"")) return parsePhrase(token.substring(1));
+
+        String term = NormalizationUtils.normalizeStringNFD(token);
+
+        return WildcardIndex.isPattern(term) ? BooleanQuery.wildcard(term) : BooleanQuery.term(term);
+    }
+
+    /**
+     * @param phrase The text between the quotes of a phrase
+     * @return The phrase query. A phrase of a single term is a term query
+     * @throws IllegalArgumentException If the phrase is empty or has wildcards
+     */
+    private static BooleanQuery parsePhrase(String phrase) {
+
+        char[] buffer = new char[phrase.length()];
+        int length = NormalizationUtils.normalizeStringNFD(phrase, buffer);
+        List<String> terms = new ArrayList<>();
+
+        // Wildcards are token delimiters, so they would silently split a pattern into plain terms
+
+        for (int i = 0; i < length; i++)
+            if (TermAutomaton.isWildcard(buffer[i]))
+                throw new IllegalArgumentException("Wildcards aren't supported inside phrases \"" + phrase + "\"");
+
+        TOKENIZER.tokenize(buffer, 0, length, (tokenBuffer, offset, tokenLength) ->
+                terms.add(new String(tokenBuffer, offset, tokenLength)));
+
+        if (terms.isEmpty()) throw new IllegalArgumentException("Empty phrase \"" + phrase + "\"");
+
+        return BooleanQuery.phrase(terms);
+    }
+
+    /**
+     * @param token A NEAR/k token
+     * @return The distance k
+     */
+    private static int parseDistance(String token) {
+
+        try {
+            int distance = Integer.parseInt(token.substring(NEAR_PREFIX.length()));
+
+            if (distance >= 1) return distance;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new IllegalArgumentException("Invalid distance in '" + token + "'. It must be a positive integer");
+    }
+
+    /**
+     * @param token A token
+     * @return If the token is a proximity operator
+     */
+    private static boolean isNear(String token) {
+        return token.startsWith(NEAR_PREFIX);
+    }
+
+    /**
+     * @param token A token
+     * @return If the next token is the given one, which is then consumed
+     */
+    private boolean accept(String token) {
+
+        if (!peek(token)) return false;
+
+        position++;
+
+        return true;
+    }
+
+    /**
+     * @param token A token
+     * @return If the next token is the given one
+     */
+    private boolean peek(String token) {
+        return position < tokens.size() && tokens.get(position).equals(token);
+    }
+
+    /**
+     * @param query The query's text
+     * @return The tokens of the query: parentheses, phrases and runs of chars that are neither whitespace, parentheses
+     * nor quotes. Phrases are kept along with their opening quote, without the closing one
+     * @throws IllegalArgumentException If a phrase isn't closed
+     */
+    private static List<String> lex(String query) {
+
+        List<String> tokens = new ArrayList<>();
+        int tokenStart = -1;
+
+        for (int i = 0; i <= query.length(); i++) {
+
+            char c = i < query.length() ? query.charAt(i) : ' ';
+            boolean delimiter = Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+
+            if (delimiter && tokenStart >= 0) {
+                tokens.add(query.substring(tokenStart, i));
+                tokenStart = -1;
+            }
+
+            if (c == '"') {
+
+                int phraseEnd = query.indexOf('"', i + 1);
+
+                if (phraseEnd < 0) throw new IllegalArgumentException("Missing closing '\"'");
+
+                tokens.add(query.substring(i, phraseEnd));
+                i = phraseEnd;
+
+            } else if (c == '(' || c == ')') tokens.add(String.valueOf(c));
+            else if (!delimiter && tokenStart < 0) tokenStart = i;
+        }
+
+        return tokens;
+    }
+
+}
@@ -0,0 +1,29 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+/**
+ * Read-only postings list: the documents where something occurs, sorted by increasing document ID, along with a
+ * partial frequency for each one. Implemented both by the occurrences of the inverted index and by the intermediate
+ * results of a query, so queries can operate on the inverted index's postings lists without copying them
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public interface IPostingsList {
+
+    /**
+     * @return Number of documents in the postings list
+     */
+    int getDocumentCount();
+
+    /**
+     * @param index Position within the postings list, lower than {@link IPostingsList#getDocumentCount()}
+     * @return The ID of the document at that position. Document IDs are sorted in increasing order
+     */
+    int getDocumentID(int index);
+
+    /**
+     * @param index Position within the postings list, lower than {@link IPostingsList#getDocumentCount()}
+     * @return The partial frequency of the document at that position
+     */
+    int getFrequency(int index);
+
+}
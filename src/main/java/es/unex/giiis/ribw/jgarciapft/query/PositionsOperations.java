@@ -0,0 +1,97 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+/**
+ * Operations over the positions of terms within a single document, each one sorted in increasing order. They walk the
+ * positions lists in a single linear merge, without allocating anything but the candidate starts of phrases
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.TermPositions
+ */
+public final class PositionsOperations {
+
+    private PositionsOperations() {
+    }
+
+    /**
+     * Count the occurrences of a phrase. The phrase starts at some position when each of its terms occurs at that
+     * position plus the term's offset within the phrase. Offsets may skip words that aren't indexed, any token matches
+     * them
+     *
+     * @param positions Positions of each indexed term of the phrase within the document
+     * @param offsets   Offset of each indexed term within the phrase, parallel to the positions
+     * @return Number of positions where the whole phrase starts
+     */
+    public static int countPhraseOccurrences(int[][] positions, int[] offsets) {
+
+        // Start from the term with the fewest positions, so the candidate starts are as few as possible
+
+        int anchor = 0;
+
+        for (int i = 1; i < positions.length; i++)
+            if (positions[i].length < positions[anchor].length) anchor = i;
+
+        int[] starts = new int[positions[anchor].length];
+        int count = 0;
+
+        for (int position : positions[anchor])
+            if (position >= offsets[anchor]) starts[count++] = position - offsets[anchor];
+
+        // Keep the candidate starts where each of the other terms occurs at its offset
+
+        for (int i = 0; i < positions.length && count > 0; i++) {
+
+            if (i == anchor) continue;
+
+            int[] termPositions = positions[i];
+            int kept = 0;
+            int cursor = 0;
+
+            for (int j = 0; j < count && cursor < termPositions.length; j++) {
+
+                int expected = starts[j] + offsets[i];
+
+                while (cursor < termPositions.length && termPositions[cursor] < expected)
+                    cursor++;
+
+                if (cursor < termPositions.length && termPositions[cursor] == expected) starts[kept++] = starts[j];
+            }
+
+            count = kept;
+        }
+
+        return count;
+    }
+
+    /**
+     * Count the occurrences of a term that have an occurrence of another term nearby, before or after it. Occurrences
+     * at the same position, as when both terms are the same, aren't counted as near each other
+     *
+     * @param first    Positions of the first term within the document
+     * @param second   Positions of the second term within the document
+     * @param distance Maximum distance in tokens between both occurrences
+     * @return Number of positions of the first term with a position of the second term at most the distance away
+     */
+    public static int countNearOccurrences(int[] first, int[] second, int distance) {
+
+        int count = 0;
+        int cursor = 0;
+
+        for (int position : first) {
+
+            // Skip the positions of the second term that are too far behind. They are too far for the rest, too
+
+            while (cursor < second.length && second[cursor] < (long) position - distance)
+                cursor++;
+
+            for (int i = cursor; i < second.length && second[i] <= (long) position + distance; i++) {
+                if (second[i] != position) {
+                    count++;
+                    break;
+                }
+            }
+        }
+
+        return count;
+    }
+
+}
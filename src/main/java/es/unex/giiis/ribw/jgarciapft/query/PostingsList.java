@@ -0,0 +1,65 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import java.util.Arrays;
+
+/**
+ * Growable postings list holding the intermediate or final results of a query. Documents are appended in increasing
+ * document ID order
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class PostingsList implements IPostingsList {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] documentIDs; // Sorted IDs of the documents
+    private int[] frequencies; // Partial frequency of each document, parallel to documentIDs
+    private int size; // Number of documents
+
+    public PostingsList() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize Number of documents the list is expected to hold, so it isn't grown while it's filled
+     */
+    public PostingsList(int expectedSize) {
+        documentIDs = expectedSize > 0 ? new int[expectedSize] : EMPTY;
+        frequencies = expectedSize > 0 ? new int[expectedSize] : EMPTY;
+        size = 0;
+    }
+
+    /**
+     * Append a document to the list
+     *
+     * @param documentID The document's ID. Greater than the ID of the last document
+     * @param frequency  The document's partial frequency
+     */
+    public void add(int documentID, int frequency) {
+
+        if (size == documentIDs.length) {
+            int newCapacity = Math.max(4, documentIDs.length + (documentIDs.length >> 1));
+            documentIDs = Arrays.copyOf(documentIDs, newCapacity);
+            frequencies = Arrays.copyOf(frequencies, newCapacity);
+        }
+
+        documentIDs[size] = documentID;
+        frequencies[size++] = frequency;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return size;
+    }
+
+    @Override
+    public int getDocumentID(int index) {
+        return documentIDs[index];
+    }
+
+    @Override
+    public int getFrequency(int index) {
+        return frequencies[index];
+    }
+
+}
@@ -0,0 +1,171 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set operations over postings lists sorted by document ID. The partial frequencies of a document present in both
+ * operands are added up
+ * <p>
+ * Intersections and differences walk the shorter operand and search each of its documents in the longer one with a
+ * galloping (exponential) search that resumes where the previous one stopped. Combining a rare and a common postings
+ * list then costs about the rare list's length times the logarithm of the gap between its documents within the common
+ * list, instead of the common list's length
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public final class PostingsOperations {
+
+    private PostingsOperations() {
+    }
+
+    /**
+     * @param first  A postings list
+     * @param second Another postings list
+     * @return The documents present in both lists
+     */
+    public static PostingsList intersect(IPostingsList first, IPostingsList second) {
+
+        // Walk the shorter list, gallop through the longer one
+
+        IPostingsList shorter = first.getDocumentCount() <= second.getDocumentCount() ? first : second;
+        IPostingsList longer = shorter == first ? second : first;
+
+        PostingsList intersection = new PostingsList(shorter.getDocumentCount());
+        int longerCount = longer.getDocumentCount();
+        int position = 0;
+
+        for (int i = 0; i < shorter.getDocumentCount() && position < longerCount; i++) {
+
+            int documentID = shorter.getDocumentID(i);
+            position = gallop(longer, position, documentID);
+
+            if (position < longerCount && longer.getDocumentID(position) == documentID)
+                intersection.add(documentID, shorter.getFrequency(i) + longer.getFrequency(position));
+        }
+
+        return intersection;
+    }
+
+    /**
+     * @param first  A postings list
+     * @param second Another postings list
+     * @return The documents present in either list
+     */
+    public static PostingsList union(IPostingsList first, IPostingsList second) {
+
+        int firstCount = first.getDocumentCount();
+        int secondCount = second.getDocumentCount();
+        PostingsList union = new PostingsList(Math.max(firstCount, secondCount));
+        int i = 0, j = 0;
+
+        // Merge both lists
+
+        while (i < firstCount || j < secondCount) {
+
+            if (j == secondCount || (i < firstCount && first.getDocumentID(i) < second.getDocumentID(j))) {
+                union.add(first.getDocumentID(i), first.getFrequency(i++));
+            } else if (i == firstCount || second.getDocumentID(j) < first.getDocumentID(i)) {
+                union.add(second.getDocumentID(j), second.getFrequency(j++));
+            } else {
+                union.add(first.getDocumentID(i), first.getFrequency(i++) + second.getFrequency(j++));
+            }
+        }
+
+        return union;
+    }
+
+    /**
+     * @param postingsLists Some postings lists
+     * @return The documents present in any list. The lists are merged in pairs, round after round, so each document is
+     * copied about log2(k) times instead of up to k times. It must not be modified, as it may be one of the lists
+     */
+    public static IPostingsList union(List<? extends IPostingsList> postingsLists) {
+
+        if (postingsLists.isEmpty()) return new PostingsList();
+
+        List<IPostingsList> round = new ArrayList<>(postingsLists);
+
+        while (round.size() > 1) {
+
+            List<IPostingsList> nextRound = new ArrayList<>((round.size() + 1) / 2);
+
+            for (int i = 0; i < round.size(); i += 2)
+                nextRound.add(i + 1 < round.size() ? union(round.get(i), round.get(i + 1)) : round.get(i));
+
+            round = nextRound;
+        }
+
+        return round.get(0);
+    }
+
+    /**
+     * @param first  A postings list
+     * @param second The postings list of the excluded documents
+     * @return The documents of the first list that aren't present in the second one, with their frequencies in the
+     * first list
+     */
+    public static PostingsList difference(IPostingsList first, IPostingsList second) {
+
+        PostingsList difference = new PostingsList(first.getDocumentCount());
+        int secondCount = second.getDocumentCount();
+        int position = 0;
+
+        for (int i = 0; i < first.getDocumentCount(); i++) {
+
+            int documentID = first.getDocumentID(i);
+            position = gallop(second, position, documentID);
+
+            if (position == secondCount || second.getDocumentID(position) != documentID)
+                difference.add(documentID, first.getFrequency(i));
+        }
+
+        return difference;
+    }
+
+    /**
+     * Galloping search. Probes positions at exponentially growing distances from the starting one until it overshoots
+     * the target, then binary searches the last gap. The cost is logarithmic on the distance skipped, not on the
+     * list's length
+     *
+     * @param postingsList The postings list
+     * @param from         Position where the search starts. Every document before it is known to be lower than the
+     *                     target
+     * @param target       The document ID searched
+     * @return The first position from the starting one whose document ID is greater than or equal to the target, or
+     * the list's length if there is none
+     */
+    public static int gallop(IPostingsList postingsList, int from, int target) {
+
+        int count = postingsList.getDocumentCount();
+
+        if (from >= count || postingsList.getDocumentID(from) >= target) return from;
+
+        // Gallop. The document at the low bound is always lower than the target
+
+        int low = from;
+        int step = 1;
+        int high = from + 1;
+
+        while (high < count && postingsList.getDocumentID(high) < target) {
+            low = high;
+            step <<= 1;
+            high = low + step;
+        }
+
+        high = Math.min(high, count);
+
+        // Binary search between both bounds. The document at the high bound, if any, isn't lower than the target
+
+        while (low + 1 < high) {
+
+            int middle = (low + high) >>> 1;
+
+            if (postingsList.getDocumentID(middle) < target) low = middle;
+            else high = middle;
+        }
+
+        return high;
+    }
+
+}
@@ -0,0 +1,99 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import es.unex.giiis.ribw.jgarciapft.InvertedIndex;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+import es.unex.giiis.ribw.jgarciapft.ranking.CollectionStatistics;
+import es.unex.giiis.ribw.jgarciapft.ranking.IScoringCriterion;
+import es.unex.giiis.ribw.jgarciapft.ranking.ScoredDocument;
+import es.unex.giiis.ribw.jgarciapft.ranking.TopKCollector;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * Ranks the documents matched by a search with a scoring criterion. Each matched document is scored once, when the
+ * ranking is created, as the sum of its scores for each of the search's terms. The term's postings list is galloped
+ * through, so rare matches of common terms don't walk the whole postings list
+ * <p>
+ * Results are retrieved a page at a time. Only the best results up to the end of the page are kept, in a bounded heap,
+ * so retrieving the first pages of a large set of matches costs O(n log k) instead of sorting every match
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class RankedRetrieval {
+
+    private final IPostingsList matches; // The matched documents
+    private final double[] scores; // Score of each matched document, parallel to matches
+
+    /**
+     * @param invertedIndex    The inverted index searched
+     * @param scoringCriterion Criterion used to score the matched documents
+     * @param matches          The documents matched by the search
+     * @param terms            The normalized terms the documents are scored for. Repeated terms are scored once, and
+     *                         terms that aren't indexed add nothing
+     */
+    public RankedRetrieval(InvertedIndex invertedIndex, IScoringCriterion scoringCriterion, IPostingsList matches,
+                           Collection<String> terms) {
+        this.matches = matches;
+
+        scores = new double[matches.getDocumentCount()];
+
+        CollectionStatistics statistics = invertedIndex.getCollectionStatistics();
+
+        for (String term : new LinkedHashSet<>(terms)) {
+
+            Occurrences occurrences = invertedIndex.getInvertedIndex().get(term);
+
+            if (occurrences == null || occurrences.getDocumentCount() == 0) continue;
+
+            int documentFrequency = occurrences.getDocumentCount();
+            int position = 0;
+
+            for (int i = 0; i < scores.length && position < documentFrequency; i++) {
+
+                int documentID = matches.getDocumentID(i);
+                position = PostingsOperations.gallop(occurrences, position, documentID);
+
+                if (position < documentFrequency && occurrences.getDocumentID(position) == documentID)
+                    scores[i] += scoringCriterion.score(occurrences.getFrequency(position), documentFrequency,
+                            statistics.getDocumentLength(documentID), statistics);
+            }
+        }
+    }
+
+    /**
+     * @return Number of matched documents
+     */
+    public int getDocumentCount() {
+        return scores.length;
+    }
+
+    /**
+     * @param offset Number of best results skipped
+     * @param count  Maximum number of results retrieved
+     * @return The results ranked from offset onwards, best first. Results with the same score rank by increasing
+     * document ID. Empty if there are no results past the offset
+     */
+    public ScoredDocument[] getPage(int offset, int count) {
+
+        if (offset >= scores.length || count <= 0) return new ScoredDocument[0];
+
+        // Keep the best results up to the end of the page. Matches are sorted by document ID, so breaking ties by
+        // their position breaks them by document ID
+
+        TopKCollector collector = new TopKCollector((int) Math.min((long) offset + count, scores.length));
+
+        for (int i = 0; i < scores.length; i++)
+            collector.offer(i, scores[i]);
+
+        int[] best = collector.drainSorted();
+        ScoredDocument[] page = new ScoredDocument[best.length - offset];
+
+        for (int i = offset; i < best.length; i++)
+            page[i - offset] = new ScoredDocument(matches.getDocumentID(best[i]), scores[best[i]],
+                    matches.getFrequency(best[i]));
+
+        return page;
+    }
+
+}
@@ -0,0 +1,75 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import es.unex.giiis.ribw.jgarciapft.InvertedIndex;
+import es.unex.giiis.ribw.jgarciapft.ResultPageCache;
+import es.unex.giiis.ribw.jgarciapft.ranking.IScoringCriterion;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs ranked searches of boolean queries and returns a page of their results at a time. Each search is carried on the
+ * inverted index provided at the time, and its pages are taken from a results cache when possible. It's safe for
+ * concurrent use, as long as the inverted indexes provided are
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see ResultPageCache
+ */
+public class RankedSearcher {
+
+    private final Supplier<InvertedIndex> invertedIndexSupplier; // Provides the inverted index searched
+    private final IScoringCriterion scoringCriterion; // Criterion to rank the results
+    private final ResultPageCache resultsCache; // Pages of ranked results of recent searches. Null to rank every search
+
+    /**
+     * @param invertedIndexSupplier Provides the most recent inverted index to be used to carry on each search
+     * @param scoringCriterion      Criterion to rank the results
+     * @param resultsCache          Pages of ranked results of recent searches, or null to rank every search
+     */
+    public RankedSearcher(Supplier<InvertedIndex> invertedIndexSupplier, IScoringCriterion scoringCriterion,
+                          ResultPageCache resultsCache) {
+        this.invertedIndexSupplier = invertedIndexSupplier;
+        this.scoringCriterion = scoringCriterion;
+        this.resultsCache = resultsCache;
+    }
+
+    /**
+     * @param query  A parsed query
+     * @param offset Number of best results skipped
+     * @param count  Maximum number of results of the page
+     * @return The page of ranked results from offset onwards, along with the total number of results
+     * @throws IllegalArgumentException If the query is invalid for the inverted index, as when a wildcard matches too
+     *                                  many terms
+     * @throws IllegalStateException    If the inverted index can't answer the query, as when it lacks positions
+     */
+    public ResultPage search(BooleanQuery query, int offset, int count) {
+
+        InvertedIndex invertedIndex = invertedIndexSupplier.get(); // The whole search uses the same inverted index
+        String normalizedQuery = query.toString();
+
+        ResultPage page = resultsCache != null ?
+                resultsCache.get(invertedIndex, normalizedQuery, scoringCriterion, offset, count) : null;
+
+        if (page == null) {
+
+            BooleanQueryEvaluator evaluator = new BooleanQueryEvaluator(invertedIndex);
+            RankedRetrieval rankedResults = new RankedRetrieval(invertedIndex, scoringCriterion,
+                    evaluator.evaluate(query), evaluator.getPositiveTerms(query));
+
+            page = ResultPage.of(rankedResults, offset, count, invertedIndex.getDocumentCatalogue());
+
+            if (resultsCache != null)
+                resultsCache.put(invertedIndex, normalizedQuery, scoringCriterion, offset, count, page);
+        }
+
+        return page;
+    }
+
+    public IScoringCriterion getScoringCriterion() {
+        return scoringCriterion;
+    }
+
+    public ResultPageCache getResultsCache() {
+        return resultsCache;
+    }
+
+}
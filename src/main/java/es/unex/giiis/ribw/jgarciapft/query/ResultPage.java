@@ -0,0 +1,79 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+import es.unex.giiis.ribw.jgarciapft.ranking.ScoredDocument;
+
+/**
+ * A page of ranked search results, along with the URLs of its documents and the total number of results of the search,
+ * ready to be shown without ranking the search again
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.ResultPageCache
+ */
+public final class ResultPage {
+
+    private final ScoredDocument[] results; // The page's results, best first
+    private final String[] documentURLs; // URL of each result's document, parallel to the results
+    private final int totalCount; // Number of results of the whole search
+
+    public ResultPage(ScoredDocument[] results, String[] documentURLs, int totalCount) {
+        this.results = results;
+        this.documentURLs = documentURLs;
+        this.totalCount = totalCount;
+    }
+
+    /**
+     * @param rankedResults     The ranked results of a search
+     * @param offset            Number of best results skipped
+     * @param count             Maximum number of results of the page
+     * @param documentCatalogue Resolves the URLs of the results' documents
+     * @return The page of results from offset onwards
+     */
+    public static ResultPage of(RankedRetrieval rankedResults, int offset, int count,
+                                IDocumentCatalogue documentCatalogue) {
+
+        ScoredDocument[] results = rankedResults.getPage(offset, count);
+        String[] documentURLs = new String[results.length];
+
+        for (int i = 0; i < results.length; i++)
+            documentURLs[i] = documentCatalogue.getDocumentURLByID(results[i].getDocumentID());
+
+        return new ResultPage(results, documentURLs, rankedResults.getDocumentCount());
+    }
+
+    /**
+     * @return The page's results, best first. They must not be modified
+     */
+    public ScoredDocument[] getResults() {
+        return results;
+    }
+
+    /**
+     * @return URL of each result's document, parallel to the results. They must not be modified
+     */
+    public String[] getDocumentURLs() {
+        return documentURLs;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return An estimation of the memory taken by this object in bytes
+     */
+    public long estimateSizeInBytes() {
+
+        // Object header and fields, plus both arrays
+
+        long sizeInBytes = 32 + 2 * (16 + 8L * results.length);
+
+        // Plus each result and its URL
+
+        for (String documentURL : documentURLs)
+            sizeInBytes += 32 + 40 + 2L * documentURL.length();
+
+        return sizeInBytes;
+    }
+
+}
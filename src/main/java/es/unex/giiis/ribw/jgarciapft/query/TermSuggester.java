@@ -0,0 +1,109 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+import es.unex.giiis.ribw.jgarciapft.InvertedIndex;
+import es.unex.giiis.ribw.jgarciapft.Occurrences;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_SUGGESTION_CANDIDATES;
+import static es.unex.giiis.ribw.jgarciapft.Config.MAX_SUGGESTION_DISTANCE;
+import static es.unex.giiis.ribw.jgarciapft.Config.SINGLE_EDIT_MAX_TERM_LENGTH;
+
+/**
+ * Suggests indexed terms for a misspelled one. The candidates are the terms within a small edit distance, found by
+ * walking the term automaton of the inverted index along with a Levenshtein automaton of the misspelled term, so only
+ * the dictionary branches that may still be close enough are visited instead of every term. Closer terms are suggested
+ * first, and among equally close terms the most frequent ones
+ * <p>
+ * The distance is widened one edit at a time, and only while there aren't enough suggestions yet. The walk stops after
+ * {@link es.unex.giiis.ribw.jgarciapft.Config#MAX_SUGGESTION_CANDIDATES} terms, found in lexicographic order rather than
+ * by distance, so a distance is only widened while every closer term fits. If even the terms at one distance don't fit,
+ * only the first ones in lexicographic order are considered and a warning is printed
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ * @see es.unex.giiis.ribw.jgarciapft.WildcardIndex#findSimilar
+ */
+public class TermSuggester {
+
+    private final InvertedIndex invertedIndex; // The inverted index whose terms are suggested
+
+    /**
+     * @param invertedIndex The inverted index whose terms are suggested
+     */
+    public TermSuggester(InvertedIndex invertedIndex) {
+        this.invertedIndex = invertedIndex;
+    }
+
+    /**
+     * @param term A normalized term
+     * @return The maximum edit distance of the suggestions for the term. Short terms allow a single edit
+     */
+    public static int getMaxDistance(String term) {
+        return term.length() <= SINGLE_EDIT_MAX_TERM_LENGTH ? 1 : MAX_SUGGESTION_DISTANCE;
+    }
+
+    /**
+     * @param term           A normalized term
+     * @param maxSuggestions Maximum number of suggestions
+     * @return The suggestions for the term within its maximum edit distance, best first. The term itself isn't
+     * suggested
+     * @see TermSuggester#getMaxDistance(String)
+     */
+    public List<TermSuggestion> suggest(String term, int maxSuggestions) {
+        return suggest(term, getMaxDistance(term), maxSuggestions);
+    }
+
+    /**
+     * @param term           A normalized term
+     * @param maxDistance    Maximum edit distance of the suggestions
+     * @param maxSuggestions Maximum number of suggestions
+     * @return The suggestions for the term, best first. The term itself isn't suggested
+     * @throws IllegalArgumentException If the term is too long or the distance is negative
+     */
+    public List<TermSuggestion> suggest(String term, int maxDistance, int maxSuggestions) {
+
+        if (maxDistance < 0) throw new IllegalArgumentException("Negative edit distance " + maxDistance);
+
+        List<TermSuggestion> suggestions = new ArrayList<>(); // Every term up to the last distance fully searched
+
+        for (int distance = 1; distance <= maxDistance && suggestions.size() < maxSuggestions; distance++) {
+
+            List<TermSuggestion> candidates = new ArrayList<>();
+            boolean complete = invertedIndex.getWildcardIndex().findSimilar(term, distance, MAX_SUGGESTION_CANDIDATES,
+                    (similarTerm, similarTermDistance) -> {
+
+                        Occurrences occurrences = invertedIndex.getInvertedIndex().get(similarTerm);
+
+                        if (similarTermDistance > 0 && occurrences != null)
+                            candidates.add(new TermSuggestion(similarTerm, similarTermDistance,
+                                    occurrences.getGlobalFrequency()));
+                    });
+
+            if (complete) {
+                suggestions = candidates;
+                continue;
+            }
+
+            // Closer terms were all found by the previous distance. Keep whichever terms at this distance were found
+
+            System.out.printf("[WARNING] More than %d terms within %d edit(s) of '%s'. Only the first ones in " +
+                    "lexicographic order are considered\n", MAX_SUGGESTION_CANDIDATES, distance, term);
+
+            for (TermSuggestion candidate : candidates)
+                if (candidate.getDistance() == distance) suggestions.add(candidate);
+
+            break;
+        }
+
+        // Closest first, then most frequent first. Candidates arrive in increasing term order, which breaks ties
+
+        suggestions.sort(Comparator.comparingInt(TermSuggestion::getDistance)
+                .thenComparing(Comparator.comparingInt(TermSuggestion::getGlobalFrequency).reversed()));
+
+        return suggestions.size() > maxSuggestions ? new ArrayList<>(suggestions.subList(0, maxSuggestions)) :
+                suggestions;
+    }
+
+}
@@ -0,0 +1,32 @@
+package es.unex.giiis.ribw.jgarciapft.query;
+
+/**
+ * An indexed term suggested for a misspelled one, along with its edit distance to it and its global frequency
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public final class TermSuggestion {
+
+    private final String term;
+    private final int distance; // Edit distance to the misspelled term
+    private final int globalFrequency; // Number of occurrences of the term within every document
+
+    public TermSuggestion(String term, int distance, int globalFrequency) {
+        this.term = term;
+        this.distance = distance;
+        this.globalFrequency = globalFrequency;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public int getGlobalFrequency() {
+        return globalFrequency;
+    }
+
+}
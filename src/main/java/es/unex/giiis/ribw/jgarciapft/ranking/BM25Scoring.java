@@ -0,0 +1,46 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.BM25_B;
+import static es.unex.giiis.ribw.jgarciapft.Config.BM25_K1;
+
+/**
+ * Score documents with Okapi BM25. The term's frequency saturates as it grows, controlled by k1, and is normalized by
+ * the document's length relative to the average length, controlled by b. It's weighted by the term's inverse document
+ * frequency (the variant that is never negative)
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class BM25Scoring implements IScoringCriterion {
+
+    private final double k1; // Term frequency saturation
+    private final double b; // Strength of the document length normalization, between 0 and 1
+
+    /**
+     * Instantiate BM25 with the default parameters
+     *
+     * @see es.unex.giiis.ribw.jgarciapft.Config#BM25_K1
+     * @see es.unex.giiis.ribw.jgarciapft.Config#BM25_B
+     */
+    public BM25Scoring() {
+        this(BM25_K1, BM25_B);
+    }
+
+    /**
+     * @param k1 Term frequency saturation
+     * @param b  Strength of the document length normalization, between 0 and 1
+     */
+    public BM25Scoring(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public double score(int termFrequency, int documentFrequency, double documentLength, CollectionStatistics statistics) {
+
+        double idf = Math.log(1 + (statistics.getDocumentCount() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        double lengthNormalization = 1 - b + b * documentLength / statistics.getAverageDocumentLength();
+
+        return idf * termFrequency * (k1 + 1) / (termFrequency + k1 * lengthNormalization);
+    }
+
+}
@@ -0,0 +1,71 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+import es.unex.giiis.ribw.jgarciapft.IDocumentCatalogue;
+
+/**
+ * Statistics of a collection of documents needed to score search results: the number of documents and their lengths.
+ * Documents whose length is unknown, such as the ones of inverted files built before lengths were recorded, are
+ * considered to have the average length, which neutralizes length normalization for them
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class CollectionStatistics {
+
+    private final IDocumentCatalogue catalogue; // Where the lengths are recorded
+    private final int documentCount; // Number of catalogued documents
+    private final double averageDocumentLength; // Average length of the documents whose length is known
+
+    /**
+     * @param catalogue The document's catalogue of the collection. It must not be modified afterwards
+     */
+    public CollectionStatistics(IDocumentCatalogue catalogue) {
+        this.catalogue = catalogue;
+
+        int documentCount = 0;
+        int knownLengths = 0;
+        long totalLength = 0;
+
+        for (int documentID = 0; documentID < catalogue.getDocumentIDsUpperBound(); documentID++) {
+
+            if (catalogue.getDocumentURLByID(documentID) == null) continue;
+
+            documentCount++;
+
+            int length = catalogue.getDocumentLength(documentID);
+
+            if (length >= 0) {
+                knownLengths++;
+                totalLength += length;
+            }
+        }
+
+        this.documentCount = documentCount;
+        averageDocumentLength = knownLengths > 0 && totalLength > 0 ? (double) totalLength / knownLengths : 1;
+    }
+
+    /**
+     * @return Number of catalogued documents
+     */
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @return Average length in tokens of the documents. Always greater than zero
+     */
+    public double getAverageDocumentLength() {
+        return averageDocumentLength;
+    }
+
+    /**
+     * @param documentID Numeric document ID
+     * @return The document's length in tokens, or the average length if it's unknown
+     */
+    public double getDocumentLength(int documentID) {
+
+        int length = catalogue.getDocumentLength(documentID);
+
+        return length >= 0 ? length : averageDocumentLength;
+    }
+
+}
@@ -0,0 +1,16 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+/**
+ * Score documents by their (partial) frequency of the term. The document with the higher partial frequency will
+ * appear first
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class FrequencyScoring implements IScoringCriterion {
+
+    @Override
+    public double score(int termFrequency, int documentFrequency, double documentLength, CollectionStatistics statistics) {
+        return termFrequency;
+    }
+
+}
@@ -0,0 +1,20 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+/**
+ * Scoring criterion used to rank search results. It scores how relevant a document is to a single term of a query,
+ * the score of a document for a whole query being the sum of its scores for each term. Higher scores rank first
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public interface IScoringCriterion {
+
+    /**
+     * @param termFrequency     Number of occurrences of the term within the document. At least one
+     * @param documentFrequency Number of documents where the term occurs. At least one
+     * @param documentLength    Length of the document in tokens
+     * @param statistics        Statistics of the collection of documents searched
+     * @return The document's score for the term
+     */
+    double score(int termFrequency, int documentFrequency, double documentLength, CollectionStatistics statistics);
+
+}
@@ -0,0 +1,32 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+/**
+ * A search result: a matched document along with its score and partial frequency
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public final class ScoredDocument {
+
+    private final int documentID;
+    private final double score;
+    private final int frequency; // Sum of the partial frequencies of the query's terms within the document
+
+    public ScoredDocument(int documentID, double score, int frequency) {
+        this.documentID = documentID;
+        this.score = score;
+        this.frequency = frequency;
+    }
+
+    public int getDocumentID() {
+        return documentID;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+
+}
@@ -0,0 +1,21 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+/**
+ * Score documents by TF-IDF: the logarithm of the term's frequency within the document, weighted by the term's inverse
+ * document frequency, so rare terms weigh more than common ones. The score is normalized by the square root of the
+ * document's length relative to the average length, so long documents don't rank first just for being long
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class TfIdfScoring implements IScoringCriterion {
+
+    @Override
+    public double score(int termFrequency, int documentFrequency, double documentLength, CollectionStatistics statistics) {
+
+        double tf = 1 + Math.log(termFrequency);
+        double idf = Math.log(1 + (double) statistics.getDocumentCount() / documentFrequency);
+
+        return tf * idf / Math.sqrt(Math.max(documentLength, 1) / statistics.getAverageDocumentLength());
+    }
+
+}
@@ -0,0 +1,125 @@
+package es.unex.giiis.ribw.jgarciapft.ranking;
+
+/**
+ * Keeps the k best scored items offered to it, out of any number of them, in a fixed-size binary min-heap whose root
+ * is the worst item kept. Each offer costs O(log k) and the memory taken doesn't depend on the number of items offered.
+ * Items are identified by an integer, and ties in score are broken in favour of the lower identifier
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class TopKCollector {
+
+    private final int[] items; // Heap of kept items. The worst one is at the root
+    private final double[] scores; // Score of each kept item, parallel to items
+    private int size; // Number of kept items
+
+    /**
+     * @param k Number of items to keep. At least one
+     */
+    public TopKCollector(int k) {
+
+        if (k < 1) throw new IllegalArgumentException("At least 1 item must be kept");
+
+        items = new int[k];
+        scores = new double[k];
+        size = 0;
+    }
+
+    /**
+     * Offer an item. It's kept if there is room left or it's better than the worst item kept, which is then dropped
+     *
+     * @param item  The item's identifier
+     * @param score The item's score
+     */
+    public void offer(int item, double score) {
+
+        if (size < items.length) {
+            items[size] = item;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (isWorse(items[0], scores[0], item, score)) {
+            items[0] = item;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Empty the collector
+     *
+     * @return The kept items, from best to worst
+     */
+    public int[] drainSorted() {
+
+        int[] sorted = new int[size];
+
+        // Pop the worst item repeatedly, filling the result from its end
+
+        while (size > 0) {
+            sorted[size - 1] = items[0];
+            items[0] = items[--size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+
+        return sorted;
+    }
+
+    /**
+     * @return Number of items kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return If the first item ranks below the second one: it has a lower score, or the same score and a greater
+     * identifier
+     */
+    private static boolean isWorse(int item, double score, int otherItem, double otherScore) {
+        return score < otherScore || (score == otherScore && item > otherItem);
+    }
+
+    private void siftUp(int position) {
+
+        while (position > 0) {
+
+            int parent = (position - 1) >>> 1;
+
+            if (!isWorse(items[position], scores[position], items[parent], scores[parent])) break;
+
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+
+        while (true) {
+
+            int worst = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+
+            if (left < size && isWorse(items[left], scores[left], items[worst], scores[worst])) worst = left;
+            if (right < size && isWorse(items[right], scores[right], items[worst], scores[worst])) worst = right;
+
+            if (worst == position) return;
+
+            swap(position, worst);
+            position = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+
+        int item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+}
@@ -0,0 +1,187 @@
+package es.unex.giiis.ribw.jgarciapft.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Variable length encoding utilities for binary files. Integers are encoded 7 bits per byte, least significant group
+ * first, with the most significant bit of each byte set if more bytes follow (varint). Strings are encoded as their
+ * UTF-8 length as a varint followed by their UTF-8 bytes. Sorted sequences of integers are encoded as the difference
+ * between each integer and the previous one (the first one as is), as varints
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class BinaryEncodingUtils {
+
+    /**
+     * @param out   Where to write the encoded value
+     * @param value Value to encode. Negative values always take 5 bytes
+     * @throws IOException If the value can't be written
+     */
+    public static void writeVarInt(OutputStream out, int value) throws IOException {
+
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    /**
+     * @param out   Where to write the encoded value
+     * @param value Value to encode. Negative values always take 10 bytes
+     * @throws IOException If the value can't be written
+     */
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    /**
+     * @param out   Where to write the encoded string
+     * @param value String to encode
+     * @throws IOException If the string can't be written
+     */
+    public static void writeString(OutputStream out, String value) throws IOException {
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param values Non-negative values sorted in increasing order. Repeated values are allowed
+     * @param count  Number of values to encode, from the start of the array
+     * @return The values encoded as varint deltas
+     */
+    public static byte[] encodeSortedInts(int[] values, int count) {
+
+        byte[] encoded = new byte[count * 5];
+        int length = 0;
+        int previous = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            int delta = values[i] - previous;
+            previous = values[i];
+
+            while ((delta & ~0x7F) != 0) {
+                encoded[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+
+            encoded[length++] = (byte) delta;
+        }
+
+        return Arrays.copyOf(encoded, length);
+    }
+
+    /**
+     * Decode a sorted sequence of integers encoded as varint deltas starting at the current position of a buffer,
+     * advancing it past the sequence
+     *
+     * @param in    Buffer positioned at the start of the sequence
+     * @param count Number of values of the sequence
+     * @return The decoded values
+     * @throws BufferUnderflowException If the sequence is truncated
+     * @throws IllegalArgumentException If any varint is longer than 5 bytes
+     */
+    public static int[] decodeSortedInts(ByteBuffer in, int count) throws BufferUnderflowException, IllegalArgumentException {
+
+        int[] values = new int[count];
+        int previous = 0;
+
+        for (int i = 0; i < count; i++) {
+            previous += readVarInt(in);
+            values[i] = previous;
+        }
+
+        return values;
+    }
+
+    /**
+     * Decode a varint starting at the current position of a buffer, advancing it past the varint
+     *
+     * @param in Buffer positioned at the start of a varint
+     * @return The decoded value
+     * @throws BufferUnderflowException If the varint is truncated
+     * @throws IllegalArgumentException If the varint is longer than 5 bytes
+     */
+    public static int readVarInt(ByteBuffer in) throws BufferUnderflowException, IllegalArgumentException {
+
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0) return value;
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Decode a variable length long starting at the current position of a buffer, advancing it past the value
+     *
+     * @param in Buffer positioned at the start of a variable length long
+     * @return The decoded value
+     * @throws BufferUnderflowException If the value is truncated
+     * @throws IllegalArgumentException If the value is longer than 10 bytes
+     */
+    public static long readVarLong(ByteBuffer in) throws BufferUnderflowException, IllegalArgumentException {
+
+        long value = 0;
+
+        for (int shift = 0; shift < 70; shift += 7) {
+
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) return value;
+        }
+
+        throw new IllegalArgumentException("Malformed varlong");
+    }
+
+    /**
+     * Decode a string starting at the current position of a buffer, advancing it past the string
+     *
+     * @param in Buffer positioned at the start of an encoded string
+     * @return The decoded string
+     * @throws BufferUnderflowException If the string is truncated
+     * @throws IllegalArgumentException If the string length is malformed
+     */
+    public static String readString(ByteBuffer in) throws BufferUnderflowException, IllegalArgumentException {
+
+        int length = readVarInt(in);
+
+        if (length < 0 || length > in.remaining()) throw new BufferUnderflowException();
+
+        String value;
+
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return value;
+    }
+
+}
@@ -5,6 +5,7 @@ import org.apache.tika.parser.Parser;
 
 import java.io.File;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 import static es.unex.giiis.ribw.jgarciapft.Config.TEXTUAL_FILE_EXTENSIONS_REGEXP;
 import static es.unex.giiis.ribw.jgarciapft.Config.TIKA_PARSERS;
@@ -16,6 +17,9 @@ import static es.unex.giiis.ribw.jgarciapft.Config.TIKA_PARSERS;
  */
 public class FileExtensionUtils {
 
+    // Compiled version of the textual file extensions RegEx
+    private static final Pattern TEXTUAL_FILE_EXTENSIONS = Pattern.compile(TEXTUAL_FILE_EXTENSIONS_REGEXP);
+
     /**
      * Extract the extension from a file. A file extension is the last sequence of characters that result from dividing
      * a file name at each dot (.)
@@ -28,18 +32,30 @@ public class FileExtensionUtils {
         // Check that the input file exists and is indeed a file, not a directory
 
         if (file.exists() && file.isFile()) {
+            return extractExtension(file.getName());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Extract the extension from a file name without accessing the filesystem. A file extension is the last sequence
+     * of characters that result from dividing a file name at each dot (.). Empty sequences at the end are discarded,
+     * so the extension of "name." is "name"
+     *
+     * @param fileName Name of a regular file
+     * @return The file name's file extension in lowercase. Empty if the file name only has dots
+     */
+    public static String extractExtension(String fileName) {
 
-            // Split the file name at each dot (.)
+        // The last non-empty split of the file name at each dot (.), as splitting discards trailing empty splits
 
-            String[] split = file.getName()
-                    .toLowerCase(Locale.ROOT)
-                    .split("\\.");
+        int end = fileName.length();
 
-            return split[split.length - 1]; // Return the last split
+        while (end > 0 && fileName.charAt(end - 1) == '.')
+            end--;
 
-        } else {
-            return null;
-        }
+        return fileName.substring(fileName.lastIndexOf('.', end - 1) + 1, end).toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -53,10 +69,19 @@ public class FileExtensionUtils {
 
         // Check if the file can be recognized as a textual file by its file extension
 
-        if (fileExt != null) return fileExt.matches(TEXTUAL_FILE_EXTENSIONS_REGEXP);
+        if (fileExt != null) return isTextualExtension(fileExt);
         else return false;
     }
 
+    /**
+     * @param fileExtension A file extension in lowercase
+     * @return If the contents of files with this extension are text based, non-binary
+     * @see Config#TEXTUAL_FILE_EXTENSIONS_REGEXP
+     */
+    public static boolean isTextualExtension(String fileExtension) {
+        return TEXTUAL_FILE_EXTENSIONS.matcher(fileExtension).matches();
+    }
+
     /**
      * @param file A structured or semi-structured file
      * @return If the provided structured file can be analysed with a concrete Tika parser
@@ -66,6 +91,15 @@ public class FileExtensionUtils {
         return TIKA_PARSERS.containsKey(extractExtension(file));
     }
 
+    /**
+     * @param fileExtension The extension of a structured or semi-structured file in lowercase
+     * @return If files with this extension can be analysed with a concrete Tika parser
+     * @see Config#TIKA_PARSERS
+     */
+    public static boolean tikaHasFittingParser(String fileExtension) {
+        return TIKA_PARSERS.containsKey(fileExtension);
+    }
+
     /**
      * @param file A structured or semi-structured file
      * @return A fitting Tika parser for the input file
@@ -73,7 +107,17 @@ public class FileExtensionUtils {
      */
     @SuppressWarnings("unchecked")
     public static Class<Parser> tikaParserForFile(File file) {
-        return (Class<Parser>) TIKA_PARSERS.get(extractExtension(file));
+        return tikaParserForExtension(extractExtension(file));
+    }
+
+    /**
+     * @param fileExtension The extension of a structured or semi-structured file in lowercase
+     * @return A fitting Tika parser for files with this extension
+     * @see Config#TIKA_PARSERS
+     */
+    @SuppressWarnings("unchecked")
+    public static Class<Parser> tikaParserForExtension(String fileExtension) {
+        return (Class<Parser>) TIKA_PARSERS.get(fileExtension);
     }
 
 }
@@ -0,0 +1,67 @@
+package es.unex.giiis.ribw.jgarciapft.utils;
+
+/**
+ * Utilities to write JSON (RFC 8259) by hand, so no JSON library is needed for the few flat documents the crawler
+ * writes
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class JsonUtils {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Append a JSON string: the value between double quotes, escaping the quotes, backslashes and control chars
+     *
+     * @param out   Where to append the string
+     * @param value The value of the string
+     * @return The same builder
+     */
+    public static StringBuilder appendString(StringBuilder out, CharSequence value) {
+
+        out.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+
+        return out.append('"');
+    }
+
+    /**
+     * Append a JSON number. JSON can't represent infinite and NaN values, so they are written as null
+     *
+     * @param out   Where to append the number
+     * @param value The value of the number
+     * @return The same builder
+     */
+    public static StringBuilder appendNumber(StringBuilder out, double value) {
+        return Double.isFinite(value) ? out.append(value) : out.append("null");
+    }
+
+}
@@ -1,7 +1,6 @@
 package es.unex.giiis.ribw.jgarciapft.utils;
 
 import java.text.Normalizer;
-import java.util.Locale;
 
 /**
  * String normalization utilities
@@ -10,6 +9,22 @@ import java.util.Locale;
  */
 public class NormalizationUtils {
 
+    // Marks the chars of the fold table that are removed
+    private static final char REMOVED = '\uFFFF';
+
+    /* Result of normalizing each BMP char on its own: either a single lowercase ASCII char or REMOVED. Unicode
+    Normalization Form D only decomposes chars and reorders combining marks, which are never ASCII, so normalizing a
+    string is the same as normalizing each of its chars */
+    private static final char[] FOLD_TABLE = new char[Character.MAX_VALUE + 1];
+
+    static {
+
+        // Precompute the fold table through the full normalization pipeline
+
+        for (int c = 0; c <= Character.MAX_VALUE; c++)
+            FOLD_TABLE[c] = Character.isSurrogate((char) c) ? REMOVED : normalizeCodePoint(c);
+    }
+
     /**
      * Normalize each line before breaking it into tokens. The normalization pipeline first applies
      * Unicode Normalization Form D (NFD, Canonical Decomposition) to get an equivalent representation
@@ -23,12 +38,96 @@ public class NormalizationUtils {
      *
      * @param inputString String to be normalized
      * @return Normalized string
+     * @see NormalizationUtils#normalizeStringNFD(CharSequence, char[])
      */
     public static String normalizeStringNFD(String inputString) {
-        return Normalizer.normalize(inputString.trim(), Normalizer.Form.NFD)
-                // Remove the non-ASCII characters produced as a result of NFD Normalization
-                .replaceAll("[^\\p{ASCII}]", "")
-                .toLowerCase(Locale.ROOT);
+
+        char[] buffer = new char[inputString.length()];
+
+        return new String(buffer, 0, normalizeStringNFD(inputString, buffer));
+    }
+
+    /**
+     * Normalize a char sequence into a buffer in a single pass. The result is the same as
+     * {@link NormalizationUtils#normalizeStringNFD(String)}: the sequence is trimmed, normalized with NFD, stripped
+     * of non-ASCII chars and lowercased. Each BMP char is folded through a precomputed table, only supplementary
+     * code points go through the full normalization pipeline
+     *
+     * @param input  Char sequence to be normalized
+     * @param output Where to write the normalized chars. At least as long as the input, as no char is expanded
+     * @return Number of normalized chars written to the output
+     */
+    public static int normalizeStringNFD(CharSequence input, char[] output) {
+
+        // Trim the input the same way String.trim() does
+
+        int start = 0;
+        int end = input.length();
+
+        while (start < end && input.charAt(start) <= ' ')
+            start++;
+
+        while (end > start && input.charAt(end - 1) <= ' ')
+            end--;
+
+        // Fold each char
+
+        int length = 0;
+
+        for (int i = start; i < end; i++) {
+
+            char c = input.charAt(i);
+            char folded = FOLD_TABLE[c];
+
+            if (folded != REMOVED) {
+                output[length++] = folded;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(input.charAt(i + 1))) {
+
+                // Fallback for supplementary code points. Both chars of the pair are consumed
+
+                folded = normalizeCodePoint(Character.toCodePoint(c, input.charAt(++i)));
+
+                if (folded != REMOVED) output[length++] = folded;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Normalize a single code point, for callers that normalize a stream of chars as it arrives. Normalizing each code
+     * point of a string gives the same chars as {@link NormalizationUtils#normalizeStringNFD(String)}, except for the
+     * trimming
+     *
+     * @param codePoint A code point. Unpaired surrogates are accepted
+     * @return The normalized code point, which is a lowercase ASCII char, or -1 if the normalization removes it
+     */
+    public static int foldCodePoint(int codePoint) {
+
+        char folded = codePoint <= Character.MAX_VALUE ? FOLD_TABLE[codePoint] : normalizeCodePoint(codePoint);
+
+        return folded == REMOVED ? -1 : folded;
+    }
+
+    /**
+     * @param codePoint A code point
+     * @return The code point normalized on its own with the full pipeline: a lowercase ASCII char or REMOVED
+     */
+    private static char normalizeCodePoint(int codePoint) {
+
+        String decomposed = Normalizer.normalize(new String(Character.toChars(codePoint)), Normalizer.Form.NFD);
+        char folded = REMOVED;
+
+        // Keep the ASCII chars produced as a result of NFD Normalization. No code point produces more than one
+
+        for (int i = 0; i < decomposed.length(); i++) {
+
+            char c = decomposed.charAt(i);
+
+            if (c < 128 && folded == REMOVED) folded = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+
+        return folded;
     }
 
 }
@@ -0,0 +1,63 @@
+package es.unex.giiis.ribw.jgarciapft.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threading utilities
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class ThreadUtils {
+
+    /* Factory method of virtual thread executors (Executors#newVirtualThreadPerTaskExecutor). Virtual threads are only
+    available from Java 21 onwards, so it's looked up reflectively. Null if the current runtime doesn't support them,
+    including runtimes where they're a preview feature that isn't enabled */
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = lookupVirtualThreadExecutorFactory();
+
+    /**
+     * Create an executor that starts a new virtual thread for each task. On runtimes without virtual threads each task
+     * runs on its own platform thread instead
+     *
+     * @return An executor that runs each task on its own thread
+     * @see ThreadUtils#areVirtualThreadsSupported()
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+
+        if (VIRTUAL_THREAD_EXECUTOR_FACTORY != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Can't happen, the factory was already invoked successfully when it was looked up
+            }
+        }
+
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @return If the current runtime can create virtual threads
+     */
+    public static boolean areVirtualThreadsSupported() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    /**
+     * @return The factory method of virtual thread executors, or null if the current runtime doesn't support them. The
+     * factory is invoked once, as it's present but fails on runtimes where virtual threads are a preview feature that
+     * isn't enabled
+     */
+    private static Method lookupVirtualThreadExecutorFactory() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            ((ExecutorService) factory.invoke(null)).shutdown();
+
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package es.unex.giiis.ribw.jgarciapft;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import static es.unex.giiis.ribw.jgarciapft.Config.TOKEN_DELIMITERS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential tests of {@link Tokenizer} against the {@link StringTokenizer} it replaced in the indexing pipeline.
+ * Both must give the same tokens, in the same order, over the crawler's delimiters
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class TokenizerTest {
+
+    private static final Tokenizer TOKENIZER = new Tokenizer(TOKEN_DELIMITERS);
+
+    // Chars random inputs are made of: every delimiter, plus letters, digits, chars kept by the crawler such as (_),
+    // non-ASCII chars and chars whose bitset word lies beyond the delimiters' bitset
+    private static final String ALPHABET = TOKEN_DELIMITERS + "abcxyzABC019_'ñçü\u0000\u007F Ā中￿";
+
+    @Test
+    public void edgeCases() {
+
+        String[] inputs = {
+                "",
+                " ",
+                TOKEN_DELIMITERS,
+                "a",
+                "token",
+                "  leading and trailing  ",
+                "consecutive,,;;  delimiters",
+                "a.b,c:d;e!f¡g¿h?i\\j/k(l)m[n]o{p}q\tr|s\"t#u*v-w+x=y",
+                "keeps_underscores and'quotes",
+                "¿Qué tal? ¡Bien!",
+                "non-ASCII ñandú and 中文",
+                "\u0000 ￿",
+                "line\nbreaks\rare\fkept"
+        };
+
+        for (String input : inputs)
+            assertEquals("Tokens of \"" + input + "\"", expectedTokens(input), tokens(input));
+    }
+
+    @Test
+    public void randomInput() {
+
+        Random random = new Random(20201);
+
+        for (int i = 0; i < 100_000; i++) {
+
+            char[] chars = new char[random.nextInt(64)];
+
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+
+            String input = new String(chars);
+
+            assertEquals("Tokens of \"" + input + "\"", expectedTokens(input), tokens(input));
+        }
+    }
+
+    @Test
+    public void sliceOfBuffer() {
+
+        char[] buffer = "ignored prefix|the slice, only|ignored suffix".toCharArray();
+        int offset = buffer.length - "the slice, only|ignored suffix".length();
+        int length = "the slice, only".length();
+        List<String> tokens = new ArrayList<>();
+
+        TOKENIZER.tokenize(buffer, offset, length, (tokenBuffer, tokenOffset, tokenLength) ->
+                tokens.add(new String(tokenBuffer, tokenOffset, tokenLength)));
+
+        assertEquals(List.of("the", "slice", "only"), tokens);
+    }
+
+    @Test
+    public void delimitersOfEveryChar() {
+
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++)
+            assertEquals("Char " + c, TOKEN_DELIMITERS.indexOf(c) >= 0, TOKENIZER.isDelimiter((char) c));
+    }
+
+    /**
+     * @param input Text to break into tokens
+     * @return The tokens given by the tokenizer
+     */
+    private static List<String> tokens(String input) {
+
+        List<String> tokens = new ArrayList<>();
+
+        TOKENIZER.tokenize(input.toCharArray(), 0, input.length(), (buffer, offset, length) ->
+                tokens.add(new String(buffer, offset, length)));
+
+        return tokens;
+    }
+
+    /**
+     * @param input Text to break into tokens
+     * @return The tokens given by a string tokenizer over the same delimiters
+     */
+    private static List<String> expectedTokens(String input) {
+
+        List<String> tokens = new ArrayList<>();
+        StringTokenizer tokenizer = new StringTokenizer(input, TOKEN_DELIMITERS);
+
+        while (tokenizer.hasMoreTokens())
+            tokens.add(tokenizer.nextToken());
+
+        return tokens;
+    }
+
+}
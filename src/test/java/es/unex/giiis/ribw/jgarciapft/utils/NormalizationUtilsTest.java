@@ -0,0 +1,117 @@
+package es.unex.giiis.ribw.jgarciapft.utils;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Property tests of the table-driven normalization against the original pipeline, which is kept here as the oracle:
+ * NFD normalization of the trimmed string, removal of the non-ASCII chars and lowercasing. Both must give the same
+ * result for every code point, every line of the Spanish thesaurus and random text
+ *
+ * @author Juan Pablo García Plaza Pérez (jgarciapft@alumnos.unex.es)
+ */
+public class NormalizationUtilsTest {
+
+    private static final String THESAURUS_RESOURCE = "/Thesaurus_es_ES.txt";
+
+    // Chars random inputs are made of besides random BMP chars: whitespace, Spanish letters with and without
+    // diacritics, combining marks and a surrogate pair
+    private static final String ALPHABET = " \t\nabcnoAEIOUáéíóúÁÉÍÓÚñÑüÜçÇ¿¡ﬁǅ́̃̈𝐀";
+
+    @Test
+    public void everyCodePoint() {
+
+        for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+
+            String input = new String(Character.toChars(codePoint));
+            String expected = oracle(input);
+
+            assertEquals("Code point " + codePoint, expected, NormalizationUtils.normalizeStringNFD(input));
+
+            // Code points are also folded on their own, without trimming
+
+            int folded = NormalizationUtils.foldCodePoint(codePoint);
+            String expectedUntrimmed = oracleUntrimmed(input);
+
+            assertEquals("Folded code point " + codePoint, expectedUntrimmed,
+                    folded < 0 ? "" : String.valueOf((char) folded));
+        }
+    }
+
+    @Test
+    public void thesaurusLines() throws IOException {
+
+        try (InputStream thesaurus = NormalizationUtilsTest.class.getResourceAsStream(THESAURUS_RESOURCE)) {
+
+            assertNotNull("Missing thesaurus " + THESAURUS_RESOURCE, thesaurus);
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(thesaurus, StandardCharsets.UTF_8));
+            String line;
+
+            while ((line = reader.readLine()) != null)
+                assertNormalizedLikeOracle(line);
+        }
+    }
+
+    @Test
+    public void randomInput() {
+
+        Random random = new Random(20201);
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < 200_000; i++) {
+
+            input.setLength(0);
+
+            for (int length = random.nextInt(32); input.length() < length; ) {
+                if (random.nextBoolean()) input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                else input.append((char) random.nextInt(Character.MAX_VALUE + 1)); // Unpaired surrogates included
+            }
+
+            assertNormalizedLikeOracle(input.toString());
+        }
+    }
+
+    /**
+     * @param input Text to be normalized, both as a string and as a char sequence into a buffer
+     */
+    private static void assertNormalizedLikeOracle(String input) {
+
+        String expected = oracle(input);
+        char[] buffer = new char[input.length()];
+        int length = NormalizationUtils.normalizeStringNFD(new StringBuilder(input), buffer);
+
+        assertEquals("Normalization of \"" + input + "\"", expected, NormalizationUtils.normalizeStringNFD(input));
+        assertEquals("Normalization into a buffer of \"" + input + "\"", expected, new String(buffer, 0, length));
+    }
+
+    /**
+     * @param input Text to be normalized
+     * @return The text normalized by the original pipeline
+     */
+    private static String oracle(String input) {
+        return oracleUntrimmed(input.trim());
+    }
+
+    /**
+     * @param input Text to be normalized
+     * @return The text normalized by the original pipeline, without trimming it first
+     */
+    private static String oracleUntrimmed(String input) {
+        return Normalizer.normalize(input, Normalizer.Form.NFD)
+                .replaceAll("[^\\p{ASCII}]", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+}